@@ -3,6 +3,8 @@ package dev.paul.cartlink.cart.dto;
 public class CartItemRequest {
     private Long merchantProductId;
     private int quantity;
+    // Optional, set when the item is added from a link storefront
+    private Long linkId;
 
     public CartItemRequest() {
     }
@@ -27,4 +29,12 @@ public class CartItemRequest {
     public void setQuantity(int quantity) {
         this.quantity = quantity;
     }
+
+    public Long getLinkId() {
+        return linkId;
+    }
+
+    public void setLinkId(Long linkId) {
+        this.linkId = linkId;
+    }
 }
\ No newline at end of file
@@ -38,6 +38,10 @@ public class Cart {
     @Column(nullable = false)
     private Double totalAmount;
 
+    // Link the most recent item was added from; checkout attributes the order to it
+    @Column(name = "source_link_id")
+    private Long sourceLinkId;
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
@@ -6,6 +6,9 @@ import dev.paul.cartlink.cart.model.Cart;
 import dev.paul.cartlink.cart.model.CartItem;
 import dev.paul.cartlink.cart.repository.CartItemRepository;
 import dev.paul.cartlink.cart.repository.CartRepository;
+import dev.paul.cartlink.link.model.FunnelStep;
+import dev.paul.cartlink.link.repository.LinkRepository;
+import dev.paul.cartlink.link.service.LinkAnalyticsService;
 import dev.paul.cartlink.merchant.model.MerchantProduct;
 import dev.paul.cartlink.merchant.repository.MerchantProductRepository;
 import jakarta.transaction.Transactional;
@@ -29,6 +32,8 @@ public class CartService {
     private final CartRepository cartRepository;
     private final CartItemRepository cartItemRepository;
     private final MerchantProductRepository merchantProductRepository;
+    private final LinkRepository linkRepository;
+    private final LinkAnalyticsService linkAnalyticsService;
     @Autowired
     private PaymentService paymentService;
     @Autowired
@@ -67,6 +72,13 @@ public class CartService {
             cartItemRepository.save(cartItem);
         }
 
+        // Unknown link ids only lose the attribution, the item is still added
+        Long linkId = cartItemRequest.getLinkId();
+        if (linkId != null && linkRepository.existsById(linkId)) {
+            cart.setSourceLinkId(linkId);
+            linkAnalyticsService.recordFunnelStep(linkId, FunnelStep.CART_ADD);
+        }
+
         return cartRepository.save(cart);
     }
 
@@ -124,7 +136,17 @@ public class CartService {
         if (cart.getCustomer() == null) {
             return new CheckoutResponse(null, PaymentStatus.FAILED, null, "No customer associated with cart");
         }
-        Order order = orderService.createOrder(merchantProduct, cart.getCustomer(), totalQuantity, null);
+        // The order is for the first item, so only a link that offers that product gets the credit
+        Long sourceLinkId = cart.getSourceLinkId();
+        if (sourceLinkId != null
+                && !linkRepository.existsByIdAndMerchantProducts_Id(sourceLinkId, merchantProduct.getId())) {
+            sourceLinkId = null;
+        }
+        Order order = orderService.createOrder(merchantProduct, cart.getCustomer(), totalQuantity, sourceLinkId);
+        linkAnalyticsService.recordFunnelStep(sourceLinkId, FunnelStep.CHECKOUT);
+        // A later checkout from the same cart starts without attribution until an item comes from a link again
+        cart.setSourceLinkId(null);
+        cartRepository.save(cart);
         order.setTotalPrice(totalAmount);
         orderService.updateOrderStatus(order.getOrderId(), dev.paul.cartlink.order.model.OrderStatus.PENDING);
         // Generate txRef (could be UUID or orderId-based)
@@ -11,6 +11,7 @@ import dev.paul.cartlink.security.service.SecurityService;
 import dev.paul.cartlink.order.model.Order;
 import dev.paul.cartlink.order.model.OrderStatus;
 import dev.paul.cartlink.order.repository.OrderRepository;
+import dev.paul.cartlink.order.service.OrderEventPublisher;
 import dev.paul.cartlink.customer.dto.CustomerProfileUpdateRequest;
 
 import java.util.Map;
@@ -24,6 +25,9 @@ public class CustomerService {
     @Autowired
     private SecurityService securityService;
 
+    @Autowired
+    private OrderEventPublisher orderEventPublisher;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
@@ -122,7 +126,9 @@ public class CustomerService {
             order.setStatus(OrderStatus.PENDING);
         if (order.getPaid() == null)
             order.setPaid(false);
-        return orderRepository.save(order);
+        Order saved = orderRepository.save(order);
+        orderEventPublisher.created(saved);
+        return saved;
     }
 
     // Authenticate customer with email and password
@@ -0,0 +1,72 @@
+package dev.paul.cartlink.link.controller;
+
+import dev.paul.cartlink.link.dto.BeaconBatch;
+import dev.paul.cartlink.link.dto.EngagementEvent;
+import dev.paul.cartlink.link.service.BeaconParser;
+import dev.paul.cartlink.link.service.EngagementIngestor;
+import dev.paul.cartlink.link.service.LinkMerchantResolver;
+import dev.paul.cartlink.link.service.LinkService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batch endpoint for navigator.sendBeacon. The storefront buffers pageview,
+ * timespent and click events and flushes them in one request, typically on
+ * page hide. The body is read from the raw request stream because beacons
+ * are usually sent as text/plain. The endpoint is unauthenticated, so click
+ * events only count where the redirect did not, within a per-visitor limit,
+ * and engagement events for links that do not exist are dropped.
+ */
+@RestController
+@RequestMapping("/api/analytics")
+public class AnalyticsBeaconController {
+
+    private final BeaconParser beaconParser;
+    private final EngagementIngestor engagementIngestor;
+    private final LinkService linkService;
+    private final LinkMerchantResolver linkMerchantResolver;
+
+    public AnalyticsBeaconController(BeaconParser beaconParser, EngagementIngestor engagementIngestor,
+            LinkService linkService, LinkMerchantResolver linkMerchantResolver) {
+        this.beaconParser = beaconParser;
+        this.engagementIngestor = engagementIngestor;
+        this.linkService = linkService;
+        this.linkMerchantResolver = linkMerchantResolver;
+    }
+
+    @PostMapping("/beacon")
+    public ResponseEntity<?> recordBeacon(HttpServletRequest request) throws IOException {
+        BeaconBatch batch;
+        try {
+            batch = beaconParser.parse(request.getInputStream());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        int queued = engagementIngestor.submitAll(knownLinks(batch.getEngagementEvents()));
+        int clicks = linkService.recordBeaconClicks(batch.getClicks(), request);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("received", batch.size());
+        result.put("accepted", queued + clicks);
+        result.put("dropped", batch.size() - queued - clicks);
+        return ResponseEntity.accepted().body(result);
+    }
+
+    private List<EngagementEvent> knownLinks(List<EngagementEvent> events) {
+        if (events.isEmpty()) {
+            return events;
+        }
+        Set<Long> known = linkMerchantResolver.resolve(events.stream()
+                .map(EngagementEvent::getLinkId).distinct().toList()).keySet();
+        return events.stream().filter(event -> known.contains(event.getLinkId())).toList();
+    }
+}
@@ -1,25 +1,44 @@
 package dev.paul.cartlink.link.controller;
 
+import dev.paul.cartlink.link.dto.EngagementEvent;
 import dev.paul.cartlink.link.model.LinkAnalytics;
 import dev.paul.cartlink.link.repository.LinkAnalyticsRepository;
+import dev.paul.cartlink.link.service.BeaconParser;
+import dev.paul.cartlink.link.service.EngagementIngestor;
+import dev.paul.cartlink.link.service.LinkAnalyticsService;
+import dev.paul.cartlink.link.service.LinkMerchantResolver;
+import dev.paul.cartlink.merchant.model.Merchant;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/analytics")
 public class LinkAnalyticsController {
     private final LinkAnalyticsRepository linkAnalyticsRepository;
+    private final LinkAnalyticsService linkAnalyticsService;
+    private final EngagementIngestor engagementIngestor;
+    private final LinkMerchantResolver linkMerchantResolver;
 
     @Autowired
-    public LinkAnalyticsController(LinkAnalyticsRepository linkAnalyticsRepository) {
+    public LinkAnalyticsController(LinkAnalyticsRepository linkAnalyticsRepository,
+            LinkAnalyticsService linkAnalyticsService, EngagementIngestor engagementIngestor,
+            LinkMerchantResolver linkMerchantResolver) {
         this.linkAnalyticsRepository = linkAnalyticsRepository;
+        this.linkAnalyticsService = linkAnalyticsService;
+        this.engagementIngestor = engagementIngestor;
+        this.linkMerchantResolver = linkMerchantResolver;
     }
 
-    // DTO for update request
+    // DTO for update request. bounceRate is derived from time-on-page samples and ignored here;
+    // averageTimeSpent is taken as one more sample rather than overwriting the running average.
     public static class AnalyticsUpdateRequest {
         public String geolocation;
         public Double bounceRate;
@@ -33,11 +52,12 @@ public class LinkAnalyticsController {
             return ResponseEntity.notFound().build();
         }
         LinkAnalytics analytics = analyticsOpt.get();
-        if (req.geolocation != null) analytics.setGeolocation(req.geolocation);
-        if (req.bounceRate != null) analytics.setBounceRate(req.bounceRate);
-        if (req.averageTimeSpent != null) analytics.setAverageTimeSpent(req.averageTimeSpent);
-        analytics.setLastUpdated(java.time.LocalDateTime.now());
-        linkAnalyticsRepository.save(analytics);
+        if (req.averageTimeSpent != null && analytics.getLink() != null
+                && req.averageTimeSpent >= 0 && req.averageTimeSpent <= BeaconParser.MAX_TIME_SPENT_SECONDS) {
+            engagementIngestor.submit(EngagementEvent.timeSpent(analytics.getLink().getId(), req.averageTimeSpent));
+        }
+        // Targeted update; saving the loaded entity would write back stale aggregator counters
+        linkAnalyticsService.updateGeolocation(analyticsId, req.geolocation);
         return ResponseEntity.ok().build();
     }
 
@@ -49,4 +69,83 @@ public class LinkAnalyticsController {
         }
         return ResponseEntity.ok(analyticsOpt.get());
     }
-}
\ No newline at end of file
+
+    @GetMapping("/links/{linkId}/stats")
+    public ResponseEntity<?> getLinkStats(@AuthenticationPrincipal Merchant merchant, @PathVariable Long linkId,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate) {
+        ResponseEntity<?> denied = checkOwner(merchant, linkId);
+        if (denied != null) {
+            return denied;
+        }
+        try {
+            return ResponseEntity.ok(linkAnalyticsService.getLinkStats(linkId, startDate, endDate));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/links/{linkId}/funnel")
+    public ResponseEntity<?> getLinkFunnel(@AuthenticationPrincipal Merchant merchant, @PathVariable Long linkId) {
+        ResponseEntity<?> denied = checkOwner(merchant, linkId);
+        if (denied != null) {
+            return denied;
+        }
+        try {
+            return ResponseEntity.ok(linkAnalyticsService.getLinkFunnel(linkId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/pageview/{linkId}")
+    public ResponseEntity<?> recordPageView(@PathVariable Long linkId) {
+        if (!linkExists(linkId)) {
+            return linkNotFound();
+        }
+        return accepted(engagementIngestor.submit(EngagementEvent.pageView(linkId)));
+    }
+
+    @PostMapping("/timespent/{linkId}")
+    public ResponseEntity<?> recordTimeSpent(@PathVariable Long linkId, @RequestParam long timeSpentSeconds) {
+        if (timeSpentSeconds < 0 || timeSpentSeconds > BeaconParser.MAX_TIME_SPENT_SECONDS) {
+            return ResponseEntity.badRequest().body(
+                    Map.of("error", "timeSpentSeconds must be between 0 and " + BeaconParser.MAX_TIME_SPENT_SECONDS));
+        }
+        if (!linkExists(linkId)) {
+            return linkNotFound();
+        }
+        return accepted(engagementIngestor.submit(EngagementEvent.timeSpent(linkId, timeSpentSeconds)));
+    }
+
+    // Returns the error response unless the link exists and belongs to the merchant
+    private ResponseEntity<?> checkOwner(Merchant merchant, Long linkId) {
+        if (merchant == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Unauthorized"));
+        }
+        Long ownerId = linkMerchantResolver.resolve(List.of(linkId)).get(linkId);
+        if (ownerId == null) {
+            return linkNotFound();
+        }
+        if (!ownerId.equals(merchant.getId())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Forbidden"));
+        }
+        return null;
+    }
+
+    // Unknown links are refused here; the aggregator would otherwise write rollup rows for them
+    private boolean linkExists(Long linkId) {
+        return !linkMerchantResolver.resolve(List.of(linkId)).isEmpty();
+    }
+
+    private ResponseEntity<?> linkNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Link not found"));
+    }
+
+    private ResponseEntity<?> accepted(boolean queued) {
+        if (!queued) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", "Ingest queue is full"));
+        }
+        return ResponseEntity.accepted().build();
+    }
+}
@@ -0,0 +1,158 @@
+package dev.paul.cartlink.link.controller;
+
+import dev.paul.cartlink.link.dto.BulkLinkRequest;
+import dev.paul.cartlink.link.dto.BulkLinkResult;
+import dev.paul.cartlink.link.dto.ResolvedLink;
+import dev.paul.cartlink.link.dto.StorefrontPayload;
+import dev.paul.cartlink.link.service.BeaconClickLimiter;
+import dev.paul.cartlink.link.service.BulkLinkService;
+import dev.paul.cartlink.link.service.ClickAggregator;
+import dev.paul.cartlink.link.service.ClickJournal;
+import dev.paul.cartlink.link.service.EngagementIngestor;
+import dev.paul.cartlink.link.service.GeoIpResolver;
+import dev.paul.cartlink.link.service.LinkResolutionCache;
+import dev.paul.cartlink.link.service.LiveTrafficHub;
+import dev.paul.cartlink.link.service.LinkService;
+import dev.paul.cartlink.link.service.SlugBloomFilter;
+import dev.paul.cartlink.link.service.UserAgentClassifier;
+import dev.paul.cartlink.merchant.model.Merchant;
+import dev.paul.cartlink.merchant.service.DashboardCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/links")
+public class LinkController {
+
+    private final LinkResolutionCache linkResolutionCache;
+    private final ClickAggregator clickAggregator;
+    private final ClickJournal clickJournal;
+    private final UserAgentClassifier userAgentClassifier;
+    private final SlugBloomFilter slugBloomFilter;
+    private final EngagementIngestor engagementIngestor;
+    private final GeoIpResolver geoIpResolver;
+    private final LiveTrafficHub liveTrafficHub;
+    private final DashboardCache dashboardCache;
+    private final LinkService linkService;
+    private final BulkLinkService bulkLinkService;
+    private final BeaconClickLimiter beaconClickLimiter;
+
+    public LinkController(LinkResolutionCache linkResolutionCache, ClickAggregator clickAggregator,
+            ClickJournal clickJournal, UserAgentClassifier userAgentClassifier, SlugBloomFilter slugBloomFilter,
+            EngagementIngestor engagementIngestor, GeoIpResolver geoIpResolver, LiveTrafficHub liveTrafficHub,
+            DashboardCache dashboardCache, LinkService linkService, BulkLinkService bulkLinkService,
+            BeaconClickLimiter beaconClickLimiter) {
+        this.linkResolutionCache = linkResolutionCache;
+        this.clickAggregator = clickAggregator;
+        this.clickJournal = clickJournal;
+        this.userAgentClassifier = userAgentClassifier;
+        this.slugBloomFilter = slugBloomFilter;
+        this.engagementIngestor = engagementIngestor;
+        this.geoIpResolver = geoIpResolver;
+        this.liveTrafficHub = liveTrafficHub;
+        this.dashboardCache = dashboardCache;
+        this.linkService = linkService;
+        this.bulkLinkService = bulkLinkService;
+        this.beaconClickLimiter = beaconClickLimiter;
+    }
+
+    /**
+     * Creates one link per entry for the authenticated merchant. Entries that
+     * fail validation are reported in their result and do not stop the rest.
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<?> createLinks(@AuthenticationPrincipal Merchant merchant,
+            @RequestBody BulkLinkRequest request) {
+        if (merchant == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Unauthorized"));
+        }
+        if (request.getLinks() == null || request.getLinks().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "At least one link is required"));
+        }
+        try {
+            List<BulkLinkResult> results = bulkLinkService.createLinks(merchant.getId(), request.getLinks().stream()
+                    .map(BulkLinkRequest.LinkSpec::getMerchantProductIds).toList());
+            long created = results.stream().filter(BulkLinkResult::isCreated).count();
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("created", created);
+            body.put("failed", results.size() - created);
+            body.put("results", results);
+            return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Storefront view of a link; every request counts as a click. The body is
+     * pre-serialised, and repeat visits carrying the ETag get a 304 without it.
+     * no-cache lets browsers and CDNs store the body but makes them revalidate,
+     * so each visit still reaches the click counters.
+     */
+    @GetMapping("/{slug}")
+    public ResponseEntity<?> getStorefront(@PathVariable String slug, HttpServletRequest request,
+            HttpServletResponse response) {
+        ResolvedLink link;
+        try {
+            link = linkService.resolveLink(slug, request, response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+        StorefrontPayload payload = link.getStorefrontPayload();
+        if (matchesEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), payload.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(payload.getEtag())
+                    .cacheControl(CacheControl.noCache()).build();
+        }
+        return ResponseEntity.ok().eTag(payload.getEtag()).cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON).body(payload.getBody());
+    }
+
+    // If-None-Match uses weak comparison, so W/ prefixes added by proxies still match
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("resolutionCache", linkResolutionCache.getStats());
+        metrics.put("clickAggregator", clickAggregator.getStats());
+        metrics.put("clickJournal", clickJournal.getStats());
+        metrics.put("userAgentCache", userAgentClassifier.getStats());
+        metrics.put("slugFilter", slugBloomFilter.getStats());
+        metrics.put("engagementIngest", engagementIngestor.getStats());
+        metrics.put("beaconClicks", beaconClickLimiter.getStats());
+        metrics.put("geoIp", geoIpResolver.getStats());
+        metrics.put("liveTraffic", liveTrafficHub.getStats());
+        metrics.put("dashboardCache", dashboardCache.getStats());
+        return ResponseEntity.ok(metrics);
+    }
+}
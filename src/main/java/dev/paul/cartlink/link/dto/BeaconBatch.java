@@ -0,0 +1,53 @@
+package dev.paul.cartlink.link.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Events from one analytics beacon request: engagement events keyed by link
+ * id, and clicks keyed by slug as the storefront sees them.
+ */
+public final class BeaconBatch {
+
+    private final List<EngagementEvent> engagementEvents = new ArrayList<>();
+    private final List<Click> clicks = new ArrayList<>();
+
+    public void addEngagementEvent(EngagementEvent event) {
+        engagementEvents.add(event);
+    }
+
+    public void addClick(String slug, String referrer) {
+        clicks.add(new Click(slug, referrer));
+    }
+
+    public List<EngagementEvent> getEngagementEvents() {
+        return engagementEvents;
+    }
+
+    public List<Click> getClicks() {
+        return clicks;
+    }
+
+    public int size() {
+        return engagementEvents.size() + clicks.size();
+    }
+
+    public static final class Click {
+        private final String slug;
+        private final String referrer;
+
+        private Click(String slug, String referrer) {
+            this.slug = slug;
+            this.referrer = referrer;
+        }
+
+        public String getSlug() {
+            return slug;
+        }
+
+        /** Referrer of the original click, or null for a direct visit. */
+        public String getReferrer() {
+            return referrer;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dev.paul.cartlink.link.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public class BulkLinkRequest {
+    private List<LinkSpec> links = new ArrayList<>();
+
+    public BulkLinkRequest() {
+    }
+
+    public List<LinkSpec> getLinks() {
+        return links;
+    }
+
+    public void setLinks(List<LinkSpec> links) {
+        this.links = links;
+    }
+
+    public static class LinkSpec {
+        private Set<Long> merchantProductIds;
+
+        public LinkSpec() {
+        }
+
+        public LinkSpec(Set<Long> merchantProductIds) {
+            this.merchantProductIds = merchantProductIds;
+        }
+
+        public Set<Long> getMerchantProductIds() {
+            return merchantProductIds;
+        }
+
+        public void setMerchantProductIds(Set<Long> merchantProductIds) {
+            this.merchantProductIds = merchantProductIds;
+        }
+    }
+}
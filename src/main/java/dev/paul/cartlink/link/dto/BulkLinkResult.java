@@ -0,0 +1,47 @@
+package dev.paul.cartlink.link.dto;
+
+/**
+ * Outcome of one entry of a bulk link request: the new link, or the reason it
+ * was not created.
+ */
+public class BulkLinkResult {
+    private final int index;
+    private final Long linkId;
+    private final String slug;
+    private final String error;
+
+    private BulkLinkResult(int index, Long linkId, String slug, String error) {
+        this.index = index;
+        this.linkId = linkId;
+        this.slug = slug;
+        this.error = error;
+    }
+
+    public static BulkLinkResult created(int index, Long linkId, String slug) {
+        return new BulkLinkResult(index, linkId, slug, null);
+    }
+
+    public static BulkLinkResult failed(int index, String error) {
+        return new BulkLinkResult(index, null, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Long getLinkId() {
+        return linkId;
+    }
+
+    public String getSlug() {
+        return slug;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isCreated() {
+        return error == null;
+    }
+}
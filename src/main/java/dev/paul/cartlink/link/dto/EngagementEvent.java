@@ -0,0 +1,42 @@
+package dev.paul.cartlink.link.dto;
+
+/**
+ * A page view or time-on-page sample reported by the storefront for a link.
+ */
+public final class EngagementEvent {
+
+    public enum Type {
+        PAGEVIEW,
+        TIMESPENT
+    }
+
+    private final Type type;
+    private final long linkId;
+    private final long timeSpentSeconds;
+
+    private EngagementEvent(Type type, long linkId, long timeSpentSeconds) {
+        this.type = type;
+        this.linkId = linkId;
+        this.timeSpentSeconds = timeSpentSeconds;
+    }
+
+    public static EngagementEvent pageView(long linkId) {
+        return new EngagementEvent(Type.PAGEVIEW, linkId, 0);
+    }
+
+    public static EngagementEvent timeSpent(long linkId, long timeSpentSeconds) {
+        return new EngagementEvent(Type.TIMESPENT, linkId, timeSpentSeconds);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getLinkId() {
+        return linkId;
+    }
+
+    public long getTimeSpentSeconds() {
+        return timeSpentSeconds;
+    }
+}
@@ -0,0 +1,37 @@
+package dev.paul.cartlink.link.dto;
+
+public class LinkClickTotals {
+    private final long clicks;
+    private final long mobileClicks;
+    private final long desktopClicks;
+    private final long orders;
+    private final long buckets;
+
+    public LinkClickTotals(Long clicks, Long mobileClicks, Long desktopClicks, Long orders, Long buckets) {
+        this.clicks = clicks != null ? clicks : 0;
+        this.mobileClicks = mobileClicks != null ? mobileClicks : 0;
+        this.desktopClicks = desktopClicks != null ? desktopClicks : 0;
+        this.orders = orders != null ? orders : 0;
+        this.buckets = buckets != null ? buckets : 0;
+    }
+
+    public long getClicks() {
+        return clicks;
+    }
+
+    public long getMobileClicks() {
+        return mobileClicks;
+    }
+
+    public long getDesktopClicks() {
+        return desktopClicks;
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+
+    public long getBuckets() {
+        return buckets;
+    }
+}
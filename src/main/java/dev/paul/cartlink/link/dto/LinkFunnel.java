@@ -0,0 +1,67 @@
+package dev.paul.cartlink.link.dto;
+
+import dev.paul.cartlink.link.model.LinkAnalytics;
+
+/**
+ * Lifetime funnel counters of one link with the step-to-step conversion
+ * rates. Rates are 0 when the previous step has no events.
+ */
+public class LinkFunnel {
+    private final long clicks;
+    private final long cartAdds;
+    private final long checkouts;
+    private final long paidOrders;
+
+    public LinkFunnel(long clicks, long cartAdds, long checkouts, long paidOrders) {
+        this.clicks = clicks;
+        this.cartAdds = cartAdds;
+        this.checkouts = checkouts;
+        this.paidOrders = paidOrders;
+    }
+
+    public static LinkFunnel of(LinkAnalytics analytics) {
+        return new LinkFunnel(valueOf(analytics.getTotalClicks()), valueOf(analytics.getCartAdds()),
+                valueOf(analytics.getCheckouts()), valueOf(analytics.getPaidOrders()));
+    }
+
+    private static long valueOf(Long value) {
+        return value != null ? value : 0;
+    }
+
+    private static double rate(long count, long base) {
+        return base > 0 ? (double) count / base : 0.0;
+    }
+
+    public long getClicks() {
+        return clicks;
+    }
+
+    public long getCartAdds() {
+        return cartAdds;
+    }
+
+    public long getCheckouts() {
+        return checkouts;
+    }
+
+    public long getPaidOrders() {
+        return paidOrders;
+    }
+
+    public double getCartAddRate() {
+        return rate(cartAdds, clicks);
+    }
+
+    public double getCheckoutRate() {
+        return rate(checkouts, cartAdds);
+    }
+
+    public double getPaymentRate() {
+        return rate(paidOrders, checkouts);
+    }
+
+    // Paid orders per click
+    public double getConversionRate() {
+        return rate(paidOrders, clicks);
+    }
+}
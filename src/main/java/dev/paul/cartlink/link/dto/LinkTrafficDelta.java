@@ -0,0 +1,40 @@
+package dev.paul.cartlink.link.dto;
+
+/**
+ * Clicks and orders counted for one link since the previous aggregator flush.
+ */
+public class LinkTrafficDelta {
+    private final long linkId;
+    private final long clicks;
+    private final long mobileClicks;
+    private final long desktopClicks;
+    private final long orders;
+
+    public LinkTrafficDelta(long linkId, long clicks, long mobileClicks, long desktopClicks, long orders) {
+        this.linkId = linkId;
+        this.clicks = clicks;
+        this.mobileClicks = mobileClicks;
+        this.desktopClicks = desktopClicks;
+        this.orders = orders;
+    }
+
+    public long getLinkId() {
+        return linkId;
+    }
+
+    public long getClicks() {
+        return clicks;
+    }
+
+    public long getMobileClicks() {
+        return mobileClicks;
+    }
+
+    public long getDesktopClicks() {
+        return desktopClicks;
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+}
@@ -0,0 +1,19 @@
+package dev.paul.cartlink.link.dto;
+
+import java.util.List;
+
+/**
+ * Published by the click aggregator after each committed flush with the
+ * click and order deltas it wrote.
+ */
+public class LinkTrafficEvent {
+    private final List<LinkTrafficDelta> deltas;
+
+    public LinkTrafficEvent(List<LinkTrafficDelta> deltas) {
+        this.deltas = deltas;
+    }
+
+    public List<LinkTrafficDelta> getDeltas() {
+        return deltas;
+    }
+}
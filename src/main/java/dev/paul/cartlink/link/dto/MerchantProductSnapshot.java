@@ -0,0 +1,76 @@
+package dev.paul.cartlink.link.dto;
+
+import dev.paul.cartlink.merchant.model.MerchantProduct;
+import dev.paul.cartlink.product.model.Product;
+
+/**
+ * Immutable copy of the MerchantProduct fields a link visitor needs, taken at
+ * resolution time so cached links never hold on to managed entities.
+ */
+public final class MerchantProductSnapshot {
+    private final Long merchantProductId;
+    private final Long productId;
+    private final String name;
+    private final String brand;
+    private final String category;
+    private final Double price;
+    private final Integer stock;
+    private final String description;
+
+    public MerchantProductSnapshot(Long merchantProductId, Long productId, String name, String brand,
+            String category, Double price, Integer stock, String description) {
+        this.merchantProductId = merchantProductId;
+        this.productId = productId;
+        this.name = name;
+        this.brand = brand;
+        this.category = category;
+        this.price = price;
+        this.stock = stock;
+        this.description = description;
+    }
+
+    public static MerchantProductSnapshot of(MerchantProduct merchantProduct) {
+        Product product = merchantProduct.getProduct();
+        return new MerchantProductSnapshot(
+                merchantProduct.getId(),
+                product != null ? product.getProductId() : null,
+                product != null ? product.getName() : null,
+                product != null ? product.getBrand() : null,
+                product != null ? product.getCategory() : null,
+                merchantProduct.getPrice(),
+                merchantProduct.getStock(),
+                merchantProduct.getDescription());
+    }
+
+    public Long getMerchantProductId() {
+        return merchantProductId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public Double getPrice() {
+        return price;
+    }
+
+    public Integer getStock() {
+        return stock;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
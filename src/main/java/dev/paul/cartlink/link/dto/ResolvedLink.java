@@ -0,0 +1,74 @@
+package dev.paul.cartlink.link.dto;
+
+import dev.paul.cartlink.link.model.Link;
+
+import java.util.List;
+
+/**
+ * Immutable snapshot of a link and the products behind it. This is what the
+ * resolution cache stores and what resolveLink hands back to callers.
+ */
+public final class ResolvedLink {
+    private final Long linkId;
+    private final String slug;
+    private final Long merchantId;
+    private final Long analyticsId;
+    private final List<MerchantProductSnapshot> merchantProducts;
+    private final StorefrontPayload storefrontPayload;
+
+    public ResolvedLink(Long linkId, String slug, Long merchantId, Long analyticsId,
+            List<MerchantProductSnapshot> merchantProducts) {
+        this(linkId, slug, merchantId, analyticsId, merchantProducts, null);
+    }
+
+    private ResolvedLink(Long linkId, String slug, Long merchantId, Long analyticsId,
+            List<MerchantProductSnapshot> merchantProducts, StorefrontPayload storefrontPayload) {
+        this.linkId = linkId;
+        this.slug = slug;
+        this.merchantId = merchantId;
+        this.analyticsId = analyticsId;
+        this.merchantProducts = List.copyOf(merchantProducts);
+        this.storefrontPayload = storefrontPayload;
+    }
+
+    public static ResolvedLink of(Link link) {
+        return new ResolvedLink(
+                link.getId(),
+                link.getSlug(),
+                link.getMerchant().getId(),
+                link.getAnalytics() != null ? link.getAnalytics().getAnalyticsId() : null,
+                link.getMerchantProducts().stream().map(MerchantProductSnapshot::of).toList());
+    }
+
+    public ResolvedLink withStorefrontPayload(StorefrontPayload payload) {
+        return new ResolvedLink(linkId, slug, merchantId, analyticsId, merchantProducts, payload);
+    }
+
+    public boolean containsMerchantProduct(Long merchantProductId) {
+        return merchantProducts.stream().anyMatch(p -> p.getMerchantProductId().equals(merchantProductId));
+    }
+
+    public Long getLinkId() {
+        return linkId;
+    }
+
+    public String getSlug() {
+        return slug;
+    }
+
+    public Long getMerchantId() {
+        return merchantId;
+    }
+
+    public Long getAnalyticsId() {
+        return analyticsId;
+    }
+
+    public List<MerchantProductSnapshot> getMerchantProducts() {
+        return merchantProducts;
+    }
+
+    public StorefrontPayload getStorefrontPayload() {
+        return storefrontPayload;
+    }
+}
@@ -0,0 +1,22 @@
+package dev.paul.cartlink.link.dto;
+
+/**
+ * Clicks from one traffic source summed over a set of links.
+ */
+public class SourceClickTotal {
+    private final String source;
+    private final long clicks;
+
+    public SourceClickTotal(String source, Long clicks) {
+        this.source = source;
+        this.clicks = clicks != null ? clicks : 0;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getClicks() {
+        return clicks;
+    }
+}
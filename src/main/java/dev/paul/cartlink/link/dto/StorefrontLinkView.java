@@ -0,0 +1,71 @@
+package dev.paul.cartlink.link.dto;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * What a link visitor's storefront renders: the link and, for each product,
+ * only the fields shown on the page.
+ */
+public class StorefrontLinkView {
+    private final String slug;
+    private final List<Product> products;
+
+    public StorefrontLinkView(String slug, List<Product> products) {
+        this.slug = slug;
+        this.products = products;
+    }
+
+    public static StorefrontLinkView of(ResolvedLink link) {
+        return new StorefrontLinkView(link.getSlug(), link.getMerchantProducts().stream()
+                .map(p -> new Product(p.getMerchantProductId(), p.getName(), p.getPrice(),
+                        p.getStock() != null && p.getStock() > 0, p.getDescription()))
+                // The products are a Set; sort them so the page and its ETag are stable
+                .sorted(Comparator.comparing(Product::getMerchantProductId))
+                .toList());
+    }
+
+    public String getSlug() {
+        return slug;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    public static class Product {
+        private final Long merchantProductId;
+        private final String name;
+        private final Double price;
+        private final boolean inStock;
+        private final String description;
+
+        public Product(Long merchantProductId, String name, Double price, boolean inStock, String description) {
+            this.merchantProductId = merchantProductId;
+            this.name = name;
+            this.price = price;
+            this.inStock = inStock;
+            this.description = description;
+        }
+
+        public Long getMerchantProductId() {
+            return merchantProductId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Double getPrice() {
+            return price;
+        }
+
+        public boolean isInStock() {
+            return inStock;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
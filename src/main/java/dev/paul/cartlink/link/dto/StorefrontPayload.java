@@ -0,0 +1,25 @@
+package dev.paul.cartlink.link.dto;
+
+/**
+ * The storefront view of a link, serialised once and served as raw bytes,
+ * together with its strong ETag.
+ */
+public final class StorefrontPayload {
+    private final byte[] body;
+    private final String etag;
+
+    public StorefrontPayload(byte[] body, String etag) {
+        this.body = body;
+        this.etag = etag;
+    }
+
+    /** The serialised JSON. Shared between requests, so callers must not modify it. */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /** Quoted strong entity tag derived from the body. */
+    public String getEtag() {
+        return etag;
+    }
+}
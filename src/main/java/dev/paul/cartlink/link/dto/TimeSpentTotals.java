@@ -0,0 +1,37 @@
+package dev.paul.cartlink.link.dto;
+
+import dev.paul.cartlink.util.RunningStats;
+
+public class TimeSpentTotals {
+    private final long samples;
+    private final double mean;
+    private final double standardDeviation;
+    private final long bounces;
+
+    public TimeSpentTotals(RunningStats stats, long bounces) {
+        this.samples = stats.getCount();
+        this.mean = stats.getMean();
+        this.standardDeviation = stats.standardDeviation();
+        this.bounces = bounces;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    public long getBounces() {
+        return bounces;
+    }
+
+    public double getBounceRate() {
+        return samples == 0 ? 0.0 : (double) bounces / samples;
+    }
+}
@@ -0,0 +1,41 @@
+package dev.paul.cartlink.link.dto;
+
+import dev.paul.cartlink.link.model.BrowserFamily;
+import dev.paul.cartlink.link.model.DeviceClass;
+import dev.paul.cartlink.link.model.OperatingSystem;
+
+public final class UserAgentClassification {
+    public static final UserAgentClassification UNKNOWN = new UserAgentClassification(DeviceClass.UNKNOWN,
+            OperatingSystem.UNKNOWN, BrowserFamily.UNKNOWN);
+
+    private final DeviceClass deviceClass;
+    private final OperatingSystem operatingSystem;
+    private final BrowserFamily browser;
+
+    public UserAgentClassification(DeviceClass deviceClass, OperatingSystem operatingSystem,
+            BrowserFamily browser) {
+        this.deviceClass = deviceClass;
+        this.operatingSystem = operatingSystem;
+        this.browser = browser;
+    }
+
+    public DeviceClass getDeviceClass() {
+        return deviceClass;
+    }
+
+    public OperatingSystem getOperatingSystem() {
+        return operatingSystem;
+    }
+
+    public BrowserFamily getBrowser() {
+        return browser;
+    }
+
+    public boolean isMobile() {
+        return deviceClass.isMobile();
+    }
+
+    public boolean isRobot() {
+        return deviceClass == DeviceClass.ROBOT;
+    }
+}
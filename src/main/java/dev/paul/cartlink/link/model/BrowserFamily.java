@@ -0,0 +1,40 @@
+package dev.paul.cartlink.link.model;
+
+/**
+ * Browser family of a click, stored as a one-byte code in the click journal.
+ * IN_APP covers the embedded browsers of social apps. Codes are persisted,
+ * so new values must take new codes.
+ */
+public enum BrowserFamily {
+    UNKNOWN(0),
+    CHROME(1),
+    SAFARI(2),
+    FIREFOX(3),
+    EDGE(4),
+    OPERA(5),
+    SAMSUNG_INTERNET(6),
+    IN_APP(7),
+    OTHER(8);
+
+    private static final BrowserFamily[] BY_CODE = new BrowserFamily[9];
+
+    static {
+        for (BrowserFamily value : values()) {
+            BY_CODE[value.code] = value;
+        }
+    }
+
+    private final byte code;
+
+    BrowserFamily(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public static BrowserFamily fromCode(byte code) {
+        return code >= 0 && code < BY_CODE.length && BY_CODE[code] != null ? BY_CODE[code] : UNKNOWN;
+    }
+}
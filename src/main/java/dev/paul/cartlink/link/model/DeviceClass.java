@@ -0,0 +1,42 @@
+package dev.paul.cartlink.link.model;
+
+/**
+ * Device class of a click, stored as a one-byte code in the click journal.
+ * Codes are persisted, so new values must take new codes.
+ */
+public enum DeviceClass {
+    UNKNOWN(0),
+    DESKTOP(1),
+    MOBILE(2),
+    TABLET(3),
+    TV(4),
+    CONSOLE(5),
+    ROBOT(6);
+
+    private static final DeviceClass[] BY_CODE = new DeviceClass[7];
+
+    static {
+        for (DeviceClass value : values()) {
+            BY_CODE[value.code] = value;
+        }
+    }
+
+    private final byte code;
+
+    DeviceClass(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    // Phones and tablets both count towards the link's mobile clicks
+    public boolean isMobile() {
+        return this == MOBILE || this == TABLET;
+    }
+
+    public static DeviceClass fromCode(byte code) {
+        return code >= 0 && code < BY_CODE.length && BY_CODE[code] != null ? BY_CODE[code] : UNKNOWN;
+    }
+}
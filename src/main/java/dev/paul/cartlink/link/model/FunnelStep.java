@@ -0,0 +1,11 @@
+package dev.paul.cartlink.link.model;
+
+/**
+ * Steps of a link's conversion funnel after the click itself, which is
+ * counted by the click path.
+ */
+public enum FunnelStep {
+    CART_ADD,
+    CHECKOUT,
+    PAID
+}
@@ -3,21 +3,26 @@ package dev.paul.cartlink.link.model;
 import dev.paul.cartlink.merchant.model.Merchant;
 import dev.paul.cartlink.merchant.model.MerchantProduct;
 import dev.paul.cartlink.link.model.LinkAnalytics;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.domain.Persistable;
 
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Data
 @Entity
 @NoArgsConstructor
-@Table(name = "links")
-public class Link {
+@Table(name = "links", indexes = @Index(name = "idx_links_created_at", columnList = "created_at"))
+public class Link implements Persistable<Long> {
 
+    // Assigned from SlugAllocator before the first save; the slug encodes it
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @Column(unique = true, nullable = false)
@@ -39,4 +44,26 @@ public class Link {
     @OneToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JoinColumn(name = "analytics_id", nullable = false)
     private LinkAnalytics analytics;
+
+    // Null for links created before this column existed
+    private LocalDateTime createdAt;
+
+    // The id is assigned up front, so Spring Data cannot tell new links apart by a null id
+    @Transient
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean newLink = true;
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return newLink;
+    }
+
+    @PostPersist
+    @PostLoad
+    void markNotNew() {
+        newLink = false;
+    }
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package dev.paul.cartlink.link.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.DynamicUpdate;
 import dev.paul.cartlink.merchant.model.MerchantProduct;
 
 import java.time.LocalDateTime;
@@ -11,7 +13,10 @@ import java.util.Map;
 
 @Data
 @Entity
-@Table(name = "link_analytics")
+// Counter columns are written by relative UPDATEs; an entity flush writes only the fields it changed
+@DynamicUpdate
+@Table(name = "link_analytics", indexes = @Index(name = "idx_link_analytics_last_updated",
+        columnList = "last_updated, analytics_id"))
 public class LinkAnalytics {
 
     @Id
@@ -27,6 +32,14 @@ public class LinkAnalytics {
     @Column(nullable = false)
     private Integer totalUniqueDesktops = 0;
 
+    // Every click, including returning visitors; totalUniqueClicks only counts new ones
+    private Long totalClicks = 0L;
+
+    // HyperLogLog registers over visitor cookie ids, see dev.paul.cartlink.util.HyperLogLog
+    @JsonIgnore
+    @Column(length = 8192)
+    private byte[] visitorSketch;
+
     @OneToOne(mappedBy = "analytics", fetch = FetchType.LAZY)
     // 'mappedBy' refers to the 'analytics' field in the Link entity
     private Link link;
@@ -35,13 +48,15 @@ public class LinkAnalytics {
 @JoinTable(
     name = "link_analytics_products",
     joinColumns = @JoinColumn(name = "analytics_id"),
-    inverseJoinColumns = @JoinColumn(name = "product_id")
+    inverseJoinColumns = @JoinColumn(name = "product_id"),
+    indexes = @Index(name = "idx_link_analytics_products_product", columnList = "product_id")
 )
 private Set<MerchantProduct> merchantProducts;
 
 
     @ElementCollection
-    @CollectionTable(name = "link_analytics_sources", joinColumns = @JoinColumn(name = "analytics_id"))
+    @CollectionTable(name = "link_analytics_sources", joinColumns = @JoinColumn(name = "analytics_id"),
+            indexes = @Index(name = "idx_link_analytics_sources_source", columnList = "source, analytics_id"))
     @MapKeyColumn(name = "source")
     @Column(name = "clicks")
     private Map<String, Integer> uniqueSourceClicks = new HashMap<>();
@@ -50,12 +65,33 @@ private Set<MerchantProduct> merchantProducts;
 
     private Double bounceRate;
 
-    private Number conversionRate;
+    // Paid orders per click, kept in step with the funnel counters on each flush
+    private Double conversionRate;
 
     private Integer TotalOrders;
 
     private Long averageTimeSpent; // in seconds
 
+    private Long pageViews;
+
+    // Running time-on-page statistics (count, mean, M2), see dev.paul.cartlink.util.RunningStats;
+    // averageTimeSpent and bounceRate are derived from them on each flush
+    private Long timeSpentSamples;
+
+    private Double timeSpentMean;
+
+    @JsonIgnore
+    private Double timeSpentM2;
+
+    private Long bounces;
+
+    // Funnel counters, see dev.paul.cartlink.link.model.FunnelStep
+    private Long cartAdds;
+
+    private Long checkouts;
+
+    private Long paidOrders;
+
     @Column(nullable = false)
     private LocalDateTime lastUpdated = LocalDateTime.now();
 }
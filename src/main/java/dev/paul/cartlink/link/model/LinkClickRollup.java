@@ -0,0 +1,56 @@
+package dev.paul.cartlink.link.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Click, order and time-on-page statistics of one link over one time bucket. Recent traffic is
+ * kept per minute and folded into hour and then day buckets as it ages, so
+ * every click is counted in exactly one bucket.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "link_click_rollups", uniqueConstraints = @UniqueConstraint(name = "uk_link_click_rollups_bucket",
+        columnNames = { "link_id", "bucket_start", "granularity" }))
+public class LinkClickRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "link_id", nullable = false)
+    private Long linkId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private RollupGranularity granularity;
+
+    @Column(nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(nullable = false)
+    private Long clicks = 0L;
+
+    @Column(nullable = false)
+    private Long mobileClicks = 0L;
+
+    @Column(nullable = false)
+    private Long desktopClicks = 0L;
+
+    @Column(nullable = false)
+    private Long orders = 0L;
+
+    // Time-on-page samples reported in this bucket as count, mean and M2, see
+    // dev.paul.cartlink.util.RunningStats
+    private Long timeSpentSamples;
+
+    private Double timeSpentMean;
+
+    private Double timeSpentM2;
+
+    private Long bounces;
+}
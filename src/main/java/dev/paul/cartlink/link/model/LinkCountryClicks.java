@@ -0,0 +1,30 @@
+package dev.paul.cartlink.link.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of clicks on one link from one country, as resolved by
+ * {@link dev.paul.cartlink.link.service.GeoIpResolver}.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "link_country_clicks", uniqueConstraints = @UniqueConstraint(
+        name = "uk_link_country_clicks_country", columnNames = { "link_id", "country" }))
+public class LinkCountryClicks {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "link_id", nullable = false)
+    private Long linkId;
+
+    @Column(nullable = false, length = 8)
+    private String country;
+
+    @Column(nullable = false)
+    private Long clicks = 0L;
+}
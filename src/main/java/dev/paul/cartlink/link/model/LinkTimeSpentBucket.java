@@ -0,0 +1,30 @@
+package dev.paul.cartlink.link.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of time-on-page samples of one link that fell into one bucket of
+ * {@link dev.paul.cartlink.util.DurationHistogram}.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "link_time_spent_histograms", uniqueConstraints = @UniqueConstraint(
+        name = "uk_link_time_spent_histograms_bucket", columnNames = { "link_id", "bucket" }))
+public class LinkTimeSpentBucket {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "link_id", nullable = false)
+    private Long linkId;
+
+    @Column(nullable = false)
+    private Integer bucket;
+
+    @Column(nullable = false)
+    private Long samples = 0L;
+}
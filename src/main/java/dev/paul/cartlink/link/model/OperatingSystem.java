@@ -0,0 +1,38 @@
+package dev.paul.cartlink.link.model;
+
+/**
+ * Operating system family of a click, stored as a one-byte code in the click
+ * journal. Codes are persisted, so new values must take new codes.
+ */
+public enum OperatingSystem {
+    UNKNOWN(0),
+    ANDROID(1),
+    IOS(2),
+    WINDOWS(3),
+    MACOS(4),
+    LINUX(5),
+    CHROME_OS(6),
+    OTHER(7);
+
+    private static final OperatingSystem[] BY_CODE = new OperatingSystem[8];
+
+    static {
+        for (OperatingSystem value : values()) {
+            BY_CODE[value.code] = value;
+        }
+    }
+
+    private final byte code;
+
+    OperatingSystem(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public static OperatingSystem fromCode(byte code) {
+        return code >= 0 && code < BY_CODE.length && BY_CODE[code] != null ? BY_CODE[code] : UNKNOWN;
+    }
+}
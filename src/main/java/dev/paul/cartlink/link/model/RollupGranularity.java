@@ -0,0 +1,20 @@
+package dev.paul.cartlink.link.model;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum RollupGranularity {
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    RollupGranularity(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    public LocalDateTime bucketStart(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+}
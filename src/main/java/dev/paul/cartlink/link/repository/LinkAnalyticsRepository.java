@@ -1,7 +1,10 @@
 package dev.paul.cartlink.link.repository;
 
+import dev.paul.cartlink.link.dto.SourceClickTotal;
 import dev.paul.cartlink.link.model.LinkAnalytics;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import dev.paul.cartlink.link.model.Link;
@@ -22,4 +25,25 @@ public interface LinkAnalyticsRepository extends JpaRepository<LinkAnalytics, Lo
 
     @Query("SELECT la FROM LinkAnalytics la JOIN la.uniqueSourceClicks usc WHERE la.link = :link AND KEY(usc) = :source")
     List<LinkAnalytics> findByLinkAndUniqueSourceClicksKey(@Param("link") Link link, @Param("source") String source);
+
+    // Slices rather than pages: none of the callers needs a total, so no count query is run
+
+    @Query("SELECT la FROM LinkAnalytics la JOIN la.merchantProducts mp WHERE mp.id = :merchantProductId")
+    Slice<LinkAnalytics> findByMerchantProductId(@Param("merchantProductId") Long merchantProductId,
+            Pageable pageable);
+
+    Slice<LinkAnalytics> findByLastUpdatedBetween(LocalDateTime start, LocalDateTime end, Pageable pageable);
+
+    @Query("SELECT la FROM LinkAnalytics la JOIN la.uniqueSourceClicks usc WHERE KEY(usc) = :source")
+    Slice<LinkAnalytics> findBySource(@Param("source") String source, Pageable pageable);
+
+    @Query("SELECT la.visitorSketch FROM Link l JOIN l.analytics la WHERE l.merchant.merchantId = :merchantId AND la.visitorSketch IS NOT NULL")
+    List<byte[]> findVisitorSketchesByMerchantId(@Param("merchantId") Long merchantId);
+
+    // Source clicks of the links carrying any of the merchant's products, each link counted once
+    @Query("SELECT new dev.paul.cartlink.link.dto.SourceClickTotal(KEY(usc), SUM(VALUE(usc))) "
+            + "FROM LinkAnalytics la JOIN la.uniqueSourceClicks usc WHERE la.analyticsId IN "
+            + "(SELECT l.analytics.analyticsId FROM Link l JOIN l.merchantProducts mp "
+            + "WHERE mp.merchant.merchantId = :merchantId) GROUP BY KEY(usc)")
+    List<SourceClickTotal> sumSourceClicksByMerchantId(@Param("merchantId") Long merchantId);
 }
\ No newline at end of file
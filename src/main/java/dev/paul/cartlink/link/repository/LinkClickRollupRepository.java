@@ -0,0 +1,20 @@
+package dev.paul.cartlink.link.repository;
+
+import dev.paul.cartlink.link.dto.LinkClickTotals;
+import dev.paul.cartlink.link.model.LinkClickRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface LinkClickRollupRepository extends JpaRepository<LinkClickRollup, Long> {
+
+    @Query("SELECT new dev.paul.cartlink.link.dto.LinkClickTotals(SUM(r.clicks), SUM(r.mobileClicks), "
+            + "SUM(r.desktopClicks), SUM(r.orders), COUNT(r)) FROM LinkClickRollup r "
+            + "WHERE r.linkId = :linkId AND r.bucketStart >= :start AND r.bucketStart < :end")
+    LinkClickTotals sumByLinkIdAndBucketStartBetween(@Param("linkId") Long linkId,
+            @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+}
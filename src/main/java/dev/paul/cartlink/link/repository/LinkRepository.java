@@ -9,4 +9,6 @@ import java.util.Optional;
 @Repository
 public interface LinkRepository extends JpaRepository<Link, Long> {
     Optional<Link> findBySlug(String slug);
+
+    boolean existsByIdAndMerchantProducts_Id(Long id, Long merchantProductId);
 }
\ No newline at end of file
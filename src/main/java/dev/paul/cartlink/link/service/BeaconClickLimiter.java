@@ -0,0 +1,109 @@
+package dev.paul.cartlink.link.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether a click reported in an analytics beacon may be counted.
+ * A beacon click only stands in for a redirect the visitor did not make: it
+ * is skipped if the same visitor clicked the same link, through the redirect
+ * or an earlier beacon, within the window. Each visitor cookie may also
+ * count at most a fixed number of beacon clicks per window, so an
+ * unauthenticated client cannot inflate counters by replaying beacons.
+ *
+ * <p>State is per node and bounded by an LRU, so a click that reaches
+ * another node, or a pair evicted under heavy traffic, may still be counted
+ * twice.
+ */
+@Component
+public class BeaconClickLimiter {
+
+    private final long windowMillis;
+    private final int maxClicksPerVisitor;
+    private final int maxEntries;
+    // "visitorId:linkId" to the time a click of that pair was last counted
+    private final LinkedHashMap<String, Long> counted;
+    // Visitor id to {window start, beacon clicks counted in that window}
+    private final LinkedHashMap<String, long[]> visitors;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    public BeaconClickLimiter(@Value("${cartlink.analytics.beacon.click-window-seconds:1800}") long windowSeconds,
+            @Value("${cartlink.analytics.beacon.max-clicks-per-visitor:20}") int maxClicksPerVisitor,
+            @Value("${cartlink.analytics.beacon.max-tracked-entries:100000}") int maxEntries) {
+        this.windowMillis = windowSeconds * 1000;
+        this.maxClicksPerVisitor = maxClicksPerVisitor;
+        this.maxEntries = maxEntries;
+        this.counted = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > BeaconClickLimiter.this.maxEntries;
+            }
+        };
+        this.visitors = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > BeaconClickLimiter.this.maxEntries;
+            }
+        };
+    }
+
+    /** Notes a click counted through the redirect, so a beacon repeating it is skipped. */
+    public void recordRedirect(String visitorId, Long linkId) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            counted.put(key(visitorId, linkId), now);
+        }
+    }
+
+    /**
+     * Returns true, and reserves the click, if a beacon click of the link by
+     * this visitor may be counted now.
+     */
+    public boolean tryCount(String visitorId, Long linkId) {
+        long now = System.currentTimeMillis();
+        String key = key(visitorId, linkId);
+        synchronized (this) {
+            Long last = counted.get(key);
+            if (last != null && now - last < windowMillis) {
+                duplicates.increment();
+                return false;
+            }
+            long[] window = visitors.computeIfAbsent(visitorId, v -> new long[] { now, 0 });
+            if (now - window[0] >= windowMillis) {
+                window[0] = now;
+                window[1] = 0;
+            }
+            if (window[1] >= maxClicksPerVisitor) {
+                rateLimited.increment();
+                return false;
+            }
+            window[1]++;
+            counted.put(key, now);
+        }
+        accepted.increment();
+        return true;
+    }
+
+    private static String key(String visitorId, Long linkId) {
+        return visitorId + ':' + linkId;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("trackedClicks", counted.size());
+            stats.put("trackedVisitors", visitors.size());
+        }
+        stats.put("accepted", accepted.sum());
+        stats.put("duplicates", duplicates.sum());
+        stats.put("rateLimited", rateLimited.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,185 @@
+package dev.paul.cartlink.link.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.paul.cartlink.link.dto.BeaconBatch;
+import dev.paul.cartlink.link.dto.EngagementEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Parses analytics beacon bodies token by token, without building a JSON
+ * tree. A body is either newline-delimited JSON (one event per line) or a
+ * single JSON array of events. An event is an object such as
+ * {@code {"type":"timespent","linkId":42,"seconds":30}} or the compact tuple
+ * {@code ["timespent",42,30]}. Clicks name the link by slug and may carry the
+ * original referrer: {@code {"type":"click","slug":"aZ3x","referrer":"..."}}
+ * or {@code ["click","aZ3x","..."]}.
+ */
+@Component
+public class BeaconParser {
+
+    // A day; longer samples come from tabs left open and would skew the average
+    public static final long MAX_TIME_SPENT_SECONDS = 86400;
+
+    private final JsonFactory jsonFactory;
+    private final int maxEvents;
+
+    public BeaconParser(ObjectMapper objectMapper,
+            @Value("${cartlink.analytics.beacon.max-events:500}") int maxEvents) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * Reads every event in the body. Malformed JSON and invalid events throw
+     * IllegalArgumentException, so a bad batch is rejected as a whole.
+     */
+    public BeaconBatch parse(InputStream body) throws IOException {
+        BeaconBatch batch = new BeaconBatch();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+                if (token == JsonToken.VALUE_STRING) {
+                    // A root-level tuple: the first line of an NDJSON body
+                    readTuple(parser, batch);
+                    token = parser.nextToken();
+                } else {
+                    while (token != JsonToken.END_ARRAY) {
+                        readEvent(parser, token, batch);
+                        token = parser.nextToken();
+                    }
+                    if (parser.nextToken() != null) {
+                        throw new IllegalArgumentException("Unexpected content after the event array");
+                    }
+                    return batch;
+                }
+            }
+            while (token != null) {
+                readEvent(parser, token, batch);
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed beacon body: " + e.getOriginalMessage());
+        }
+        return batch;
+    }
+
+    private void readEvent(JsonParser parser, JsonToken token, BeaconBatch batch) throws IOException {
+        if (batch.size() >= maxEvents) {
+            throw new IllegalArgumentException("A beacon may carry at most " + maxEvents + " events");
+        }
+        if (token == JsonToken.START_OBJECT) {
+            readObject(parser, batch);
+        } else if (token == JsonToken.START_ARRAY && parser.nextToken() == JsonToken.VALUE_STRING) {
+            readTuple(parser, batch);
+        } else {
+            throw new IllegalArgumentException("Each event must be an object or a [type, ...] array");
+        }
+    }
+
+    private void readObject(JsonParser parser, BeaconBatch batch) throws IOException {
+        String type = null;
+        String slug = null;
+        String referrer = null;
+        Long linkId = null;
+        long seconds = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "type":
+                    type = parser.getValueAsString();
+                    break;
+                case "linkId":
+                    linkId = value.isNumeric() ? parser.getLongValue() : null;
+                    break;
+                case "slug":
+                    slug = parser.getValueAsString();
+                    break;
+                case "referrer":
+                    referrer = parser.getValueAsString();
+                    break;
+                case "seconds":
+                case "timeSpentSeconds":
+                    seconds = value.isNumeric() ? parser.getLongValue() : -1;
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        addEvent(batch, type, linkId, slug, referrer, seconds);
+    }
+
+    /** Reads the rest of a tuple whose type the parser is positioned on. */
+    private void readTuple(JsonParser parser, BeaconBatch batch) throws IOException {
+        String type = parser.getText();
+        Long linkId = null;
+        String slug = null;
+        String referrer = null;
+        long seconds = -1;
+        int index = 1;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token.isStructStart()) {
+                parser.skipChildren();
+            } else if (index == 1 && token == JsonToken.VALUE_NUMBER_INT) {
+                linkId = parser.getLongValue();
+            } else if (index == 1 && token == JsonToken.VALUE_STRING) {
+                slug = parser.getText();
+            } else if (index == 2 && token == JsonToken.VALUE_NUMBER_INT) {
+                seconds = parser.getLongValue();
+            } else if (index == 2 && token == JsonToken.VALUE_STRING) {
+                referrer = parser.getText();
+            }
+            index++;
+        }
+        addEvent(batch, type, linkId, slug, referrer, seconds);
+    }
+
+    private static void addEvent(BeaconBatch batch, String type, Long linkId, String slug, String referrer,
+            long seconds) {
+        if (type == null) {
+            throw new IllegalArgumentException("Event type is required");
+        }
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "pageview":
+                batch.addEngagementEvent(EngagementEvent.pageView(requireLinkId(linkId)));
+                break;
+            case "timespent":
+                if (seconds < 0 || seconds > MAX_TIME_SPENT_SECONDS) {
+                    throw new IllegalArgumentException(
+                            "timespent seconds must be between 0 and " + MAX_TIME_SPENT_SECONDS);
+                }
+                batch.addEngagementEvent(EngagementEvent.timeSpent(requireLinkId(linkId), seconds));
+                break;
+            case "click":
+                if (slug == null || slug.isEmpty()) {
+                    throw new IllegalArgumentException("click events require a slug");
+                }
+                batch.addClick(slug, referrer);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + type);
+        }
+    }
+
+    private static long requireLinkId(Long linkId) {
+        if (linkId == null) {
+            throw new IllegalArgumentException("pageview and timespent events require a linkId");
+        }
+        return linkId;
+    }
+}
@@ -0,0 +1,172 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.dto.BulkLinkResult;
+import dev.paul.cartlink.merchant.model.MerchantProduct;
+import dev.paul.cartlink.merchant.repository.MerchantProductRepository;
+import dev.paul.cartlink.merchant.repository.MerchantRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Creates many links for one merchant in a single transaction. All referenced
+ * merchant products are loaded with one query and checked in memory; ids come
+ * from the SlugAllocator's blocks, and the analytics, link and link-product
+ * rows are written with one JDBC batch each. Entries that fail validation are
+ * reported and skipped without failing the others.
+ */
+@Service
+public class BulkLinkService {
+
+    private static final String INSERT_ANALYTICS = "INSERT INTO link_analytics "
+            + "(total_unique_clicks, total_unique_mobile, total_unique_desktops, total_clicks, last_updated) "
+            + "VALUES (0, 0, 0, 0, ?)";
+
+    private static final String INSERT_LINK = "INSERT INTO links (id, slug, merchant_id, analytics_id, created_at) "
+            + "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_LINK_PRODUCT = "INSERT INTO link_merchant_products "
+            + "(link_id, merchant_product_id) VALUES (?, ?)";
+
+    private final MerchantRepository merchantRepository;
+    private final MerchantProductRepository merchantProductRepository;
+    private final SlugAllocator slugAllocator;
+    private final SlugBloomFilter slugBloomFilter;
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxLinks;
+
+    public BulkLinkService(MerchantRepository merchantRepository,
+            MerchantProductRepository merchantProductRepository, SlugAllocator slugAllocator,
+            SlugBloomFilter slugBloomFilter, JdbcTemplate jdbcTemplate,
+            @Value("${cartlink.links.bulk.max-links:1000}") int maxLinks) {
+        this.merchantRepository = merchantRepository;
+        this.merchantProductRepository = merchantProductRepository;
+        this.slugAllocator = slugAllocator;
+        this.slugBloomFilter = slugBloomFilter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxLinks = maxLinks;
+    }
+
+    /**
+     * Creates one link per entry, each over the given merchant product ids.
+     * Returns one result per entry, in request order.
+     */
+    @Transactional
+    public List<BulkLinkResult> createLinks(Long merchantId, List<Set<Long>> merchantProductIds) {
+        if (merchantProductIds.size() > maxLinks) {
+            throw new IllegalArgumentException("At most " + maxLinks + " links can be created per request");
+        }
+        if (!merchantRepository.existsById(merchantId)) {
+            throw new IllegalArgumentException("Invalid merchant ID");
+        }
+
+        Set<Long> allIds = merchantProductIds.stream().filter(ids -> ids != null).flatMap(Set::stream)
+                .collect(Collectors.toSet());
+        Map<Long, MerchantProduct> products = merchantProductRepository.findAllById(allIds).stream()
+                .collect(Collectors.toMap(MerchantProduct::getId, Function.identity()));
+
+        List<BulkLinkResult> results = new ArrayList<>(merchantProductIds.size());
+        List<NewLink> links = new ArrayList<>();
+        for (int i = 0; i < merchantProductIds.size(); i++) {
+            Set<Long> ids = merchantProductIds.get(i) != null ? merchantProductIds.get(i) : Set.of();
+            String error = validate(merchantId, ids, products);
+            if (error != null) {
+                results.add(BulkLinkResult.failed(i, error));
+                continue;
+            }
+            long id = slugAllocator.nextId();
+            NewLink link = new NewLink(i, id, slugAllocator.encode(id), new HashSet<>(ids));
+            links.add(link);
+            results.add(null);
+        }
+        if (links.isEmpty()) {
+            return results;
+        }
+
+        insert(merchantId, links);
+        for (NewLink link : links) {
+            slugBloomFilter.add(link.slug);
+            results.set(link.index, BulkLinkResult.created(link.index, link.id, link.slug));
+        }
+        return results;
+    }
+
+    private static String validate(Long merchantId, Set<Long> ids, Map<Long, MerchantProduct> products) {
+        for (Long id : ids) {
+            MerchantProduct product = products.get(id);
+            if (product == null) {
+                return "Invalid merchant product ID: " + id;
+            }
+            if (!product.getMerchant().getId().equals(merchantId)) {
+                return "Product " + id + " does not belong to merchant " + merchantId;
+            }
+        }
+        return null;
+    }
+
+    private void insert(Long merchantId, List<NewLink> links) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        KeyHolder analyticsKeys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_ANALYTICS, new String[] { "analytics_id" }),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setTimestamp(1, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return links.size();
+                    }
+                }, analyticsKeys);
+        List<Map<String, Object>> keys = analyticsKeys.getKeyList();
+        if (keys.size() != links.size()) {
+            throw new IllegalStateException("Expected " + links.size() + " analytics ids, got " + keys.size());
+        }
+
+        List<Object[]> linkRows = new ArrayList<>(links.size());
+        List<Object[]> productRows = new ArrayList<>();
+        for (int i = 0; i < links.size(); i++) {
+            NewLink link = links.get(i);
+            Number analyticsId = (Number) keys.get(i).values().iterator().next();
+            linkRows.add(new Object[] { link.id, link.slug, merchantId, analyticsId.longValue(), now });
+            for (Long productId : link.merchantProductIds) {
+                productRows.add(new Object[] { link.id, productId });
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_LINK, linkRows);
+        if (!productRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_LINK_PRODUCT, productRows);
+        }
+    }
+
+    private static final class NewLink {
+        private final int index;
+        private final long id;
+        private final String slug;
+        private final Set<Long> merchantProductIds;
+
+        private NewLink(int index, long id, String slug, Set<Long> merchantProductIds) {
+            this.index = index;
+            this.id = id;
+            this.slug = slug;
+            this.merchantProductIds = merchantProductIds;
+        }
+    }
+}
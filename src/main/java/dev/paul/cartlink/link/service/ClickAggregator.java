@@ -0,0 +1,517 @@
+package dev.paul.cartlink.link.service;
+
+import jakarta.annotation.PreDestroy;
+import dev.paul.cartlink.link.dto.LinkTrafficDelta;
+import dev.paul.cartlink.link.dto.LinkTrafficEvent;
+import dev.paul.cartlink.link.model.FunnelStep;
+import dev.paul.cartlink.link.model.RollupGranularity;
+import dev.paul.cartlink.util.DurationHistogram;
+import dev.paul.cartlink.util.RunningStats;
+import dev.paul.cartlink.util.SpaceSavingSketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind stage for link click counters. Clicks are folded into per-link
+ * LongAdder deltas in memory and a background flusher applies them to
+ * link_analytics with batched relative UPDATEs, so the redirect path never
+ * waits on (or serialises behind) a write transaction on the analytics row.
+ * The same flush adds per-minute deltas to the link_click_rollups buckets and
+ * applies page view and time-on-page deltas from the {@link EngagementIngestor}
+ * and per-country click counts, and adds committed orders and funnel steps
+ * to the link's order counters. Committed click and order deltas are
+ * published as a {@link LinkTrafficEvent} for the live feed and dashboards.
+ */
+@Component
+public class ClickAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(ClickAggregator.class);
+
+    private static final String UPDATE_COUNTERS = "UPDATE link_analytics SET "
+            + "total_clicks = COALESCE(total_clicks, 0) + ?, "
+            + "total_unique_mobile = total_unique_mobile + ?, "
+            + "total_unique_desktops = total_unique_desktops + ?, "
+            + "conversion_rate = CAST(COALESCE(paid_orders, 0) AS DOUBLE PRECISION) "
+            + "/ (COALESCE(total_clicks, 0) + ?), "
+            + "last_updated = ? "
+            + "WHERE analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?)";
+
+    // Runs after UPDATE_COUNTERS, so total_clicks already includes this flush's clicks
+    private static final String UPDATE_FUNNEL = "UPDATE link_analytics SET "
+            + "total_orders = COALESCE(total_orders, 0) + ?, "
+            + "cart_adds = COALESCE(cart_adds, 0) + ?, "
+            + "checkouts = COALESCE(checkouts, 0) + ?, "
+            + "paid_orders = COALESCE(paid_orders, 0) + ?, "
+            + "conversion_rate = CASE WHEN COALESCE(total_clicks, 0) > 0 "
+            + "THEN CAST(COALESCE(paid_orders, 0) + ? AS DOUBLE PRECISION) / total_clicks END, "
+            + "last_updated = ? "
+            + "WHERE analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?)";
+
+    private static final String UPDATE_PAGE_VIEWS = "UPDATE link_analytics SET "
+            + "page_views = COALESCE(page_views, 0) + ? "
+            + "WHERE analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?)";
+
+    // averageTimeSpent and bounceRate are kept in step with the merged running statistics
+    private static final String UPDATE_TIME_SPENT = "UPDATE link_analytics SET "
+            + LinkRollupService.MERGE_TIME_SPENT + ", "
+            + "average_time_spent = ROUND(COALESCE(time_spent_mean, 0) "
+            + "+ (? - COALESCE(time_spent_mean, 0)) * ? / (COALESCE(time_spent_samples, 0) + ?)), "
+            + "bounce_rate = CAST(COALESCE(bounces, 0) + ? AS DOUBLE PRECISION) "
+            + "/ (COALESCE(time_spent_samples, 0) + ?) "
+            + "WHERE analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VisitorSketchStore visitorSketchStore;
+    private final LinkRollupService linkRollupService;
+    private final TrafficSourceStore trafficSourceStore;
+    private final TimeSpentHistogramStore timeSpentHistogramStore;
+    private final CountryClickStore countryClickStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final long maxPendingEvents;
+
+    // Writers share the read lock; only the flusher's map swap takes the write lock
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private ConcurrentHashMap<Long, LinkDelta> pending = new ConcurrentHashMap<>();
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "click-aggregator-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder recordedEvents = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private volatile long lastFlushMillis;
+
+    public ClickAggregator(JdbcTemplate jdbcTemplate, VisitorSketchStore visitorSketchStore,
+            LinkRollupService linkRollupService, TrafficSourceStore trafficSourceStore,
+            TimeSpentHistogramStore timeSpentHistogramStore, CountryClickStore countryClickStore,
+            ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+            @Value("${cartlink.analytics.flush.interval-ms:1000}") long flushIntervalMs,
+            @Value("${cartlink.analytics.flush.max-pending-events:5000}") long maxPendingEvents) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.visitorSketchStore = visitorSketchStore;
+        this.linkRollupService = linkRollupService;
+        this.trafficSourceStore = trafficSourceStore;
+        this.timeSpentHistogramStore = timeSpentHistogramStore;
+        this.countryClickStore = countryClickStore;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxPendingEvents = maxPendingEvents;
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts a click. The source must already be canonical, see
+     * {@link TrafficSourceNormalizer}; country is a code from
+     * {@link GeoIpResolver}, or null if it could not be resolved.
+     */
+    public void recordClick(Long linkId, boolean mobile, String source, String country) {
+        swapLock.readLock().lock();
+        try {
+            LinkDelta delta = pending.computeIfAbsent(linkId, this::newDelta);
+            delta.events.increment();
+            delta.clicks.increment();
+            (mobile ? delta.mobile : delta.desktop).increment();
+            BucketDelta bucket = delta.bucket(currentMinute());
+            bucket.clicks.increment();
+            (mobile ? bucket.mobile : bucket.desktop).increment();
+            if (source != null) {
+                synchronized (delta.sources) {
+                    delta.sources.offer(source);
+                }
+            }
+            if (country != null) {
+                delta.countries.computeIfAbsent(country, c -> new LongAdder()).increment();
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        recordedEvents.increment();
+        requestFlushIfFull();
+    }
+
+    /**
+     * Counts an order placed through the link, both in the link's total_orders
+     * and in the current minute bucket. Callers record orders only once the
+     * transaction that placed them has committed.
+     */
+    public void recordOrder(Long linkId) {
+        swapLock.readLock().lock();
+        try {
+            LinkDelta delta = pending.computeIfAbsent(linkId, this::newDelta);
+            delta.events.increment();
+            delta.orders.increment();
+            delta.bucket(currentMinute()).orders.increment();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        requestFlushIfFull();
+    }
+
+    /**
+     * Counts one funnel step of a link. Callers record steps only once the
+     * transaction that performed them has committed.
+     */
+    public void recordFunnelStep(long linkId, FunnelStep step) {
+        swapLock.readLock().lock();
+        try {
+            LinkDelta delta = pending.computeIfAbsent(linkId, this::newDelta);
+            delta.events.increment();
+            switch (step) {
+                case CART_ADD -> delta.cartAdds.increment();
+                case CHECKOUT -> delta.checkouts.increment();
+                case PAID -> delta.paidOrders.increment();
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        requestFlushIfFull();
+    }
+
+    public void recordPageView(long linkId) {
+        swapLock.readLock().lock();
+        try {
+            LinkDelta delta = pending.computeIfAbsent(linkId, this::newDelta);
+            delta.events.increment();
+            delta.pageViews.increment();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        recordedEvents.increment();
+        requestFlushIfFull();
+    }
+
+    /**
+     * Adds one time-on-page sample to the running statistics of the current
+     * minute bucket and to the link's histogram. Sessions shorter than the
+     * bounce threshold are counted as bounces.
+     */
+    public void recordTimeSpent(long linkId, long seconds, boolean bounce) {
+        swapLock.readLock().lock();
+        try {
+            LinkDelta delta = pending.computeIfAbsent(linkId, this::newDelta);
+            delta.events.increment();
+            BucketDelta bucket = delta.bucket(currentMinute());
+            synchronized (bucket.timeSpent) {
+                bucket.timeSpent.add(seconds);
+            }
+            if (bounce) {
+                bucket.bounces.increment();
+            }
+            synchronized (delta.timeSpentHistogram) {
+                delta.timeSpentHistogram.add(seconds);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        recordedEvents.increment();
+        requestFlushIfFull();
+    }
+
+    private LinkDelta newDelta(Long linkId) {
+        return new LinkDelta(trafficSourceStore.newSketch());
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000;
+    }
+
+    private void requestFlushIfFull() {
+        if (pendingEvents.incrementAndGet() >= maxPendingEvents && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Click aggregate flush failed", e);
+        }
+    }
+
+    /**
+     * Swaps out the pending deltas and writes them in one transaction. If the
+     * write fails the deltas are folded back in so they are retried on the next
+     * flush instead of being lost.
+     */
+    public synchronized void flush() {
+        flushRequested.set(false);
+        Map<Long, LinkDelta> batch;
+        swapLock.writeLock().lock();
+        try {
+            batch = pending;
+            pending = new ConcurrentHashMap<>();
+            pendingEvents.set(0);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        Map<Long, byte[]> sketches = visitorSketchStore.takeDirty();
+        if (batch.isEmpty() && sketches.isEmpty()) {
+            return;
+        }
+
+        try {
+            int rows = transactionTemplate.execute(status -> write(batch) + visitorSketchStore.write(sketches));
+            rowsWritten.add(rows);
+            flushes.increment();
+            lastFlushMillis = System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            restore(batch);
+            visitorSketchStore.restore(sketches);
+            throw e;
+        }
+        publishTraffic(batch);
+    }
+
+    private void publishTraffic(Map<Long, LinkDelta> batch) {
+        List<LinkTrafficDelta> traffic = new ArrayList<>();
+        batch.forEach((linkId, delta) -> {
+            long clicks = delta.clicks.sum();
+            long orders = delta.orders.sum();
+            if (clicks > 0 || orders > 0) {
+                traffic.add(new LinkTrafficDelta(linkId, clicks, delta.mobile.sum(), delta.desktop.sum(), orders));
+            }
+        });
+        if (traffic.isEmpty()) {
+            return;
+        }
+        try {
+            eventPublisher.publishEvent(new LinkTrafficEvent(traffic));
+        } catch (RuntimeException e) {
+            // The counters are already written; only the listeners miss this flush
+            logger.warn("Could not publish link traffic", e);
+        }
+    }
+
+    private int write(Map<Long, LinkDelta> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> counterArgs = new ArrayList<>(batch.size());
+        Map<Long, SpaceSavingSketch> sources = new HashMap<>();
+        List<Object[]> bucketArgs = new ArrayList<>();
+        List<Object[]> pageViewArgs = new ArrayList<>();
+        List<Object[]> funnelArgs = new ArrayList<>();
+        List<Object[]> timeSpentArgs = new ArrayList<>();
+        List<Object[]> bucketTimeSpentArgs = new ArrayList<>();
+        Map<Long, DurationHistogram> histograms = new HashMap<>();
+        Map<Long, Map<String, Long>> countries = new HashMap<>();
+        batch.forEach((linkId, delta) -> {
+            long clicks = delta.clicks.sum();
+            if (clicks > 0) {
+                counterArgs.add(new Object[] { clicks, delta.mobile.sum(), delta.desktop.sum(), clicks, now, linkId });
+            }
+            long orders = delta.orders.sum();
+            long cartAdds = delta.cartAdds.sum();
+            long checkouts = delta.checkouts.sum();
+            long paidOrders = delta.paidOrders.sum();
+            if (orders > 0 || cartAdds > 0 || checkouts > 0 || paidOrders > 0) {
+                funnelArgs.add(new Object[] { orders, cartAdds, checkouts, paidOrders, paidOrders, now, linkId });
+            }
+            long pageViews = delta.pageViews.sum();
+            if (pageViews > 0) {
+                pageViewArgs.add(new Object[] { pageViews, linkId });
+            }
+            if (!delta.sources.isEmpty()) {
+                sources.put(linkId, delta.sources);
+            }
+            if (!delta.timeSpentHistogram.isEmpty()) {
+                histograms.put(linkId, delta.timeSpentHistogram);
+            }
+            if (!delta.countries.isEmpty()) {
+                Map<String, Long> counts = new HashMap<>();
+                delta.countries.forEach((country, count) -> counts.put(country, count.sum()));
+                countries.put(linkId, counts);
+            }
+            // The link's statistics for this flush are its minute buckets merged
+            RunningStats timeSpent = new RunningStats();
+            long[] bounces = new long[1];
+            delta.minutes.forEach((minute, bucket) -> {
+                LocalDateTime bucketStart = LinkRollupService.toLocalDateTime(minute * 60_000);
+                bucketArgs.add(LinkRollupService.bucketRow(bucket.clicks.sum(), bucket.mobile.sum(),
+                        bucket.desktop.sum(), bucket.orders.sum(), linkId, RollupGranularity.MINUTE, bucketStart));
+                if (bucket.timeSpent.getCount() > 0) {
+                    long bucketBounces = bucket.bounces.sum();
+                    bucketTimeSpentArgs.add(LinkRollupService.timeSpentRow(bucket.timeSpent, bucketBounces, linkId,
+                            RollupGranularity.MINUTE, bucketStart));
+                    timeSpent.merge(bucket.timeSpent);
+                    bounces[0] += bucketBounces;
+                }
+            });
+            if (timeSpent.getCount() > 0) {
+                timeSpentArgs.add(timeSpentArgs(timeSpent, bounces[0], linkId));
+            }
+        });
+
+        // The counter update locks each link's analytics row before its sources are merged
+        int rows = counterArgs.isEmpty() ? 0 : jdbcTemplate.batchUpdate(UPDATE_COUNTERS, counterArgs).length;
+        rows += trafficSourceStore.write(sources);
+        if (!funnelArgs.isEmpty()) {
+            rows += jdbcTemplate.batchUpdate(UPDATE_FUNNEL, funnelArgs).length;
+        }
+        if (!pageViewArgs.isEmpty()) {
+            rows += jdbcTemplate.batchUpdate(UPDATE_PAGE_VIEWS, pageViewArgs).length;
+        }
+        if (!timeSpentArgs.isEmpty()) {
+            rows += jdbcTemplate.batchUpdate(UPDATE_TIME_SPENT, timeSpentArgs).length;
+        }
+        rows += timeSpentHistogramStore.add(histograms);
+        rows += countryClickStore.add(countries);
+        rows += linkRollupService.addToBuckets(bucketArgs);
+        return rows + linkRollupService.addTimeSpentToBuckets(bucketTimeSpentArgs);
+    }
+
+    private static Object[] timeSpentArgs(RunningStats timeSpent, long bounces, Long linkId) {
+        Object[] merge = LinkRollupService.timeSpentMergeArgs(timeSpent, bounces);
+        long n = timeSpent.getCount();
+        Object[] args = Arrays.copyOf(merge, merge.length + 6);
+        int i = merge.length;
+        args[i++] = timeSpent.getMean();
+        args[i++] = n;
+        args[i++] = n;
+        args[i++] = bounces;
+        args[i++] = n;
+        args[i] = linkId;
+        return args;
+    }
+
+    private void restore(Map<Long, LinkDelta> batch) {
+        swapLock.readLock().lock();
+        try {
+            long events = 0;
+            for (Map.Entry<Long, LinkDelta> entry : batch.entrySet()) {
+                events += entry.getValue().events.sum();
+                pending.merge(entry.getKey(), entry.getValue(), LinkDelta::add);
+            }
+            pendingEvents.addAndGet(events);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Drain whatever arrived after the last scheduled flush
+        flush();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("recordedEvents", recordedEvents.sum());
+        stats.put("pendingEvents", pendingEvents.get());
+        stats.put("flushes", flushes.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        stats.put("rowsWritten", rowsWritten.sum());
+        stats.put("lastFlushMillis", lastFlushMillis);
+        stats.put("visitorSketches", visitorSketchStore.size());
+        return stats;
+    }
+
+    private static final class LinkDelta {
+        // Recorded calls of any kind, so a restored batch counts towards max-pending-events again
+        private final LongAdder events = new LongAdder();
+        private final LongAdder clicks = new LongAdder();
+        private final LongAdder mobile = new LongAdder();
+        private final LongAdder desktop = new LongAdder();
+        private final LongAdder pageViews = new LongAdder();
+        private final LongAdder orders = new LongAdder();
+        private final LongAdder cartAdds = new LongAdder();
+        private final LongAdder checkouts = new LongAdder();
+        private final LongAdder paidOrders = new LongAdder();
+        // Guarded by its own monitor, like sources
+        private final DurationHistogram timeSpentHistogram = new DurationHistogram();
+        // Country code to clicks
+        private final ConcurrentHashMap<String, LongAdder> countries = new ConcurrentHashMap<>();
+        // Top-K canonical sources, guarded by its own monitor
+        private final SpaceSavingSketch sources;
+        // Epoch minute to the deltas of that minute's rollup bucket
+        private final ConcurrentHashMap<Long, BucketDelta> minutes = new ConcurrentHashMap<>();
+
+        private LinkDelta(SpaceSavingSketch sources) {
+            this.sources = sources;
+        }
+
+        private BucketDelta bucket(long minute) {
+            return minutes.computeIfAbsent(minute, m -> new BucketDelta());
+        }
+
+        private LinkDelta add(LinkDelta other) {
+            events.add(other.events.sum());
+            clicks.add(other.clicks.sum());
+            mobile.add(other.mobile.sum());
+            desktop.add(other.desktop.sum());
+            pageViews.add(other.pageViews.sum());
+            orders.add(other.orders.sum());
+            cartAdds.add(other.cartAdds.sum());
+            checkouts.add(other.checkouts.sum());
+            paidOrders.add(other.paidOrders.sum());
+            other.countries.forEach((country, clicks) -> countries.computeIfAbsent(country, c -> new LongAdder())
+                    .add(clicks.sum()));
+            synchronized (timeSpentHistogram) {
+                timeSpentHistogram.merge(other.timeSpentHistogram);
+            }
+            synchronized (sources) {
+                sources.merge(other.sources);
+            }
+            other.minutes.forEach((minute, bucket) -> bucket(minute).add(bucket));
+            return this;
+        }
+    }
+
+    private static final class BucketDelta {
+        private final LongAdder clicks = new LongAdder();
+        private final LongAdder mobile = new LongAdder();
+        private final LongAdder desktop = new LongAdder();
+        private final LongAdder orders = new LongAdder();
+        private final LongAdder bounces = new LongAdder();
+        // Guarded by its own monitor
+        private final RunningStats timeSpent = new RunningStats();
+
+        private void add(BucketDelta other) {
+            clicks.add(other.clicks.sum());
+            mobile.add(other.mobile.sum());
+            desktop.add(other.desktop.sum());
+            orders.add(other.orders.sum());
+            bounces.add(other.bounces.sum());
+            synchronized (timeSpent) {
+                timeSpent.merge(other.timeSpent);
+            }
+        }
+    }
+}
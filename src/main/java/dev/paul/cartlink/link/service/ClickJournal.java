@@ -0,0 +1,303 @@
+package dev.paul.cartlink.link.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of raw link clicks. Each click is a fixed 32-byte
+ * record written into a pre-sized, memory-mapped segment file; a full
+ * segment rolls over to the next one. Writers claim a slot with a single
+ * atomic add and fill it with absolute puts, so appends allocate nothing.
+ *
+ * <p>The timestamp is written last and doubles as the commit marker: after
+ * a crash, slots that were claimed but never completed still read as zero
+ * and are skipped by {@link ClickJournalReplayer}.
+ *
+ * <p>Referrers are stored as ints; the id to canonical source mapping (see
+ * {@link TrafficSourceNormalizer}) lives in an append-only referrers.dict
+ * file next to the segments.
+ *
+ * <p>The journal is off unless cartlink.click-journal.enabled is set, and
+ * then needs cartlink.click-journal.dir; it keeps up to max-segments
+ * segments of segment-records records each on disk.
+ */
+@Component
+public class ClickJournal {
+    private static final Logger logger = LoggerFactory.getLogger(ClickJournal.class);
+
+    public static final int RECORD_SIZE = 32;
+    public static final int OFFSET_TIMESTAMP = 0;
+    public static final int OFFSET_LINK_ID = 8;
+    public static final int OFFSET_VISITOR_HASH = 16;
+    public static final int OFFSET_REFERRER_ID = 24;
+    public static final int OFFSET_DEVICE_CLASS = 28;
+    public static final int OFFSET_OPERATING_SYSTEM = 29;
+    public static final int OFFSET_BROWSER = 30;
+    // Byte 31 is reserved
+
+    public static final int NO_REFERRER = 0;
+
+    static final String SEGMENT_PREFIX = "clicks-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String DICTIONARY_FILE = "referrers.dict";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentRecords;
+    private final int maxSegments;
+
+    private final ConcurrentHashMap<String, Integer> referrerIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReferrerId = new AtomicInteger(NO_REFERRER + 1);
+    private BufferedWriter dictionaryWriter;
+
+    private volatile Segment current;
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder rolls = new LongAdder();
+
+    public ClickJournal(@Value("${cartlink.click-journal.enabled:false}") boolean enabled,
+            @Value("${cartlink.click-journal.dir:}") String directory,
+            @Value("${cartlink.click-journal.segment-records:2097152}") int segmentRecords,
+            @Value("${cartlink.click-journal.max-segments:64}") int maxSegments) {
+        if (enabled && (directory == null || directory.isBlank())) {
+            throw new IllegalStateException("cartlink.click-journal.dir must be set when the click journal is enabled");
+        }
+        this.enabled = enabled;
+        this.directory = directory == null || directory.isBlank() ? null : Paths.get(directory);
+        this.segmentRecords = segmentRecords;
+        this.maxSegments = maxSegments;
+        if (enabled) {
+            open();
+        }
+    }
+
+    private void open() {
+        try {
+            Files.createDirectories(directory);
+            loadDictionary();
+            dictionaryWriter = Files.newBufferedWriter(directory.resolve(DICTIONARY_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            // Never append to a segment left by a previous run; its tail may hold half-written slots
+            List<Path> existing = listSegments(directory);
+            long lastSequence = existing.isEmpty() ? 0 : sequenceOf(existing.get(existing.size() - 1));
+            current = Segment.create(segmentPath(lastSequence + 1), lastSequence + 1, segmentRecords);
+            logger.info("Click journal writing to {}", current.path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open click journal in " + directory, e);
+        }
+    }
+
+    public void append(long timestampMillis, long linkId, long visitorHash, int referrerId, byte deviceClass,
+            byte operatingSystem, byte browser) {
+        if (!enabled) {
+            return;
+        }
+        while (true) {
+            Segment segment = current;
+            long offset = segment.claimed.getAndAdd(RECORD_SIZE);
+            if (offset + RECORD_SIZE <= segment.capacity) {
+                int index = (int) offset;
+                MappedByteBuffer buffer = segment.buffer;
+                buffer.putLong(index + OFFSET_LINK_ID, linkId);
+                buffer.putLong(index + OFFSET_VISITOR_HASH, visitorHash);
+                buffer.putInt(index + OFFSET_REFERRER_ID, referrerId);
+                buffer.put(index + OFFSET_DEVICE_CLASS, deviceClass);
+                buffer.put(index + OFFSET_OPERATING_SYSTEM, operatingSystem);
+                buffer.put(index + OFFSET_BROWSER, browser);
+                buffer.putLong(index + OFFSET_TIMESTAMP, timestampMillis);
+                appended.increment();
+                return;
+            }
+            roll(segment);
+        }
+    }
+
+    /**
+     * Returns the journal id for a referrer, assigning and persisting a new one
+     * the first time a referrer is seen. Known referrers are a plain map lookup.
+     */
+    public int referrerId(String referrer) {
+        if (referrer == null || !enabled) {
+            return NO_REFERRER;
+        }
+        Integer id = referrerIds.get(referrer);
+        return id != null ? id : registerReferrer(referrer);
+    }
+
+    private synchronized int registerReferrer(String referrer) {
+        Integer existing = referrerIds.get(referrer);
+        if (existing != null) {
+            return existing;
+        }
+        int id = nextReferrerId.getAndIncrement();
+        try {
+            // Referrers come from a request header, so keep the dictionary one entry per line
+            dictionaryWriter.write(id + "\t" + referrer.replace('\n', ' ').replace('\r', ' '));
+            dictionaryWriter.newLine();
+            dictionaryWriter.flush();
+        } catch (IOException e) {
+            logger.warn("Could not persist referrer dictionary entry {}", id, e);
+        }
+        referrerIds.put(referrer, id);
+        return id;
+    }
+
+    private void loadDictionary() throws IOException {
+        Map<Integer, String> dictionary = readDictionary(directory);
+        dictionary.forEach((id, referrer) -> referrerIds.put(referrer, id));
+        dictionary.keySet().stream().mapToInt(Integer::intValue).max()
+                .ifPresent(max -> nextReferrerId.set(max + 1));
+    }
+
+    private synchronized void roll(Segment full) {
+        if (current != full) {
+            return;
+        }
+        try {
+            full.buffer.force();
+            current = Segment.create(segmentPath(full.sequence + 1), full.sequence + 1, segmentRecords);
+            rolls.increment();
+            deleteOldSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not roll click journal segment", e);
+        }
+    }
+
+    private void deleteOldSegments() throws IOException {
+        if (maxSegments <= 0) {
+            return;
+        }
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    /**
+     * Sequence number of the segment currently being written. Replays that run
+     * while the journal is live should stop before it.
+     */
+    public long currentSequence() {
+        return enabled ? current.sequence : Long.MAX_VALUE;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (!enabled) {
+            return;
+        }
+        current.buffer.force();
+        try {
+            dictionaryWriter.close();
+        } catch (IOException e) {
+            logger.warn("Could not close referrer dictionary", e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("appended", appended.sum());
+        stats.put("segmentRolls", rolls.sum());
+        stats.put("currentSegment", enabled ? current.sequence : null);
+        stats.put("referrers", referrerIds.size());
+        return stats;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    static List<Path> listSegments(Path directory) throws IOException {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            // Zero-padded sequence numbers sort the same way as strings
+            return new ArrayList<>(files
+                    .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList());
+        }
+    }
+
+    static Map<Integer, String> readDictionary(Path directory) throws IOException {
+        Map<Integer, String> dictionary = new LinkedHashMap<>();
+        if (directory == null) {
+            return dictionary;
+        }
+        Path file = directory.resolve(DICTIONARY_FILE);
+        if (!Files.exists(file)) {
+            return dictionary;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                try {
+                    dictionary.put(Integer.parseInt(line.substring(0, tab)), line.substring(tab + 1));
+                } catch (NumberFormatException e) {
+                    // A torn last line from a crash; the referrer is re-registered on its next click
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long sequence;
+        private final long capacity;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong claimed = new AtomicLong();
+
+        private Segment(Path path, long sequence, long capacity, MappedByteBuffer buffer) {
+            this.path = path;
+            this.sequence = sequence;
+            this.capacity = capacity;
+            this.buffer = buffer;
+        }
+
+        private static Segment create(Path path, long sequence, int records) throws IOException {
+            long capacity = (long) records * RECORD_SIZE;
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                file.setLength(capacity);
+                // The mapping stays valid after the channel is closed
+                MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                return new Segment(path, sequence, capacity, buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.model.DeviceClass;
+import dev.paul.cartlink.link.model.RollupGranularity;
+import dev.paul.cartlink.util.HyperLogLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Rebuilds link analytics from the {@link ClickJournal} segments. Every
+ * committed record except robot traffic is folded into per-link totals, a fresh visitor sketch,
+ * per-referrer counts and rollup buckets at the granularity the rollup
+ * compaction would currently keep them at; {@link #rebuild()} then
+ * overwrites the stored counters and bucket click counts with the replayed
+ * values.
+ *
+ * <p>Each replayed link holds a visitor sketch and its buckets in memory, so
+ * links are rebuilt in passes over the journal of at most
+ * cartlink.click-journal.replay-links-per-pass links each, every pass written
+ * in its own transaction.
+ *
+ * <p>A rebuild replaces counters outright, so it is only correct when the
+ * retained segments cover the links' whole history and no click is recorded
+ * while it runs. Once the first segment has been deleted, only links created
+ * at or after the oldest retained record are rebuilt; the rest keep their
+ * counters. With cartlink.click-journal.replay-on-startup set it runs
+ * as a lifecycle phase that starts before the embedded web server, so the
+ * node takes no traffic until the counters are rebuilt; the clicks of this
+ * run go to a fresh segment that the replay skips.
+ */
+@Component
+public class ClickJournalReplayer implements SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(ClickJournalReplayer.class);
+
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+
+    private static final String SELECT_LINKS_CREATED_SINCE = "SELECT id FROM links WHERE created_at >= ?";
+
+    private static final String UPDATE_ANALYTICS = "UPDATE link_analytics SET total_clicks = ?, "
+            + "total_unique_mobile = ?, total_unique_desktops = ?, total_unique_clicks = ?, visitor_sketch = ?, "
+            + "last_updated = ? WHERE analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?)";
+
+    private final ClickJournal clickJournal;
+    private final LinkRollupService linkRollupService;
+    private final TrafficSourceStore trafficSourceStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean replayOnStartup;
+    private final int linksPerPass;
+    private volatile boolean running;
+
+    public ClickJournalReplayer(ClickJournal clickJournal, LinkRollupService linkRollupService,
+            TrafficSourceStore trafficSourceStore, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            @Value("${cartlink.click-journal.replay-on-startup:false}") boolean replayOnStartup,
+            @Value("${cartlink.click-journal.replay-links-per-pass:2000}") int linksPerPass) {
+        this.clickJournal = clickJournal;
+        this.linkRollupService = linkRollupService;
+        this.trafficSourceStore = trafficSourceStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.replayOnStartup = replayOnStartup;
+        this.linksPerPass = Math.max(1, linksPerPass);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (replayOnStartup) {
+            int links = rebuild();
+            logger.info("Rebuilt analytics for {} links from the click journal", links);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Well before the web server's phase, so the replay finishes before the port opens
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Reads every sealed segment, i.e. all segments before the one currently
+     * being written, and replays the links with ids in [firstLinkId,
+     * lastLinkId]. Uncommitted slots (zero timestamp) are skipped.
+     */
+    public Map<Long, LinkReplay> replay(long firstLinkId, long lastLinkId) {
+        Map<Long, LinkReplay> links = new HashMap<>();
+        BucketResolver buckets = new BucketResolver();
+        try {
+            Map<Integer, String> referrers = ClickJournal.readDictionary(clickJournal.getDirectory());
+            forEachRecord((buffer, index, timestamp, linkId, deviceClass) -> {
+                if (linkId < firstLinkId || linkId > lastLinkId) {
+                    return;
+                }
+                LinkReplay link = links.computeIfAbsent(linkId, id -> new LinkReplay());
+                buckets.resolve(timestamp);
+                link.record(buckets.granularity, buckets.bucketStart,
+                        buffer.getLong(index + ClickJournal.OFFSET_VISITOR_HASH),
+                        deviceClass.isMobile(),
+                        referrers.get(buffer.getInt(index + ClickJournal.OFFSET_REFERRER_ID)));
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay click journal", e);
+        }
+        return links;
+    }
+
+    // Sorted ids of the links with at least one replayable record
+    private long[] linkIds() {
+        Set<Long> ids = new HashSet<>();
+        try {
+            forEachRecord((buffer, index, timestamp, linkId, deviceClass) -> ids.add(linkId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay click journal", e);
+        }
+        return ids.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    // Drops the links that may have clicks in segments which were already deleted
+    private long[] coveredLinkIds(long[] linkIds) {
+        Long oldestRecord;
+        try {
+            oldestRecord = oldestRecordMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay click journal", e);
+        }
+        if (oldestRecord == null || linkIds.length == 0) {
+            return linkIds;
+        }
+        // Links created before this column existed have a null created_at and are never covered
+        Set<Long> createdSince = new HashSet<>(jdbcTemplate.queryForList(SELECT_LINKS_CREATED_SINCE, Long.class,
+                Timestamp.valueOf(LinkRollupService.toLocalDateTime(oldestRecord))));
+        long[] covered = Arrays.stream(linkIds).filter(createdSince::contains).toArray();
+        if (covered.length < linkIds.length) {
+            logger.warn("Click journal no longer starts at its first segment; skipping {} links created before {}",
+                    linkIds.length - covered.length, LinkRollupService.toLocalDateTime(oldestRecord));
+        }
+        return covered;
+    }
+
+    // Timestamp of the first committed record, or null while the first segment is still retained
+    private Long oldestRecordMillis() throws IOException {
+        List<Path> segments = ClickJournal.listSegments(clickJournal.getDirectory());
+        if (segments.isEmpty() || ClickJournal.sequenceOf(segments.get(0)) == 1) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(segments.get(0), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (long i = 0; i < channel.size() / ClickJournal.RECORD_SIZE; i++) {
+                long timestamp = buffer.getLong((int) (i * ClickJournal.RECORD_SIZE) + ClickJournal.OFFSET_TIMESTAMP);
+                if (timestamp != 0) {
+                    return timestamp;
+                }
+            }
+        }
+        // Nothing committed in the oldest segment, so nothing older than now is covered
+        return System.currentTimeMillis();
+    }
+
+    private void forEachRecord(RecordVisitor visitor) throws IOException {
+        for (Path segment : ClickJournal.listSegments(clickJournal.getDirectory())) {
+            if (ClickJournal.sequenceOf(segment) >= clickJournal.currentSequence()) {
+                break;
+            }
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                long records = channel.size() / ClickJournal.RECORD_SIZE;
+                for (long i = 0; i < records; i++) {
+                    int index = (int) (i * ClickJournal.RECORD_SIZE);
+                    long timestamp = buffer.getLong(index + ClickJournal.OFFSET_TIMESTAMP);
+                    if (timestamp == 0) {
+                        continue;
+                    }
+                    DeviceClass deviceClass = DeviceClass
+                            .fromCode(buffer.get(index + ClickJournal.OFFSET_DEVICE_CLASS));
+                    if (deviceClass == DeviceClass.ROBOT) {
+                        continue;
+                    }
+                    visitor.visit(buffer, index, timestamp, buffer.getLong(index + ClickJournal.OFFSET_LINK_ID),
+                            deviceClass);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the journal and overwrites the analytics counters, visitor
+     * sketch, source counts and rollup click counts of every link whose whole
+     * history it covers, one pass and one transaction per range of link ids.
+     * Returns the number of links rebuilt.
+     */
+    public int rebuild() {
+        long[] linkIds = coveredLinkIds(linkIds());
+        for (int from = 0; from < linkIds.length; from += linksPerPass) {
+            int to = Math.min(from + linksPerPass, linkIds.length);
+            write(replay(linkIds[from], linkIds[to - 1]));
+        }
+        return linkIds.length;
+    }
+
+    private void write(Map<Long, LinkReplay> links) {
+        if (links.isEmpty()) {
+            return;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> updates = new ArrayList<>(links.size());
+        Map<Long, Map<String, Long>> sources = new HashMap<>();
+        List<Object[]> rollups = new ArrayList<>();
+        links.forEach((linkId, link) -> {
+            updates.add(new Object[] { link.clicks, link.mobile, link.desktop,
+                    (int) Math.min(link.visitors.estimate(), Integer.MAX_VALUE), link.visitors.toBytes(), now,
+                    linkId });
+            sources.put(linkId, link.sources);
+            link.buckets.forEach((granularity, starts) -> starts.forEach((start, counts) -> rollups.add(
+                    LinkRollupService.bucketRow(counts[0], counts[1], counts[2], 0, linkId, granularity, start))));
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(UPDATE_ANALYTICS, updates);
+            trafficSourceStore.replace(sources);
+            linkRollupService.setBucketClicks(rollups);
+        });
+    }
+
+    private interface RecordVisitor {
+        void visit(MappedByteBuffer buffer, int index, long timestamp, long linkId, DeviceClass deviceClass);
+    }
+
+    // Records are mostly in time order, so the granularity lookup is cached per minute
+    private final class BucketResolver {
+        private long minute = Long.MIN_VALUE;
+        private RollupGranularity granularity;
+        private LocalDateTime bucketStart;
+
+        private void resolve(long timestamp) {
+            long recordMinute = timestamp / MINUTE_MILLIS;
+            if (recordMinute != minute) {
+                minute = recordMinute;
+                LocalDateTime time = LinkRollupService.toLocalDateTime(recordMinute * MINUTE_MILLIS);
+                granularity = linkRollupService.granularityFor(time);
+                bucketStart = granularity.bucketStart(time);
+            }
+        }
+    }
+
+    public static final class LinkReplay {
+        private long clicks;
+        private long mobile;
+        private long desktop;
+        private final HyperLogLog visitors = new HyperLogLog();
+        private final Map<String, Long> sources = new HashMap<>();
+        // Bucket start to {clicks, mobile, desktop}
+        private final Map<RollupGranularity, SortedMap<LocalDateTime, long[]>> buckets =
+                new EnumMap<>(RollupGranularity.class);
+
+        private void record(RollupGranularity granularity, LocalDateTime bucketStart, long visitorHash,
+                boolean isMobile, String source) {
+            clicks++;
+            if (isMobile) {
+                mobile++;
+            } else {
+                desktop++;
+            }
+            visitors.add(visitorHash);
+            if (source != null) {
+                sources.merge(source, 1L, Long::sum);
+            }
+            long[] counts = buckets.computeIfAbsent(granularity, g -> new TreeMap<>())
+                    .computeIfAbsent(bucketStart, s -> new long[3]);
+            counts[0]++;
+            counts[isMobile ? 1 : 2]++;
+        }
+
+        public long getClicks() {
+            return clicks;
+        }
+
+        public long getMobile() {
+            return mobile;
+        }
+
+        public long getDesktop() {
+            return desktop;
+        }
+
+        public long getUniqueVisitors() {
+            return visitors.estimate();
+        }
+
+        public Map<String, Long> getSources() {
+            return sources;
+        }
+
+        public Map<RollupGranularity, SortedMap<LocalDateTime, long[]>> getBuckets() {
+            return buckets;
+        }
+    }
+}
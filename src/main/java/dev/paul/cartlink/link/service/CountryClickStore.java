@@ -0,0 +1,77 @@
+package dev.paul.cartlink.link.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-link click counts by country in link_country_clicks. Flushes add to the
+ * stored counts and then point link_analytics.geolocation at the link's
+ * leading country.
+ */
+@Component
+public class CountryClickStore {
+
+    private static final String ADD_CLICKS = "UPDATE link_country_clicks SET clicks = clicks + ? "
+            + "WHERE link_id = ? AND country = ?";
+
+    private static final String INSERT_CLICKS = "INSERT INTO link_country_clicks (clicks, link_id, country) "
+            + "VALUES (?, ?, ?)";
+
+    private static final String UPDATE_GEOLOCATION = "UPDATE link_analytics SET geolocation = "
+            + "(SELECT c.country FROM link_country_clicks c WHERE c.link_id = ? "
+            + "ORDER BY c.clicks DESC, c.country LIMIT 1) "
+            + "WHERE analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?)";
+
+    private static final String SELECT_COUNTRIES = "SELECT country, clicks FROM link_country_clicks "
+            + "WHERE link_id = ? ORDER BY clicks DESC, country";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CountryClickStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds per-link country click deltas. Must run inside the caller's
+     * transaction.
+     */
+    public int add(Map<Long, Map<String, Long>> deltas) {
+        List<Object[]> rows = new ArrayList<>();
+        deltas.forEach((linkId, countries) -> countries.forEach((country, clicks) -> {
+            if (clicks > 0) {
+                rows.add(new Object[] { clicks, linkId, country });
+            }
+        }));
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        int[] updated = jdbcTemplate.batchUpdate(ADD_CLICKS, rows);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                inserts.add(rows.get(i));
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_CLICKS, inserts);
+        }
+        List<Object[]> links = new ArrayList<>(deltas.size());
+        deltas.keySet().forEach(linkId -> links.add(new Object[] { linkId, linkId }));
+        jdbcTemplate.batchUpdate(UPDATE_GEOLOCATION, links);
+        return updated.length;
+    }
+
+    /** Country code to clicks, most clicked first. */
+    public Map<String, Long> get(Long linkId) {
+        Map<String, Long> countries = new LinkedHashMap<>();
+        jdbcTemplate.query(SELECT_COUNTRIES, rs -> {
+            countries.put(rs.getString("country"), rs.getLong("clicks"));
+        }, linkId);
+        return countries;
+    }
+}
@@ -0,0 +1,137 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.dto.EngagementEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accepts storefront engagement events (page views, time on page) without
+ * blocking the request thread. Events go onto a bounded queue; a single
+ * consumer drains it in batches into the {@link ClickAggregator}, whose
+ * flusher writes them to link_analytics. When the queue is full new events
+ * are dropped and counted rather than slowing down the endpoints.
+ */
+@Component
+public class EngagementIngestor {
+    private static final Logger logger = LoggerFactory.getLogger(EngagementIngestor.class);
+
+    private static final int DRAIN_BATCH = 1000;
+
+    private final ClickAggregator clickAggregator;
+    private final long bounceThresholdSeconds;
+    private final int capacity;
+    private final BlockingQueue<EngagementEvent> queue;
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+
+    public EngagementIngestor(ClickAggregator clickAggregator,
+            @Value("${cartlink.analytics.ingest.queue-capacity:100000}") int capacity,
+            @Value("${cartlink.analytics.bounce-threshold-seconds:10}") long bounceThresholdSeconds) {
+        this.clickAggregator = clickAggregator;
+        this.capacity = capacity;
+        this.bounceThresholdSeconds = bounceThresholdSeconds;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.consumer = new Thread(this::consume, "engagement-ingestor");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Queues an event, returning false if it was dropped because the queue is
+     * full.
+     */
+    public boolean submit(EngagementEvent event) {
+        if (queue.offer(event)) {
+            accepted.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * Queues as many of the events as fit and returns how many were accepted.
+     */
+    public int submitAll(List<EngagementEvent> events) {
+        int queued = 0;
+        for (EngagementEvent event : events) {
+            if (!queue.offer(event)) {
+                dropped.add(events.size() - queued);
+                break;
+            }
+            queued++;
+        }
+        accepted.add(queued);
+        return queued;
+    }
+
+    private void consume() {
+        List<EngagementEvent> batch = new ArrayList<>(DRAIN_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                EngagementEvent first = queue.take();
+                batch.add(first);
+                queue.drainTo(batch, DRAIN_BATCH - 1);
+                apply(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    queue.drainTo(batch);
+                    apply(batch);
+                    return;
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to apply {} engagement events", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void apply(List<EngagementEvent> batch) {
+        for (EngagementEvent event : batch) {
+            if (event.getType() == EngagementEvent.Type.PAGEVIEW) {
+                clickAggregator.recordPageView(event.getLinkId());
+            } else {
+                long seconds = event.getTimeSpentSeconds();
+                clickAggregator.recordTimeSpent(event.getLinkId(), seconds, seconds < bounceThresholdSeconds);
+            }
+        }
+        consumed.add(batch.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        consumer.interrupt();
+        try {
+            consumer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("capacity", capacity);
+        stats.put("accepted", accepted.sum());
+        stats.put("consumed", consumed.sum());
+        stats.put("dropped", dropped.sum());
+        return stats;
+    }
+}
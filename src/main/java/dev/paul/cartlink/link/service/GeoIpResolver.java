@@ -0,0 +1,318 @@
+package dev.paul.cartlink.link.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves client IPv4 addresses to a country code from a local range file,
+ * with no network access. The file is CSV with one range per line:
+ * {@code start,end,country[,region]}, where start and end are inclusive and
+ * written either dotted (1.2.3.0) or as integers, optionally quoted; lines
+ * that do not start with a digit (headers, comments) are skipped.
+ *
+ * <p>The file is memory-mapped and parsed into parallel sorted primitive
+ * arrays, so a lookup is one binary search over a long[] and allocates
+ * nothing. A background thread reloads the file when its size or
+ * modification time changes and swaps the new table in; lookups keep using
+ * the old table until then. IPv6 clients are not resolved.
+ */
+@Component
+public class GeoIpResolver {
+    private static final Logger logger = LoggerFactory.getLogger(GeoIpResolver.class);
+
+    private final Path database;
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "geoip-reloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Table table = Table.EMPTY;
+    private volatile long loadedSize = -1;
+    private volatile long loadedModified = -1;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    public GeoIpResolver(@Value("${cartlink.geoip.database:}") String database,
+            @Value("${cartlink.geoip.reload-check-ms:60000}") long reloadCheckMs) {
+        this.database = database.isBlank() ? null : Path.of(database);
+        if (this.database != null) {
+            reloader.execute(this::reloadQuietly);
+            reloader.scheduleWithFixedDelay(this::reloadQuietly, reloadCheckMs, reloadCheckMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Country code of the client address, or null if it is not in the
+     * database. The returned strings are shared by the table, so this does
+     * not allocate.
+     */
+    public String resolve(String address) {
+        lookups.increment();
+        long ip = parseIpv4(address);
+        String country = ip < 0 ? null : table.lookup(ip);
+        if (country == null) {
+            misses.increment();
+        }
+        return country;
+    }
+
+    /** The address as an unsigned 32-bit value, or -1 if it is not dotted IPv4. */
+    static long parseIpv4(CharSequence address) {
+        if (address == null) {
+            return -1;
+        }
+        int length = address.length();
+        long ip = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < length; i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet >= 0 && dots < 3) {
+                ip = (ip << 8) | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        return dots == 3 && octet >= 0 ? (ip << 8) | octet : -1;
+    }
+
+    private void reloadQuietly() {
+        try {
+            reloadIfChanged();
+        } catch (Exception e) {
+            logger.error("GeoIP database reload failed, keeping the previous table", e);
+        }
+    }
+
+    /** Loads the database file if it changed since the last load. */
+    public void reloadIfChanged() throws IOException {
+        if (database == null || !Files.isRegularFile(database)) {
+            return;
+        }
+        long size = Files.size(database);
+        long modified = Files.getLastModifiedTime(database).toMillis();
+        if (size == loadedSize && modified == loadedModified) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Table loaded = load(database);
+        table = loaded;
+        loadedSize = size;
+        loadedModified = modified;
+        reloads.increment();
+        logger.info("Loaded {} GeoIP ranges from {} in {} ms", loaded.size(), database,
+                System.currentTimeMillis() - start);
+    }
+
+    static Table load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("GeoIP database too large: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return parse(buffer);
+        }
+    }
+
+    private static Table parse(MappedByteBuffer buffer) {
+        TableBuilder builder = new TableBuilder();
+        byte[] field = new byte[64];
+        long[] bounds = new long[2];
+        int limit = buffer.limit();
+        int position = 0;
+        while (position < limit) {
+            int lineEnd = position;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            byte first = buffer.get(position);
+            if (first == '"' && position + 1 < lineEnd) {
+                first = buffer.get(position + 1);
+            }
+            if (first >= '0' && first <= '9') {
+                int cursor = position;
+                boolean valid = true;
+                for (int f = 0; f < 2 && valid; f++) {
+                    int fieldEnd = fieldEnd(buffer, cursor, lineEnd);
+                    bounds[f] = parseAddress(buffer, cursor, fieldEnd);
+                    valid = bounds[f] >= 0 && fieldEnd < lineEnd;
+                    cursor = fieldEnd + 1;
+                }
+                if (valid && bounds[0] <= bounds[1]) {
+                    int fieldEnd = fieldEnd(buffer, cursor, lineEnd);
+                    int length = 0;
+                    for (int i = cursor; i < fieldEnd && length < field.length; i++) {
+                        byte b = buffer.get(i);
+                        if (b != '"' && b != ' ' && b != '\r') {
+                            field[length++] = b;
+                        }
+                    }
+                    if (length > 0) {
+                        builder.add(bounds[0], bounds[1], new String(field, 0, length, StandardCharsets.US_ASCII));
+                    }
+                }
+            }
+            position = lineEnd + 1;
+        }
+        return builder.build();
+    }
+
+    private static int fieldEnd(MappedByteBuffer buffer, int from, int lineEnd) {
+        int end = from;
+        while (end < lineEnd && buffer.get(end) != ',') {
+            end++;
+        }
+        return end;
+    }
+
+    // Dotted IPv4 or an unsigned integer, optionally quoted
+    private static long parseAddress(MappedByteBuffer buffer, int from, int to) {
+        long value = 0;
+        long octet = -1;
+        int dots = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (b - '0');
+                if (octet > 0xFFFFFFFFL) {
+                    return -1;
+                }
+            } else if (b == '.' && octet >= 0 && octet <= 255 && dots < 3) {
+                value = (value << 8) | octet;
+                octet = -1;
+                dots++;
+            } else if (b != '"' && b != ' ' && b != '\r') {
+                return -1;
+            }
+        }
+        if (octet < 0 || (dots > 0 && (dots != 3 || octet > 255))) {
+            return -1;
+        }
+        return dots == 0 ? octet : (value << 8) | octet;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdownNow();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("database", database != null ? database.toString() : null);
+        stats.put("ranges", table.size());
+        stats.put("lookups", lookups.sum());
+        stats.put("misses", misses.sum());
+        stats.put("reloads", reloads.sum());
+        return stats;
+    }
+
+    /** Immutable range table: starts are sorted and the ranges do not overlap. */
+    static final class Table {
+        static final Table EMPTY = new Table(new long[0], new long[0], new String[0]);
+
+        private final long[] starts;
+        private final long[] ends;
+        private final String[] countries;
+
+        private Table(long[] starts, long[] ends, String[] countries) {
+            this.starts = starts;
+            this.ends = ends;
+            this.countries = countries;
+        }
+
+        String lookup(long ip) {
+            int index = Arrays.binarySearch(starts, ip);
+            if (index < 0) {
+                // The range starting at or before the address, if any
+                index = -index - 2;
+            }
+            return index >= 0 && ip <= ends[index] ? countries[index] : null;
+        }
+
+        int size() {
+            return starts.length;
+        }
+    }
+
+    private static final class TableBuilder {
+        private long[] starts = new long[1024];
+        private long[] ends = new long[1024];
+        private String[] countries = new String[1024];
+        private int size;
+        private boolean sorted = true;
+        // One shared String per country code
+        private final Map<String, String> codes = new HashMap<>();
+
+        void add(long start, long end, String country) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                countries = Arrays.copyOf(countries, size * 2);
+            }
+            if (size > 0 && start < starts[size - 1]) {
+                sorted = false;
+            }
+            starts[size] = start;
+            ends[size] = end;
+            countries[size] = codes.computeIfAbsent(country, c -> c);
+            size++;
+        }
+
+        Table build() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            if (!sorted) {
+                Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+            }
+            long[] sortedStarts = new long[size];
+            long[] sortedEnds = new long[size];
+            String[] sortedCountries = new String[size];
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int from = order[i];
+                // Drop ranges overlapping the previous one so the binary search stays correct
+                if (kept > 0 && starts[from] <= sortedEnds[kept - 1]) {
+                    continue;
+                }
+                sortedStarts[kept] = starts[from];
+                sortedEnds[kept] = ends[from];
+                sortedCountries[kept] = countries[from];
+                kept++;
+            }
+            return new Table(Arrays.copyOf(sortedStarts, kept), Arrays.copyOf(sortedEnds, kept),
+                    Arrays.copyOf(sortedCountries, kept));
+        }
+    }
+}
@@ -1,14 +1,27 @@
 package dev.paul.cartlink.link.service;
 
+import dev.paul.cartlink.link.dto.LinkClickTotals;
+import dev.paul.cartlink.link.dto.LinkFunnel;
+import dev.paul.cartlink.link.dto.TimeSpentTotals;
+import dev.paul.cartlink.link.model.FunnelStep;
 import dev.paul.cartlink.link.model.LinkAnalytics;
 import dev.paul.cartlink.link.repository.LinkAnalyticsRepository;
+import dev.paul.cartlink.util.DurationHistogram;
+import dev.paul.cartlink.util.HyperLogLog;
+import dev.paul.cartlink.util.RunningStats;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
-import nl.basjes.parse.useragent.UserAgent;
-import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -17,10 +30,33 @@ import java.util.stream.Collectors;
 
 @Service
 public class LinkAnalyticsService {
+    // The flusher owns the counter columns, so writes here touch only their own columns
+    private static final String UPDATE_GEOLOCATION = "UPDATE link_analytics SET "
+            + "geolocation = COALESCE(?, geolocation), last_updated = ? WHERE analytics_id = ?";
+
+    private static final String UPDATE_SOURCE = "UPDATE link_analytics_sources SET clicks = ? "
+            + "WHERE analytics_id = ? AND source = ?";
+
+    private static final String INSERT_SOURCE = "INSERT INTO link_analytics_sources (analytics_id, source, clicks) "
+            + "SELECT analytics_id, ?, ? FROM link_analytics WHERE analytics_id = ?";
+
     private final LinkAnalyticsRepository linkAnalyticsRepository;
+    private final LinkRollupService linkRollupService;
+    private final ClickAggregator clickAggregator;
+    private final TimeSpentHistogramStore timeSpentHistogramStore;
+    private final CountryClickStore countryClickStore;
+    private final JdbcTemplate jdbcTemplate;
 
-    public LinkAnalyticsService(LinkAnalyticsRepository linkAnalyticsRepository) {
+    public LinkAnalyticsService(LinkAnalyticsRepository linkAnalyticsRepository,
+            LinkRollupService linkRollupService, ClickAggregator clickAggregator,
+            TimeSpentHistogramStore timeSpentHistogramStore, CountryClickStore countryClickStore,
+            JdbcTemplate jdbcTemplate) {
         this.linkAnalyticsRepository = linkAnalyticsRepository;
+        this.linkRollupService = linkRollupService;
+        this.clickAggregator = clickAggregator;
+        this.timeSpentHistogramStore = timeSpentHistogramStore;
+        this.countryClickStore = countryClickStore;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     public List<LinkAnalytics> getAnalyticsForLink(Long linkId) {
@@ -36,53 +72,135 @@ public class LinkAnalyticsService {
         return linkAnalyticsRepository.findById(analyticsId).orElse(null);
     }
 
-    public List<LinkAnalytics> getAnalyticsByMerchantProductId(Long merchantProductId) {
-        return linkAnalyticsRepository.findAll().stream()
-                .filter(la -> la.getMerchantProducts().stream().anyMatch(mp -> mp.getId().equals(merchantProductId)))
-                .collect(Collectors.toList());
+    public Slice<LinkAnalytics> getAnalyticsByMerchantProductId(Long merchantProductId, Pageable pageable) {
+        return linkAnalyticsRepository.findByMerchantProductId(merchantProductId, pageable);
     }
 
-    public List<LinkAnalytics> getAnalyticsByDateRange(java.time.LocalDateTime start, java.time.LocalDateTime end) {
-        return linkAnalyticsRepository.findAll().stream()
-                .filter(la -> la.getLastUpdated() != null && !la.getLastUpdated().isBefore(start)
-                        && !la.getLastUpdated().isAfter(end))
-                .collect(Collectors.toList());
+    // Both bounds are inclusive
+    public Slice<LinkAnalytics> getAnalyticsByDateRange(LocalDateTime start, LocalDateTime end, Pageable pageable) {
+        return linkAnalyticsRepository.findByLastUpdatedBetween(start, end, pageable);
     }
 
-    public List<LinkAnalytics> getAnalyticsBySource(String source) {
-        return linkAnalyticsRepository.findAll().stream()
-                .filter(la -> la.getUniqueSourceClicks().containsKey(source))
-                .collect(Collectors.toList());
+    // Stored sources are canonical, see TrafficSourceNormalizer
+    public Slice<LinkAnalytics> getAnalyticsBySource(String source, Pageable pageable) {
+        return linkAnalyticsRepository.findBySource(source, pageable);
     }
 
+    // Sets one source row only; the other rows and the counters stay with the aggregator
+    @Transactional
     public void updateSourceClicks(Long analyticsId, String source, int clicks) {
-        LinkAnalytics analytics = linkAnalyticsRepository.findById(analyticsId).orElse(null);
-        if (analytics != null) {
-            analytics.getUniqueSourceClicks().put(source, clicks);
-            analytics.setLastUpdated(java.time.LocalDateTime.now());
-            linkAnalyticsRepository.save(analytics);
+        if (jdbcTemplate.update(UPDATE_SOURCE, clicks, analyticsId, source) == 0) {
+            jdbcTemplate.update(INSERT_SOURCE, source, clicks, analyticsId);
         }
+        updateGeolocation(analyticsId, null);
+    }
+
+    /**
+     * Sets the geolocation of an analytics row, or just touches lastUpdated if
+     * it is null, without writing back the counters the aggregator maintains.
+     * Returns false if there is no such row.
+     */
+    public boolean updateGeolocation(Long analyticsId, String geolocation) {
+        return jdbcTemplate.update(UPDATE_GEOLOCATION, geolocation, Timestamp.valueOf(LocalDateTime.now()),
+                analyticsId) > 0;
     }
 
     // --- AGGREGATE ANALYTICS FOR API ---
+    /**
+     * Click, order and time-on-page figures of a link. Without either bound
+     * they are the lifetime totals of the analytics row, which also count
+     * clicks from before the rollup buckets existed; with a bound they come
+     * from the rollup buckets in [startDate, endDate), where a date-only
+     * endDate includes that whole day. The median and p90 time on page and
+     * the country clicks are always lifetime figures.
+     */
     public LinkStatsResponse getLinkStats(Long linkId, String startDate, String endDate) {
-        // For demo, just return total clicks and average time spent for all analytics
-        // for the link
-        List<LinkAnalytics> analyticsList = getAnalyticsForLink(linkId);
-        int totalClicks = analyticsList.stream().mapToInt(LinkAnalytics::getTotalUniqueClicks).sum();
-        double avgTime = analyticsList.stream().filter(a -> a.getAverageTimeSpent() != null)
-                .mapToLong(LinkAnalytics::getAverageTimeSpent).average().orElse(0);
-        return new LinkStatsResponse(totalClicks, avgTime);
+        LocalDateTime start = parseDate(startDate, false);
+        LocalDateTime end = parseDate(endDate, true);
+        Optional<LinkAnalytics> lifetime = start == null && end == null
+                ? linkAnalyticsRepository.findByLinkId(linkId).stream().findFirst()
+                : Optional.empty();
+        LinkClickTotals totals = lifetime.map(LinkAnalyticsService::clickTotals)
+                .orElseGet(() -> linkRollupService.getTotals(linkId, start, end));
+        TimeSpentTotals timeSpent = lifetime.map(LinkAnalyticsService::timeSpentTotals)
+                .orElseGet(() -> linkRollupService.getTimeSpent(linkId, start, end));
+        DurationHistogram histogram = timeSpentHistogramStore.get(linkId);
+        LinkStatsResponse response = new LinkStatsResponse((int) Math.min(totals.getClicks(), Integer.MAX_VALUE),
+                timeSpent.getMean(), totals.getMobileClicks(), totals.getDesktopClicks(), totals.getOrders());
+        response.timeSpentSamples = timeSpent.getSamples();
+        response.timeSpentStdDev = timeSpent.getStandardDeviation();
+        response.bounceRate = timeSpent.getBounceRate();
+        response.medianTimeSpent = histogram.percentile(0.5);
+        response.p90TimeSpent = histogram.percentile(0.9);
+        response.countryClicks = countryClickStore.get(linkId);
+        return response;
+    }
+
+    private static LinkClickTotals clickTotals(LinkAnalytics analytics) {
+        return new LinkClickTotals(analytics.getTotalClicks(), toLong(analytics.getTotalUniqueMobile()),
+                toLong(analytics.getTotalUniqueDesktops()), toLong(analytics.getTotalOrders()), null);
+    }
+
+    private static TimeSpentTotals timeSpentTotals(LinkAnalytics analytics) {
+        RunningStats stats = new RunningStats();
+        if (analytics.getTimeSpentSamples() != null && analytics.getTimeSpentMean() != null) {
+            stats.merge(analytics.getTimeSpentSamples(), analytics.getTimeSpentMean(),
+                    analytics.getTimeSpentM2() != null ? analytics.getTimeSpentM2() : 0);
+        }
+        return new TimeSpentTotals(stats, analytics.getBounces() != null ? analytics.getBounces() : 0);
+    }
+
+    private static Long toLong(Integer value) {
+        return value != null ? value.longValue() : null;
+    }
+
+    // One analytics row read, the counters are maintained by the aggregator flush
+    public LinkFunnel getLinkFunnel(Long linkId) {
+        return linkAnalyticsRepository.findByLinkId(linkId).stream().findFirst().map(LinkFunnel::of)
+                .orElseThrow(() -> new IllegalArgumentException("Link not found"));
+    }
+
+    // Accepts either 2024-05-01 or 2024-05-01T10:15:00; a date-only end bound runs to the next midnight
+    private static LocalDateTime parseDate(String value, boolean endOfRange) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            if (value.length() == 10) {
+                LocalDate date = LocalDate.parse(value);
+                return (endOfRange ? date.plusDays(1) : date).atStartOfDay();
+            }
+            return LocalDateTime.parse(value);
+        } catch (java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value);
+        }
     }
 
     public static class LinkStatsResponse {
         public int totalClicks;
         public double averageTimeSpent;
+        public long mobileClicks;
+        public long desktopClicks;
+        public long orders;
+        public long timeSpentSamples;
+        public double timeSpentStdDev;
+        public double bounceRate;
+        public double medianTimeSpent;
+        public double p90TimeSpent;
+        public java.util.Map<String, Long> countryClicks;
 
         public LinkStatsResponse(int totalClicks, double averageTimeSpent) {
             this.totalClicks = totalClicks;
             this.averageTimeSpent = averageTimeSpent;
         }
+
+        public LinkStatsResponse(int totalClicks, double averageTimeSpent, long mobileClicks, long desktopClicks,
+                long orders) {
+            this(totalClicks, averageTimeSpent);
+            this.mobileClicks = mobileClicks;
+            this.desktopClicks = desktopClicks;
+            this.orders = orders;
+        }
     }
 
     // Traffic sources endpoint
@@ -109,19 +227,50 @@ public class LinkAnalyticsService {
         }
     }
 
-    @Transactional
+    /**
+     * Approximate number of distinct visitors across all of a merchant's links,
+     * computed by unioning the stored per-link HyperLogLog sketches.
+     */
+    public long estimateUniqueVisitorsForMerchant(Long merchantId) {
+        HyperLogLog union = new HyperLogLog();
+        linkAnalyticsRepository.findVisitorSketchesByMerchantId(merchantId).forEach(union::merge);
+        return union.estimate();
+    }
+
+    /**
+     * Counts an order placed through the link once the caller's transaction
+     * commits. The aggregator adds it to total_orders and the rollups in the
+     * same flush, so the order path does not lock the analytics row.
+     */
     public void updateTotalOrders(dev.paul.cartlink.link.model.Link link) {
         if (link == null || link.getAnalytics() == null) {
             return;
         }
-        dev.paul.cartlink.link.model.LinkAnalytics analytics = link.getAnalytics();
-        if (analytics.getTotalOrders() == null) {
-            analytics.setTotalOrders(1);
+        Long linkId = link.getId();
+        afterCommit(() -> clickAggregator.recordOrder(linkId));
+    }
+
+    /**
+     * Counts a funnel step of the link once the caller's transaction commits,
+     * so rolled back cart adds, checkouts and payments are not counted.
+     */
+    public void recordFunnelStep(Long linkId, FunnelStep step) {
+        if (linkId != null) {
+            afterCommit(() -> clickAggregator.recordFunnelStep(linkId, step));
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
         } else {
-            analytics.setTotalOrders(analytics.getTotalOrders() + 1);
+            action.run();
         }
-        analytics.setLastUpdated(java.time.LocalDateTime.now());
-        linkAnalyticsRepository.save(analytics);
     }
 
 }
\ No newline at end of file
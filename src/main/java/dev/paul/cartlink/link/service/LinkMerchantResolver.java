@@ -0,0 +1,67 @@
+package dev.paul.cartlink.link.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps link ids to the id of the merchant that owns them. Links never move
+ * between merchants, so answers are cached without expiry; misses are
+ * loaded with one IN query per call. The cache is cleared when it outgrows
+ * its bound.
+ */
+@Component
+public class LinkMerchantResolver {
+
+    private static final String SELECT_LINK_MERCHANTS = "SELECT id, merchant_id FROM links WHERE id IN (%s)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxEntries;
+    private final ConcurrentHashMap<Long, Long> linkMerchants = new ConcurrentHashMap<>();
+
+    public LinkMerchantResolver(JdbcTemplate jdbcTemplate,
+            @Value("${cartlink.links.merchant-resolver.max-entries:100000}") int maxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxEntries = maxEntries;
+    }
+
+    /** Link id to merchant id for the given links; unknown links are left out. */
+    public Map<Long, Long> resolve(Collection<Long> linkIds) {
+        Map<Long, Long> resolved = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long linkId : linkIds) {
+            Long merchantId = linkMerchants.get(linkId);
+            if (merchantId != null) {
+                resolved.put(linkId, merchantId);
+            } else {
+                missing.add(linkId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return resolved;
+        }
+        if (linkMerchants.size() + missing.size() > maxEntries) {
+            linkMerchants.clear();
+        }
+        String placeholders = String.join(",", Collections.nCopies(missing.size(), "?"));
+        jdbcTemplate.query(String.format(SELECT_LINK_MERCHANTS, placeholders), rs -> {
+            long linkId = rs.getLong("id");
+            long merchantId = rs.getLong("merchant_id");
+            linkMerchants.put(linkId, merchantId);
+            resolved.put(linkId, merchantId);
+        }, missing.toArray());
+        return resolved;
+    }
+
+    public int size() {
+        return linkMerchants.size();
+    }
+}
@@ -0,0 +1,164 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.dto.ResolvedLink;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of slug -> ResolvedLink snapshots so a link click does not
+ * have to load the link, its products and its analytics on every hit.
+ * Entries are dropped when a link or one of its products changes, and expire
+ * after a TTL so changes made on other nodes are picked up eventually.
+ */
+@Component
+public class LinkResolutionCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public LinkResolutionCache(@Value("${cartlink.links.resolution-cache.max-entries:10000}") int maxEntries,
+            @Value("${cartlink.links.resolution-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000;
+        // Access-ordered so the eldest entry is always the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > LinkResolutionCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached snapshot for the slug, or loads it with the given
+     * function on a miss. The loader runs outside the lock, so two concurrent
+     * misses on the same slug may both load; the last one wins.
+     */
+    public ResolvedLink get(String slug, Function<String, ResolvedLink> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(slug);
+            if (entry != null && entry.expiresAt > now) {
+                hits.increment();
+                return entry.link;
+            }
+            if (entry != null) {
+                entries.remove(slug);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+        ResolvedLink loaded = loader.apply(slug);
+        if (loaded != null) {
+            put(loaded);
+        }
+        return loaded;
+    }
+
+    public void put(ResolvedLink link) {
+        Entry entry = new Entry(link, System.currentTimeMillis() + ttlMillis);
+        synchronized (entries) {
+            entries.put(link.getSlug(), entry);
+        }
+    }
+
+    public void invalidateSlug(String slug) {
+        removeSlug(slug);
+        afterCommit(() -> removeSlug(slug));
+    }
+
+    private void removeSlug(String slug) {
+        synchronized (entries) {
+            if (entries.remove(slug) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached link that contains the given merchant product. This is
+     * a scan over the cache, which is fine because product edits are rare
+     * compared to link clicks.
+     */
+    public void invalidateMerchantProduct(Long merchantProductId) {
+        removeMerchantProduct(merchantProductId);
+        afterCommit(() -> removeMerchantProduct(merchantProductId));
+    }
+
+    private void removeMerchantProduct(Long merchantProductId) {
+        synchronized (entries) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().link.containsMerchantProduct(merchantProductId)) {
+                    it.remove();
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    // A click racing with the writing transaction can re-cache the old state, so drop it again once committed
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size);
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private static final class Entry {
+        private final ResolvedLink link;
+        private final long expiresAt;
+
+        private Entry(ResolvedLink link, long expiresAt) {
+            this.link = link;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.dto.LinkClickTotals;
+import dev.paul.cartlink.link.dto.TimeSpentTotals;
+import dev.paul.cartlink.link.model.RollupGranularity;
+import dev.paul.cartlink.link.repository.LinkClickRollupRepository;
+import dev.paul.cartlink.util.RunningStats;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-link click rollups in link_click_rollups. The click flusher adds to
+ * minute buckets; a background compaction folds minute buckets older than
+ * the minute retention into hour buckets, and hour buckets older than the
+ * hour retention into day buckets. A click therefore lives in exactly one
+ * bucket, and a range query reads at most a few hundred rows however old the
+ * link is. Range boundaries are rounded to the buckets they fall in.
+ * Buckets also carry time-on-page count, mean and M2, which are merged rather
+ * than summed when buckets are folded.
+ */
+@Service
+public class LinkRollupService {
+    private static final Logger logger = LoggerFactory.getLogger(LinkRollupService.class);
+
+    private static final String ADD_TO_BUCKET = "UPDATE link_click_rollups SET clicks = clicks + ?, "
+            + "mobile_clicks = mobile_clicks + ?, desktop_clicks = desktop_clicks + ?, orders = orders + ? "
+            + "WHERE link_id = ? AND bucket_start = ? AND granularity = ?";
+
+    private static final String SET_BUCKET_CLICKS = "UPDATE link_click_rollups SET clicks = ?, "
+            + "mobile_clicks = ?, desktop_clicks = ? WHERE link_id = ? AND bucket_start = ? AND granularity = ?";
+
+    private static final String INSERT_BUCKET = "INSERT INTO link_click_rollups "
+            + "(clicks, mobile_clicks, desktop_clicks, orders, link_id, bucket_start, granularity) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * SET clause that merges a batch of time-on-page samples into stored
+     * count, mean and M2 columns with Chan's formula; every expression reads
+     * the pre-update values. Arguments come from {@link #timeSpentMergeArgs}.
+     */
+    static final String MERGE_TIME_SPENT = "time_spent_mean = COALESCE(time_spent_mean, 0) "
+            + "+ (? - COALESCE(time_spent_mean, 0)) * ? / (COALESCE(time_spent_samples, 0) + ?), "
+            + "time_spent_m2 = COALESCE(time_spent_m2, 0) + ? "
+            + "+ (? - COALESCE(time_spent_mean, 0)) * (? - COALESCE(time_spent_mean, 0)) "
+            + "* COALESCE(time_spent_samples, 0) * ? / (COALESCE(time_spent_samples, 0) + ?), "
+            + "time_spent_samples = COALESCE(time_spent_samples, 0) + ?, "
+            + "bounces = COALESCE(bounces, 0) + ?";
+
+    private static final String ADD_TIME_SPENT = "UPDATE link_click_rollups SET " + MERGE_TIME_SPENT
+            + " WHERE link_id = ? AND bucket_start = ? AND granularity = ?";
+
+    private static final String INSERT_TIME_SPENT_BUCKET = "INSERT INTO link_click_rollups "
+            + "(clicks, mobile_clicks, desktop_clicks, orders, time_spent_samples, time_spent_mean, time_spent_m2, "
+            + "bounces, link_id, bucket_start, granularity) VALUES (0, 0, 0, 0, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_AGED = "SELECT id, link_id, bucket_start, clicks, mobile_clicks, "
+            + "desktop_clicks, orders, time_spent_samples, time_spent_mean, time_spent_m2, bounces "
+            + "FROM link_click_rollups WHERE granularity = ? AND bucket_start < ? "
+            + "ORDER BY id LIMIT ? FOR UPDATE";
+
+    private static final String SELECT_TIME_SPENT = "SELECT time_spent_samples, time_spent_mean, time_spent_m2, "
+            + "bounces FROM link_click_rollups WHERE link_id = ? AND bucket_start >= ? AND bucket_start < ? "
+            + "AND time_spent_samples > 0";
+
+    private static final String DELETE_BUCKET = "DELETE FROM link_click_rollups WHERE id = ?";
+
+    private final LinkClickRollupRepository rollupRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long minuteRetentionHours;
+    private final long hourRetentionDays;
+    private final int compactBatchSize;
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "link-rollup-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LinkRollupService(LinkClickRollupRepository rollupRepository, JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${cartlink.analytics.rollups.minute-retention-hours:2}") long minuteRetentionHours,
+            @Value("${cartlink.analytics.rollups.hour-retention-days:3}") long hourRetentionDays,
+            @Value("${cartlink.analytics.rollups.compact-batch-size:5000}") int compactBatchSize,
+            @Value("${cartlink.analytics.rollups.compact-interval-ms:300000}") long compactIntervalMs) {
+        this.rollupRepository = rollupRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.minuteRetentionHours = minuteRetentionHours;
+        this.hourRetentionDays = hourRetentionDays;
+        this.compactBatchSize = compactBatchSize;
+        compactor.scheduleWithFixedDelay(this::compactQuietly, compactIntervalMs, compactIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Builds the argument row for {@link #addToBuckets(List)} and
+     * {@link #setBucketClicks(List)}.
+     */
+    public static Object[] bucketRow(long clicks, long mobileClicks, long desktopClicks, long orders, Long linkId,
+            RollupGranularity granularity, LocalDateTime bucketStart) {
+        return new Object[] { clicks, mobileClicks, desktopClicks, orders, linkId,
+                Timestamp.valueOf(granularity.bucketStart(bucketStart)), granularity.name() };
+    }
+
+    /**
+     * Builds the argument row for {@link #addTimeSpentToBuckets(List)}.
+     */
+    public static Object[] timeSpentRow(RunningStats stats, long bounces, Long linkId,
+            RollupGranularity granularity, LocalDateTime bucketStart) {
+        return new Object[] { stats.getCount(), stats.getMean(), stats.getM2(), bounces, linkId,
+                Timestamp.valueOf(granularity.bucketStart(bucketStart)), granularity.name() };
+    }
+
+    /** Arguments for the placeholders of {@link #MERGE_TIME_SPENT}, in order. */
+    static Object[] timeSpentMergeArgs(RunningStats stats, long bounces) {
+        long n = stats.getCount();
+        double mean = stats.getMean();
+        return new Object[] { mean, n, n, stats.getM2(), mean, mean, n, n, n, bounces };
+    }
+
+    /**
+     * The granularity a click at the given time is stored at right now, given
+     * how far compaction has progressed.
+     */
+    public RollupGranularity granularityFor(LocalDateTime time) {
+        LocalDateTime now = LocalDateTime.now();
+        if (!time.isBefore(minuteCutoff(now))) {
+            return RollupGranularity.MINUTE;
+        }
+        return time.isBefore(hourCutoff(now)) ? RollupGranularity.DAY : RollupGranularity.HOUR;
+    }
+
+    private LocalDateTime minuteCutoff(LocalDateTime now) {
+        return RollupGranularity.HOUR.bucketStart(now.minusHours(minuteRetentionHours));
+    }
+
+    private LocalDateTime hourCutoff(LocalDateTime now) {
+        return RollupGranularity.DAY.bucketStart(now.minusDays(hourRetentionDays));
+    }
+
+    /**
+     * Adds the given deltas to their buckets, creating missing ones. Must run
+     * inside the caller's transaction.
+     */
+    public int addToBuckets(List<Object[]> rows) {
+        return upsert(ADD_TO_BUCKET, rows);
+    }
+
+    /**
+     * Overwrites the click counts of the given buckets, leaving orders alone.
+     * Used by the journal replay, which has no record of orders.
+     */
+    public int setBucketClicks(List<Object[]> rows) {
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            updates.add(new Object[] { row[0], row[1], row[2], row[4], row[5], row[6] });
+        }
+        return upsert(SET_BUCKET_CLICKS, updates, rows);
+    }
+
+    /**
+     * Merges time-on-page statistics into their buckets, creating missing
+     * ones. Must run inside the caller's transaction.
+     */
+    public int addTimeSpentToBuckets(List<Object[]> rows) {
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Object[] merge = timeSpentMergeArgs(new RunningStats((Long) row[0], (Double) row[1], (Double) row[2]),
+                    (Long) row[3]);
+            Object[] update = Arrays.copyOf(merge, merge.length + 3);
+            System.arraycopy(row, 4, update, merge.length, 3);
+            updates.add(update);
+        }
+        return upsert(ADD_TIME_SPENT, updates, INSERT_TIME_SPENT_BUCKET, rows);
+    }
+
+    private int upsert(String update, List<Object[]> rows) {
+        return upsert(update, rows, rows);
+    }
+
+    private int upsert(String update, List<Object[]> updateArgs, List<Object[]> insertRows) {
+        return upsert(update, updateArgs, INSERT_BUCKET, insertRows);
+    }
+
+    private int upsert(String update, List<Object[]> updateArgs, String insert, List<Object[]> insertRows) {
+        if (updateArgs.isEmpty()) {
+            return 0;
+        }
+        int[] updated = jdbcTemplate.batchUpdate(update, updateArgs);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                inserts.add(insertRows.get(i));
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(insert, inserts);
+        }
+        return updated.length;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            logger.error("Link rollup compaction failed", e);
+        }
+    }
+
+    /**
+     * Folds aged minute buckets into hours and aged hour buckets into days.
+     * Returns the number of buckets folded.
+     */
+    public int compact() {
+        LocalDateTime now = LocalDateTime.now();
+        return fold(RollupGranularity.MINUTE, RollupGranularity.HOUR, minuteCutoff(now))
+                + fold(RollupGranularity.HOUR, RollupGranularity.DAY, hourCutoff(now));
+    }
+
+    private int fold(RollupGranularity from, RollupGranularity to, LocalDateTime cutoff) {
+        int folded = 0;
+        while (true) {
+            Integer batch = transactionTemplate.execute(status -> foldBatch(from, to, cutoff));
+            folded += batch;
+            if (batch < compactBatchSize) {
+                return folded;
+            }
+        }
+    }
+
+    private int foldBatch(RollupGranularity from, RollupGranularity to, LocalDateTime cutoff) {
+        // Rows are locked so a late flush into an aged bucket is not deleted unseen
+        Map<String, long[]> targets = new LinkedHashMap<>();
+        Map<String, RunningStats> timeSpent = new LinkedHashMap<>();
+        Map<String, Object[]> keys = new LinkedHashMap<>();
+        List<Object[]> deletes = new ArrayList<>();
+        jdbcTemplate.query(SELECT_AGED, rs -> {
+            long linkId = rs.getLong("link_id");
+            LocalDateTime target = to.bucketStart(rs.getTimestamp("bucket_start").toLocalDateTime());
+            String key = linkId + "@" + target;
+            keys.putIfAbsent(key, new Object[] { linkId, target });
+            long[] sums = targets.computeIfAbsent(key, k -> new long[5]);
+            sums[0] += rs.getLong("clicks");
+            sums[1] += rs.getLong("mobile_clicks");
+            sums[2] += rs.getLong("desktop_clicks");
+            sums[3] += rs.getLong("orders");
+            long samples = rs.getLong("time_spent_samples");
+            if (samples > 0) {
+                timeSpent.computeIfAbsent(key, k -> new RunningStats()).merge(samples,
+                        rs.getDouble("time_spent_mean"), rs.getDouble("time_spent_m2"));
+                sums[4] += rs.getLong("bounces");
+            }
+            deletes.add(new Object[] { rs.getLong("id") });
+        }, from.name(), Timestamp.valueOf(cutoff), compactBatchSize);
+        if (deletes.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> rows = new ArrayList<>(targets.size());
+        List<Object[]> timeSpentRows = new ArrayList<>();
+        targets.forEach((key, sums) -> {
+            Object[] target = keys.get(key);
+            rows.add(bucketRow(sums[0], sums[1], sums[2], sums[3], (Long) target[0], to,
+                    (LocalDateTime) target[1]));
+            RunningStats stats = timeSpent.get(key);
+            if (stats != null) {
+                timeSpentRows.add(timeSpentRow(stats, sums[4], (Long) target[0], to, (LocalDateTime) target[1]));
+            }
+        });
+        jdbcTemplate.batchUpdate(DELETE_BUCKET, deletes);
+        addToBuckets(rows);
+        addTimeSpentToBuckets(timeSpentRows);
+        return deletes.size();
+    }
+
+    /**
+     * Sums the buckets of a link that start in [start, end). Null bounds are
+     * open-ended.
+     */
+    public LinkClickTotals getTotals(Long linkId, LocalDateTime start, LocalDateTime end) {
+        return rollupRepository.sumByLinkIdAndBucketStartBetween(linkId,
+                start != null ? start : LocalDateTime.of(1970, 1, 1, 0, 0),
+                end != null ? end : LocalDateTime.now().plusYears(1));
+    }
+
+    /**
+     * Merges the time-on-page statistics of a link's buckets that start in
+     * [start, end). Null bounds are open-ended.
+     */
+    public TimeSpentTotals getTimeSpent(Long linkId, LocalDateTime start, LocalDateTime end) {
+        RunningStats stats = new RunningStats();
+        long[] bounces = new long[1];
+        jdbcTemplate.query(SELECT_TIME_SPENT, rs -> {
+            stats.merge(rs.getLong("time_spent_samples"), rs.getDouble("time_spent_mean"),
+                    rs.getDouble("time_spent_m2"));
+            bounces[0] += rs.getLong("bounces");
+        }, linkId, Timestamp.valueOf(start != null ? start : LocalDateTime.of(1970, 1, 1, 0, 0)),
+                Timestamp.valueOf(end != null ? end : LocalDateTime.now().plusYears(1)));
+        return new TimeSpentTotals(stats, bounces[0]);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compactor.shutdownNow();
+    }
+}
@@ -1,5 +1,8 @@
 package dev.paul.cartlink.link.service;
 
+import dev.paul.cartlink.link.dto.BeaconBatch;
+import dev.paul.cartlink.link.dto.ResolvedLink;
+import dev.paul.cartlink.link.dto.UserAgentClassification;
 import dev.paul.cartlink.link.model.Link;
 import dev.paul.cartlink.link.model.LinkAnalytics;
 import dev.paul.cartlink.merchant.model.Merchant;
@@ -7,6 +10,7 @@ import dev.paul.cartlink.merchant.model.MerchantProduct;
 import dev.paul.cartlink.merchant.repository.MerchantProductRepository;
 import dev.paul.cartlink.merchant.repository.MerchantRepository;
 import dev.paul.cartlink.link.repository.LinkRepository;
+import dev.paul.cartlink.util.Hashing;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -16,6 +20,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -27,6 +33,17 @@ public class LinkService {
     private final LinkRepository linkRepository;
     private final MerchantRepository merchantRepository;
     private final MerchantProductRepository merchantProductRepository;
+    private final LinkResolutionCache linkResolutionCache;
+    private final ClickAggregator clickAggregator;
+    private final VisitorSketchStore visitorSketchStore;
+    private final ClickJournal clickJournal;
+    private final UserAgentClassifier userAgentClassifier;
+    private final TrafficSourceNormalizer trafficSourceNormalizer;
+    private final SlugAllocator slugAllocator;
+    private final SlugBloomFilter slugBloomFilter;
+    private final StorefrontPayloadBuilder storefrontPayloadBuilder;
+    private final GeoIpResolver geoIpResolver;
+    private final BeaconClickLimiter beaconClickLimiter;
 
     @Transactional
     public Link createLink(Long merchantId, Set<Long> merchantProductIds) {
@@ -46,75 +63,110 @@ public class LinkService {
         });
 
         Link link = new Link();
+        link.setId(slugAllocator.nextId());
         link.setMerchant(merchant);
         link.setMerchantProducts(merchantProducts);
-        link.setSlug(generateUniqueSlug());
+        link.setSlug(slugAllocator.encode(link.getId()));
         link.setAnalytics(new LinkAnalytics());
+        link.setCreatedAt(LocalDateTime.now());
 
-        return linkRepository.save(link);
+        Link saved = linkRepository.save(link);
+        linkResolutionCache.invalidateSlug(saved.getSlug());
+        slugBloomFilter.add(saved.getSlug());
+        return saved;
     }
 
-    @Transactional
-    public Set<MerchantProduct> resolveLink(String slug, HttpServletRequest request, HttpServletResponse response) {
-        Link link = linkRepository.findBySlug(slug)
-                .orElseThrow(() -> new IllegalArgumentException("Invalid link slug"));
-
-        String visitorId = getOrCreateVisitorId(request, response);
-        boolean isNewVisitor = isNewVisitor(visitorId, link);
-
-        if (isNewVisitor) {
-            updateAnalyticsForNewClick(link, request);
-            // Optionally, you could store the visitorId in a cache or in-memory set for the link
-        } else {
-            updateAnalyticsForReturningVisitor(link, request);
+    // Read-only: a miss loads the link snapshot, while click counters go through the write-behind aggregator
+    @Transactional(readOnly = true)
+    public ResolvedLink resolveLink(String slug, HttpServletRequest request, HttpServletResponse response) {
+        // Unknown slugs are turned away before they reach the cache or the database
+        if (!slugBloomFilter.mightExist(slug)) {
+            throw new IllegalArgumentException("Invalid link slug");
+        }
+        ResolvedLink link = linkResolutionCache.get(slug, this::loadResolvedLink);
+        if (link == null) {
+            slugBloomFilter.recordFalsePositive();
+            throw new IllegalArgumentException("Invalid link slug");
         }
 
-        // Always update the last updated timestamp
-        link.getAnalytics().setLastUpdated(LocalDateTime.now());
-        linkRepository.save(link);
+        String visitorId = getOrCreateVisitorId(request, response);
+        UserAgentClassification userAgent = userAgentClassifier.classify(request.getHeader("User-Agent"));
+        updateAnalyticsForClick(link.getLinkId(), visitorId, userAgent, request.getHeader("Referer"),
+                geoIpResolver.resolve(request.getRemoteAddr()));
+        beaconClickLimiter.recordRedirect(visitorId, link.getLinkId());
 
-        return link.getMerchantProducts();
+        return link;
     }
 
-    private boolean isNewVisitor(String visitorId, Link link) {
-        // For this implementation, treat every visitorId as unique per browser/device
-        // In a real system, you might use a cache or external store to track visitorIds per link
-        // Here, we assume the cookie is unique and persistent
-        // Always return true if you want to increment unique clicks for every new cookie
-        return true;
+    /**
+     * Records clicks reported in an analytics beacon. The beacon request's
+     * visitor cookie and User-Agent apply to every click. Beacons without a
+     * visitor cookie, unknown slugs, clicks the redirect already counted and
+     * clicks over the visitor's limit are skipped, see
+     * {@link BeaconClickLimiter}. Returns the number of clicks recorded.
+     */
+    @Transactional(readOnly = true)
+    public int recordBeaconClicks(List<BeaconBatch.Click> clicks, HttpServletRequest request) {
+        if (clicks.isEmpty()) {
+            return 0;
+        }
+        // A storefront visitor got the cookie from the redirect; a beacon never mints one
+        String visitorId = getVisitorId(request);
+        if (visitorId == null) {
+            return 0;
+        }
+        UserAgentClassification userAgent = userAgentClassifier.classify(request.getHeader("User-Agent"));
+        String country = geoIpResolver.resolve(request.getRemoteAddr());
+        int recorded = 0;
+        for (BeaconBatch.Click click : clicks) {
+            if (!slugBloomFilter.mightExist(click.getSlug())) {
+                continue;
+            }
+            ResolvedLink link = linkResolutionCache.get(click.getSlug(), this::loadResolvedLink);
+            if (link == null) {
+                slugBloomFilter.recordFalsePositive();
+                continue;
+            }
+            if (!beaconClickLimiter.tryCount(visitorId, link.getLinkId())) {
+                continue;
+            }
+            updateAnalyticsForClick(link.getLinkId(), visitorId, userAgent, click.getReferrer(), country);
+            recorded++;
+        }
+        return recorded;
     }
 
-    private void updateAnalyticsForNewClick(Link link, HttpServletRequest request) {
-        LinkAnalytics analytics = link.getAnalytics();
-        analytics.setTotalUniqueClicks(analytics.getTotalUniqueClicks() + 1);
+    private ResolvedLink loadResolvedLink(String slug) {
+        // Slugs encode the primary key; links from before the allocator only match by slug
+        Long id = slugAllocator.decode(slug);
+        Optional<Link> link = id != null
+                ? linkRepository.findById(id).filter(l -> slug.equals(l.getSlug()))
+                : Optional.empty();
+        return link.or(() -> linkRepository.findBySlug(slug)).map(ResolvedLink::of)
+                .map(resolved -> resolved.withStorefrontPayload(storefrontPayloadBuilder.build(resolved)))
+                .orElse(null);
+    }
 
-        // Update device type counts
-        String userAgent = request.getHeader("User-Agent");
-        if (userAgent != null && userAgent.toLowerCase().contains("mobi")) {
-            analytics.setTotalUniqueMobile(analytics.getTotalUniqueMobile() + 1);
-        } else {
-            analytics.setTotalUniqueDesktops(analytics.getTotalUniqueDesktops() + 1);
-        }
+    private void updateAnalyticsForClick(Long linkId, String visitorId, UserAgentClassification userAgent,
+            String referrer, String country) {
+        String source = trafficSourceNormalizer.normalize(referrer);
 
-        // Update source clicks
-        String referrer = request.getHeader("Referer");
-        if (referrer != null) {
-            analytics.getUniqueSourceClicks().merge(referrer, 1, Integer::sum);
+        // Every click is journaled, but crawlers and link unfurlers stay out of the counters
+        clickJournal.append(System.currentTimeMillis(), linkId, Hashing.hash64(visitorId),
+                clickJournal.referrerId(source), userAgent.getDeviceClass().getCode(),
+                userAgent.getOperatingSystem().getCode(), userAgent.getBrowser().getCode());
+        if (userAgent.isRobot()) {
+            return;
         }
-    }
-
-    private void updateAnalyticsForReturningVisitor(Link link, HttpServletRequest request) {
-        // Optionally update analytics for returning visitors (e.g., time spent, etc.)
-        // For now, do nothing
+        // The link's HyperLogLog sketch is the source of truth for unique visitors
+        visitorSketchStore.offer(linkId, visitorId);
+        clickAggregator.recordClick(linkId, userAgent.isMobile(), source, country);
     }
 
     private String getOrCreateVisitorId(HttpServletRequest request, HttpServletResponse response) {
-        if (request.getCookies() != null) {
-            for (Cookie cookie : request.getCookies()) {
-                if ("cartlink_visitor_id".equals(cookie.getName())) {
-                    return cookie.getValue();
-                }
-            }
+        String visitorId = getVisitorId(request);
+        if (visitorId != null) {
+            return visitorId;
         }
         String newVisitorId = UUID.randomUUID().toString();
         Cookie cookie = new Cookie("cartlink_visitor_id", newVisitorId);
@@ -124,7 +176,14 @@ public class LinkService {
         return newVisitorId;
     }
 
-    private String generateUniqueSlug() {
-        return UUID.randomUUID().toString().substring(0, 8);
+    private static String getVisitorId(HttpServletRequest request) {
+        if (request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if ("cartlink_visitor_id".equals(cookie.getName()) && !cookie.getValue().isBlank()) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
     }
 }
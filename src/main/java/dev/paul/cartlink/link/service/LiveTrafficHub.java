@@ -0,0 +1,226 @@
+package dev.paul.cartlink.link.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.paul.cartlink.link.dto.LinkTrafficDelta;
+import dev.paul.cartlink.link.dto.LinkTrafficEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fan-out of live click and order deltas to merchant dashboards over
+ * Server-Sent Events, fed by the {@link LinkTrafficEvent} of each committed
+ * aggregator flush. Deltas are added to the pending totals of merchants that have
+ * an open stream and everything else is dropped. Once per interval every
+ * merchant with pending deltas gets one "traffic" event, serialised once and
+ * written to each of that merchant's streams, so the cost of a dashboard is
+ * independent of how many links or clicks the merchant has.
+ */
+@Component
+public class LiveTrafficHub {
+    private static final Logger logger = LoggerFactory.getLogger(LiveTrafficHub.class);
+
+    private final LinkMerchantResolver linkMerchantResolver;
+    private final ObjectMapper objectMapper;
+    private final long emitterTimeoutMs;
+    private final int maxSubscribers;
+    private final long heartbeatIntervals;
+
+    private final ConcurrentHashMap<Long, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "live-traffic-hub");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long ticks;
+
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder deltasDropped = new LongAdder();
+
+    public LiveTrafficHub(LinkMerchantResolver linkMerchantResolver, ObjectMapper objectMapper,
+            @Value("${cartlink.analytics.live.interval-ms:1000}") long intervalMs,
+            @Value("${cartlink.analytics.live.heartbeat-ms:15000}") long heartbeatMs,
+            @Value("${cartlink.analytics.live.emitter-timeout-ms:1800000}") long emitterTimeoutMs,
+            @Value("${cartlink.analytics.live.max-subscribers:10000}") int maxSubscribers) {
+        this.linkMerchantResolver = linkMerchantResolver;
+        this.objectMapper = objectMapper;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.maxSubscribers = maxSubscribers;
+        this.heartbeatIntervals = Math.max(1, heartbeatMs / intervalMs);
+        sender.scheduleWithFixedDelay(this::sendQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a stream for the merchant. Throws IllegalStateException when the
+     * subscriber limit is reached.
+     */
+    public SseEmitter subscribe(Long merchantId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new IllegalStateException("Too many live traffic subscribers");
+        }
+        SseEmitter emitter = createEmitter();
+        Subscription subscription = subscriptions.compute(merchantId, (id, existing) -> {
+            Subscription current = existing != null ? existing : new Subscription();
+            current.emitters.add(emitter);
+            return current;
+        });
+        Runnable remove = () -> unsubscribe(merchantId, subscription, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        return emitter;
+    }
+
+    SseEmitter createEmitter() {
+        return new SseEmitter(emitterTimeoutMs);
+    }
+
+    private void unsubscribe(Long merchantId, Subscription subscription, SseEmitter emitter) {
+        if (subscription.emitters.remove(emitter)) {
+            subscriberCount.decrementAndGet();
+        }
+        subscriptions.computeIfPresent(merchantId, (id, current) -> current.emitters.isEmpty() ? null : current);
+    }
+
+    /**
+     * Adds a committed flush to the pending deltas of subscribed merchants.
+     * Runs on the aggregator's flusher thread.
+     */
+    @EventListener
+    public void onLinkTraffic(LinkTrafficEvent event) {
+        List<LinkTrafficDelta> deltas = event.getDeltas();
+        if (subscriptions.isEmpty() || deltas.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> merchants = linkMerchantResolver.resolve(deltas.stream().map(LinkTrafficDelta::getLinkId)
+                .toList());
+        for (LinkTrafficDelta delta : deltas) {
+            Long merchantId = merchants.get(delta.getLinkId());
+            Subscription subscription = merchantId != null ? subscriptions.get(merchantId) : null;
+            if (subscription == null) {
+                deltasDropped.increment();
+                continue;
+            }
+            synchronized (subscription) {
+                subscription.pending.merge(delta.getLinkId(), new long[] { delta.getClicks(),
+                        delta.getMobileClicks(), delta.getDesktopClicks(), delta.getOrders() }, (a, b) -> {
+                            for (int i = 0; i < a.length; i++) {
+                                a[i] += b[i];
+                            }
+                            return a;
+                        });
+            }
+        }
+    }
+
+    private void sendQuietly() {
+        try {
+            send();
+        } catch (Exception e) {
+            logger.error("Live traffic send failed", e);
+        }
+    }
+
+    void send() throws JsonProcessingException {
+        boolean heartbeat = ++ticks % heartbeatIntervals == 0;
+        for (Map.Entry<Long, Subscription> entry : subscriptions.entrySet()) {
+            Subscription subscription = entry.getValue();
+            Map<Long, long[]> pending;
+            synchronized (subscription) {
+                pending = subscription.pending;
+                if (!pending.isEmpty()) {
+                    subscription.pending = new HashMap<>();
+                }
+            }
+            Set<ResponseBodyEmitter.DataWithMediaType> event;
+            if (!pending.isEmpty()) {
+                event = SseEmitter.event().name("traffic")
+                        .data(objectMapper.writeValueAsString(payload(pending)), MediaType.APPLICATION_JSON)
+                        .build();
+            } else if (heartbeat) {
+                // Keeps proxies from closing idle streams and finds dead clients
+                event = SseEmitter.event().comment("heartbeat").build();
+            } else {
+                continue;
+            }
+            for (SseEmitter emitter : subscription.emitters) {
+                try {
+                    emitter.send(event);
+                    eventsSent.increment();
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e);
+                    unsubscribe(entry.getKey(), subscription, emitter);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> payload(Map<Long, long[]> pending) {
+        long[] totals = new long[4];
+        List<Map<String, Object>> links = new ArrayList<>(pending.size());
+        pending.forEach((linkId, counts) -> {
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += counts[i];
+            }
+            Map<String, Object> link = new LinkedHashMap<>();
+            link.put("linkId", linkId);
+            link.put("clicks", counts[0]);
+            link.put("orders", counts[3]);
+            links.add(link);
+        });
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("timestamp", System.currentTimeMillis());
+        payload.put("clicks", totals[0]);
+        payload.put("mobileClicks", totals[1]);
+        payload.put("desktopClicks", totals[2]);
+        payload.put("orders", totals[3]);
+        payload.put("links", links);
+        return payload;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        subscriptions.values().forEach(subscription -> subscription.emitters.forEach(SseEmitter::complete));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("merchants", subscriptions.size());
+        stats.put("subscribers", subscriberCount.get());
+        stats.put("eventsSent", eventsSent.sum());
+        stats.put("deltasDropped", deltasDropped.sum());
+        stats.put("cachedLinks", linkMerchantResolver.size());
+        return stats;
+    }
+
+    private static final class Subscription {
+        private final CopyOnWriteArrayList<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        // Link id to {clicks, mobile, desktop, orders}, guarded by the subscription's monitor
+        private Map<Long, long[]> pending = new HashMap<>();
+    }
+}
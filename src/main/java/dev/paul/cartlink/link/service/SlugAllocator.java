@@ -0,0 +1,168 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.util.Base62;
+import dev.paul.cartlink.util.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out link ids and the slugs derived from them. Ids come from the
+ * link_id_seq database sequence in blocks, so each node allocates from its
+ * own block without a round trip or lock per link, and ids from different
+ * nodes never collide. The slug is the base62 encoding of the id, optionally
+ * passed through a keyed Feistel permutation first so consecutive links do
+ * not get guessable consecutive slugs. Both steps are reversible, so a slug
+ * decodes back to the primary key.
+ */
+@Component
+public class SlugAllocator {
+    private static final Logger logger = LoggerFactory.getLogger(SlugAllocator.class);
+
+    static final String SEQUENCE = "link_id_seq";
+
+    // Ids below 2^40 are permuted within that range; larger ids are encoded as they are
+    private static final int PERMUTED_BITS = 40;
+    private static final int HALF_BITS = PERMUTED_BITS / 2;
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final long PERMUTED_LIMIT = 1L << PERMUTED_BITS;
+    private static final int ROUNDS = 4;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate blockTransaction;
+    private final int blockSize;
+    private final boolean obfuscate;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    private boolean sequenceReady;
+    private long sequenceIncrement;
+    private volatile Block block = new Block(0, 0);
+
+    public SlugAllocator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            @Value("${cartlink.links.slugs.block-size:100}") int blockSize,
+            @Value("${cartlink.links.slugs.obfuscate:true}") boolean obfuscate,
+            @Value("${cartlink.links.slugs.obfuscation-key:}") String obfuscationKey) {
+        // A shared default key would let anyone invert the permutation and enumerate links
+        if (obfuscate && (obfuscationKey == null || obfuscationKey.isBlank())) {
+            throw new IllegalStateException(
+                    "cartlink.links.slugs.obfuscation-key must be set when slug obfuscation is enabled");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        // Block fetches commit on their own, independent of the link insert that triggered them
+        this.blockTransaction = new TransactionTemplate(transactionManager);
+        this.blockTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = blockSize;
+        this.obfuscate = obfuscate;
+        long seed = Hashing.hash64(obfuscate ? obfuscationKey : "");
+        for (int i = 0; i < ROUNDS; i++) {
+            seed = Hashing.hash64(seed);
+            roundKeys[i] = seed;
+        }
+    }
+
+    public long nextId() {
+        while (true) {
+            Block current = block;
+            long id = current.next.getAndIncrement();
+            if (id < current.end) {
+                return id;
+            }
+            refill(current);
+        }
+    }
+
+    private synchronized void refill(Block exhausted) {
+        if (block != exhausted) {
+            // Another thread already fetched a new block
+            return;
+        }
+        Long start = blockTransaction.execute(status -> {
+            ensureSequence();
+            return jdbcTemplate.queryForObject("SELECT nextval('" + SEQUENCE + "')", Long.class);
+        });
+        sequenceReady = true;
+        block = new Block(start, start + sequenceIncrement);
+    }
+
+    private void ensureSequence() {
+        if (sequenceReady) {
+            return;
+        }
+        // Links created before the allocator existed used identity ids, so start after them
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM links", Long.class);
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + SEQUENCE + " START WITH " + (maxId + 1)
+                + " INCREMENT BY " + blockSize);
+        // Trust the stored increment: the sequence may predate a block-size change
+        List<String> increments = jdbcTemplate.queryForList(
+                "SELECT increment FROM information_schema.sequences WHERE LOWER(sequence_name) = ?",
+                String.class, SEQUENCE);
+        sequenceIncrement = increments.isEmpty() ? blockSize : Long.parseLong(increments.get(0).trim());
+        if (sequenceIncrement != blockSize) {
+            logger.warn("{} increments by {}, not the configured block size {}", SEQUENCE, sequenceIncrement,
+                    blockSize);
+        }
+    }
+
+    public String encode(long id) {
+        return Base62.encode(obfuscate && id < PERMUTED_LIMIT ? permute(id) : id);
+    }
+
+    /**
+     * Returns the id a slug was encoded from, or null if the slug cannot have
+     * been produced by {@link #encode(long)}, e.g. the UUID-based slugs of
+     * older links.
+     */
+    public Long decode(String slug) {
+        long value = Base62.decode(slug);
+        if (value < 0) {
+            return null;
+        }
+        long id = obfuscate && value < PERMUTED_LIMIT ? unpermute(value) : value;
+        // Rejects non-canonical spellings such as leading zeros
+        return encode(id).equals(slug) ? id : null;
+    }
+
+    private long permute(long value) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (int i = 0; i < ROUNDS; i++) {
+            long mixed = left ^ round(right, i);
+            left = right;
+            right = mixed;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private long unpermute(long value) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            long mixed = right ^ round(left, i);
+            right = left;
+            left = mixed;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private long round(long half, int round) {
+        return Hashing.mix64(half ^ roundKeys[round]) & HALF_MASK;
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.util.BloomFilter;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of every link slug, consulted before a slug lookup touches
+ * the database so random slugs from scrapers are rejected in memory.
+ *
+ * <p>The filter is built in the background once the application is ready;
+ * until then every slug is let through. Links created on this node are added
+ * immediately. Links created on other nodes are picked up by an incremental
+ * refresh on links.created_at; until then a slug that is not in the filter
+ * is still let through if it decodes to an id just above the highest id the
+ * filter has loaded from the database, within
+ * cartlink.links.slug-filter.unrefreshed-id-window. Random slugs decode to
+ * ids spread over the whole slug space and almost never land in that window.
+ * A periodic full rebuild resizes the filter as the number of links grows and
+ * drops deleted slugs.
+ */
+@Component
+public class SlugBloomFilter {
+    private static final Logger logger = LoggerFactory.getLogger(SlugBloomFilter.class);
+
+    // Overlap between incremental refreshes, covers clock skew and late commits
+    private static final long REFRESH_OVERLAP_SECONDS = 60;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SlugAllocator slugAllocator;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final long refreshIntervalMs;
+    private final long rebuildIntervalMs;
+    private final long unrefreshedIdWindow;
+
+    private volatile BloomFilter filter;
+    private volatile LocalDateTime refreshedUpTo;
+    // Highest link id read from the database; local adds do not move it
+    private volatile long loadedUpToId;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "slug-bloom-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder unrefreshedPasses = new LongAdder();
+    private volatile long lastRebuildMillis;
+
+    public SlugBloomFilter(JdbcTemplate jdbcTemplate, SlugAllocator slugAllocator,
+            @Value("${cartlink.links.slug-filter.expected-insertions:1000000}") long expectedInsertions,
+            @Value("${cartlink.links.slug-filter.false-positive-rate:0.001}") double falsePositiveRate,
+            @Value("${cartlink.links.slug-filter.refresh-interval-ms:5000}") long refreshIntervalMs,
+            @Value("${cartlink.links.slug-filter.rebuild-interval-ms:3600000}") long rebuildIntervalMs,
+            @Value("${cartlink.links.slug-filter.unrefreshed-id-window:100000}") long unrefreshedIdWindow) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.slugAllocator = slugAllocator;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.rebuildIntervalMs = rebuildIntervalMs;
+        this.unrefreshedIdWindow = unrefreshedIdWindow;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        refresher.execute(this::rebuildQuietly);
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMs, refreshIntervalMs,
+                TimeUnit.MILLISECONDS);
+        refresher.scheduleWithFixedDelay(this::rebuildQuietly, rebuildIntervalMs, rebuildIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns false only if the slug definitely does not belong to any link.
+     */
+    public boolean mightExist(String slug) {
+        BloomFilter current = filter;
+        if (current == null) {
+            return true;
+        }
+        checks.increment();
+        if (current.mightContain(slug)) {
+            return true;
+        }
+        if (isUnrefreshed(slug)) {
+            unrefreshedPasses.increment();
+            return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    // The slug may belong to a link another node created since the last refresh
+    private boolean isUnrefreshed(String slug) {
+        Long id = slugAllocator.decode(slug);
+        long loaded = loadedUpToId;
+        return id != null && id > loaded && id - loaded <= unrefreshedIdWindow;
+    }
+
+    public void add(String slug) {
+        BloomFilter current = filter;
+        if (current != null) {
+            current.add(slug);
+        }
+    }
+
+    /** Called when a slug passed the filter but no link was found. */
+    public void recordFalsePositive() {
+        if (filter != null) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * Loads every slug into a new filter sized for the current link count and
+     * swaps it in.
+     */
+    public void rebuild() {
+        LocalDateTime startedAt = LocalDateTime.now().minusSeconds(REFRESH_OVERLAP_SECONDS);
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM links", Long.class);
+        // Leave room to grow until the next rebuild
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedInsertions, count * 2), falsePositiveRate);
+        long[] maxId = { 0 };
+        jdbcTemplate.query("SELECT id, slug FROM links", rs -> {
+            maxId[0] = Math.max(maxId[0], rs.getLong(1));
+            rebuilt.add(rs.getString(2));
+        });
+        BloomFilter previous = filter;
+        filter = rebuilt;
+        loadedUpToId = maxId[0];
+        refreshedUpTo = startedAt;
+        lastRebuildMillis = System.currentTimeMillis();
+        // Catch slugs that were added to the old filter while this one was loading
+        refresh();
+        if (previous == null) {
+            logger.info("Slug filter built with {} links ({} KB)", count, rebuilt.sizeInBytes() / 1024);
+        }
+    }
+
+    /** Adds the slugs of links created since the last refresh. */
+    public void refresh() {
+        BloomFilter current = filter;
+        LocalDateTime since = refreshedUpTo;
+        if (current == null || since == null) {
+            return;
+        }
+        LocalDateTime startedAt = LocalDateTime.now().minusSeconds(REFRESH_OVERLAP_SECONDS);
+        long[] maxId = { loadedUpToId };
+        jdbcTemplate.query("SELECT id, slug FROM links WHERE created_at >= ?", rs -> {
+            maxId[0] = Math.max(maxId[0], rs.getLong(1));
+            current.add(rs.getString(2));
+        }, Timestamp.valueOf(since));
+        refreshedUpTo = startedAt;
+        loadedUpToId = maxId[0];
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            logger.error("Slug filter rebuild failed", e);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.error("Slug filter refresh failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    public Map<String, Object> getStats() {
+        BloomFilter current = filter;
+        long checkCount = checks.sum();
+        long rejectionCount = rejections.sum();
+        long passed = checkCount - rejectionCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", current != null);
+        stats.put("sizeBytes", current != null ? current.sizeInBytes() : 0);
+        stats.put("hashFunctions", current != null ? current.hashCount() : 0);
+        stats.put("targetFalsePositiveRate", falsePositiveRate);
+        stats.put("checks", checkCount);
+        stats.put("rejections", rejectionCount);
+        stats.put("rejectionRate", checkCount == 0 ? 0.0 : (double) rejectionCount / checkCount);
+        stats.put("unrefreshedPasses", unrefreshedPasses.sum());
+        stats.put("loadedUpToId", loadedUpToId);
+        stats.put("falsePositives", falsePositives.sum());
+        stats.put("observedFalsePositiveRate", passed == 0 ? 0.0 : (double) falsePositives.sum() / passed);
+        stats.put("lastRebuildMillis", lastRebuildMillis);
+        return stats;
+    }
+}
@@ -0,0 +1,49 @@
+package dev.paul.cartlink.link.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.paul.cartlink.link.dto.ResolvedLink;
+import dev.paul.cartlink.link.dto.StorefrontLinkView;
+import dev.paul.cartlink.link.dto.StorefrontPayload;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Serialises the storefront view of a resolved link. It runs when a link is
+ * loaded into the resolution cache, so the cost is paid once per link or
+ * product change rather than once per click.
+ */
+@Component
+public class StorefrontPayloadBuilder {
+
+    // 128 bits of SHA-256 is plenty to tell versions of one link apart
+    private static final int ETAG_BYTES = 16;
+
+    private final ObjectMapper objectMapper;
+
+    public StorefrontPayloadBuilder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public StorefrontPayload build(ResolvedLink link) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(StorefrontLinkView.of(link));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise storefront view of link " + link.getLinkId(), e);
+        }
+        return new StorefrontPayload(body, etag(body));
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + HexFormat.of().formatHex(digest, 0, ETAG_BYTES) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
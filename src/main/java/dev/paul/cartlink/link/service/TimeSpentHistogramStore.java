@@ -0,0 +1,74 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.util.DurationHistogram;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-link time-on-page histograms in link_time_spent_histograms, one row
+ * per non-empty bucket. Flushes add to the stored counts, so histograms from
+ * every node accumulate without reading samples back.
+ */
+@Component
+public class TimeSpentHistogramStore {
+
+    private static final String ADD_TO_BUCKET = "UPDATE link_time_spent_histograms SET samples = samples + ? "
+            + "WHERE link_id = ? AND bucket = ?";
+
+    private static final String INSERT_BUCKET = "INSERT INTO link_time_spent_histograms (samples, link_id, bucket) "
+            + "VALUES (?, ?, ?)";
+
+    private static final String SELECT_BUCKETS = "SELECT bucket, samples FROM link_time_spent_histograms "
+            + "WHERE link_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TimeSpentHistogramStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds per-link histogram deltas to the stored buckets. Must run inside
+     * the caller's transaction.
+     */
+    public int add(Map<Long, DurationHistogram> deltas) {
+        List<Object[]> rows = new ArrayList<>();
+        deltas.forEach((linkId, histogram) -> {
+            for (int bucket = 0; bucket < DurationHistogram.BUCKETS; bucket++) {
+                long samples = histogram.count(bucket);
+                if (samples > 0) {
+                    rows.add(new Object[] { samples, linkId, bucket });
+                }
+            }
+        });
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        int[] updated = jdbcTemplate.batchUpdate(ADD_TO_BUCKET, rows);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                inserts.add(rows.get(i));
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_BUCKET, inserts);
+        }
+        return updated.length;
+    }
+
+    public DurationHistogram get(Long linkId) {
+        DurationHistogram histogram = new DurationHistogram();
+        jdbcTemplate.query(SELECT_BUCKETS, rs -> {
+            int bucket = rs.getInt("bucket");
+            if (bucket >= 0 && bucket < DurationHistogram.BUCKETS) {
+                histogram.add(bucket, rs.getLong("samples"));
+            }
+        }, linkId);
+        return histogram;
+    }
+}
@@ -0,0 +1,105 @@
+package dev.paul.cartlink.link.service;
+
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps a raw Referer header to a canonical traffic source: a known social or
+ * search app name, otherwise the referring site's registrable domain. Paths,
+ * query strings and subdomains are dropped, so the number of distinct
+ * sources stays small.
+ */
+@Component
+public class TrafficSourceNormalizer {
+
+    public static final String DIRECT = "direct";
+    public static final String UNKNOWN = "unknown";
+
+    // Registrable domain to app name; subdomains such as l.facebook.com match too
+    private static final Map<String, String> KNOWN_SOURCES = Map.ofEntries(
+            Map.entry("facebook.com", "facebook"),
+            Map.entry("fb.com", "facebook"),
+            Map.entry("fb.me", "facebook"),
+            Map.entry("messenger.com", "facebook"),
+            Map.entry("instagram.com", "instagram"),
+            Map.entry("t.co", "twitter"),
+            Map.entry("twitter.com", "twitter"),
+            Map.entry("x.com", "twitter"),
+            Map.entry("tiktok.com", "tiktok"),
+            Map.entry("whatsapp.com", "whatsapp"),
+            Map.entry("wa.me", "whatsapp"),
+            Map.entry("t.me", "telegram"),
+            Map.entry("telegram.org", "telegram"),
+            Map.entry("youtube.com", "youtube"),
+            Map.entry("youtu.be", "youtube"),
+            Map.entry("pinterest.com", "pinterest"),
+            Map.entry("pin.it", "pinterest"),
+            Map.entry("linkedin.com", "linkedin"),
+            Map.entry("lnkd.in", "linkedin"),
+            Map.entry("snapchat.com", "snapchat"),
+            Map.entry("reddit.com", "reddit"),
+            Map.entry("bing.com", "bing"),
+            Map.entry("duckduckgo.com", "duckduckgo"));
+
+    // Second-level labels under which the registrable domain has three labels
+    private static final Set<String> SECOND_LEVEL_SUFFIXES = Set.of("co", "com", "net", "org", "gov", "edu", "ac");
+
+    public String normalize(String referrer) {
+        if (referrer == null || referrer.isBlank()) {
+            return DIRECT;
+        }
+        URI uri;
+        try {
+            uri = new URI(referrer.trim());
+        } catch (URISyntaxException e) {
+            return UNKNOWN;
+        }
+        String host = uri.getHost();
+        if (host == null || host.isEmpty()) {
+            return UNKNOWN;
+        }
+        // Android apps refer as android-app://<package name>/
+        if ("android-app".equalsIgnoreCase(uri.getScheme())) {
+            return host.toLowerCase(Locale.ROOT);
+        }
+        String domain = registrableDomain(host.toLowerCase(Locale.ROOT));
+        String known = KNOWN_SOURCES.get(domain);
+        if (known != null) {
+            return known;
+        }
+        // google.com, google.co.uk, google.com.ng, ...
+        if (domain.startsWith("google.")) {
+            return "google";
+        }
+        return domain;
+    }
+
+    /**
+     * Canonical form of a stored source key. Keys written before normalisation
+     * hold full referrer URLs; keys that are already canonical are returned
+     * unchanged.
+     */
+    public String canonical(String source) {
+        return source != null && source.indexOf('/') < 0 ? source : normalize(source);
+    }
+
+    private static String registrableDomain(String host) {
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        String[] labels = host.split("\\.");
+        if (labels.length <= 2 || Character.isDigit(host.charAt(host.length() - 1))) {
+            // Bare domains and IP addresses are kept as they are
+            return host;
+        }
+        int keep = labels[labels.length - 1].length() == 2
+                && SECOND_LEVEL_SUFFIXES.contains(labels[labels.length - 2]) ? 3 : 2;
+        return String.join(".", Arrays.copyOfRange(labels, labels.length - keep, labels.length));
+    }
+}
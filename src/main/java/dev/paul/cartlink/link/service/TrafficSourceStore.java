@@ -0,0 +1,133 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.util.SpaceSavingSketch;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps link_analytics_sources bounded to the top K canonical sources of
+ * each link plus an "other" row. Incoming counts are merged with the stored
+ * rows through a Space-Saving sketch; stored counts are the sketch's
+ * guaranteed counts, and whatever the sketch cannot attribute with certainty
+ * goes to "other", so a link's source counts always add up to its clicks.
+ */
+@Component
+public class TrafficSourceStore {
+
+    public static final String OTHER = "other";
+
+    private static final String SELECT_SOURCES = "SELECT s.source, s.clicks FROM link_analytics_sources s "
+            + "WHERE s.analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?)";
+
+    private static final String DELETE_SOURCES = "DELETE FROM link_analytics_sources "
+            + "WHERE analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?)";
+
+    private static final String INSERT_SOURCE = "INSERT INTO link_analytics_sources (analytics_id, source, clicks) "
+            + "SELECT l.analytics_id, ?, ? FROM links l WHERE l.id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TrafficSourceNormalizer normalizer;
+    private final int topK;
+
+    public TrafficSourceStore(JdbcTemplate jdbcTemplate, TrafficSourceNormalizer normalizer,
+            @Value("${cartlink.analytics.sources.top-k:20}") int topK) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.normalizer = normalizer;
+        this.topK = topK;
+    }
+
+    public SpaceSavingSketch newSketch() {
+        return new SpaceSavingSketch(topK);
+    }
+
+    /**
+     * Merges per-link source counts into the stored rows. Must run inside a
+     * transaction that already holds the link_analytics row lock (the click
+     * counter update takes it), so concurrent flushes of a link serialise.
+     */
+    public int write(Map<Long, SpaceSavingSketch> deltas) {
+        List<Object[]> deletes = new ArrayList<>(deltas.size());
+        List<Object[]> inserts = new ArrayList<>();
+        deltas.forEach((linkId, delta) -> {
+            SpaceSavingSketch merged = newSketch();
+            long[] other = new long[1];
+            jdbcTemplate.query(SELECT_SOURCES, rs -> {
+                String source = rs.getString("source");
+                long clicks = rs.getLong("clicks");
+                if (OTHER.equals(source)) {
+                    other[0] += clicks;
+                } else {
+                    // Rows written before normalisation hold full referrer URLs
+                    merged.offer(normalizer.canonical(source), clicks, 0);
+                }
+            }, linkId);
+            merged.merge(delta);
+            deletes.add(new Object[] { linkId });
+            addRows(linkId, merged, other[0], inserts);
+        });
+        if (deletes.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(DELETE_SOURCES, deletes);
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SOURCE, inserts);
+        }
+        return inserts.size();
+    }
+
+    /**
+     * Replaces the stored rows of each link with the given exact counts,
+     * trimmed to the top K. Used by the journal replay.
+     */
+    public int replace(Map<Long, Map<String, Long>> counts) {
+        List<Object[]> deletes = new ArrayList<>(counts.size());
+        List<Object[]> inserts = new ArrayList<>();
+        counts.forEach((linkId, sources) -> {
+            Map<String, Long> canonical = new HashMap<>();
+            sources.forEach((source, clicks) -> canonical.merge(normalizer.canonical(source), clicks, Long::sum));
+            List<Map.Entry<String, Long>> sorted = new ArrayList<>(canonical.entrySet());
+            sorted.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            // The counts are exact, so the top K are kept as they are and the rest go straight to "other";
+            // offering the tail to the sketch would evict the top K instead
+            SpaceSavingSketch sketch = newSketch();
+            long other = 0;
+            for (int i = 0; i < sorted.size(); i++) {
+                Map.Entry<String, Long> source = sorted.get(i);
+                if (i < topK) {
+                    sketch.offer(source.getKey(), source.getValue(), 0);
+                } else {
+                    other += source.getValue();
+                }
+            }
+            deletes.add(new Object[] { linkId });
+            addRows(linkId, sketch, other, inserts);
+        });
+        if (deletes.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(DELETE_SOURCES, deletes);
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SOURCE, inserts);
+        }
+        return inserts.size();
+    }
+
+    private static void addRows(Long linkId, SpaceSavingSketch sketch, long other, List<Object[]> inserts) {
+        for (SpaceSavingSketch.Counter counter : sketch.entries()) {
+            long guaranteed = counter.getGuaranteedCount();
+            other += counter.getError();
+            if (guaranteed > 0) {
+                inserts.add(new Object[] { counter.getKey(), guaranteed, linkId });
+            }
+        }
+        if (other > 0) {
+            inserts.add(new Object[] { OTHER, other, linkId });
+        }
+    }
+}
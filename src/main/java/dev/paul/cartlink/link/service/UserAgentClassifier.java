@@ -0,0 +1,186 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.dto.UserAgentClassification;
+import dev.paul.cartlink.link.model.BrowserFamily;
+import dev.paul.cartlink.link.model.DeviceClass;
+import dev.paul.cartlink.link.model.OperatingSystem;
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Classifies User-Agent strings into device class, operating system and
+ * browser family. A single yauaa analyzer is built and preheated at startup;
+ * it is fronted by a bounded LRU keyed by the raw header, because a handful
+ * of UA strings make up most clicks and a full parse is expensive (and
+ * serialised inside the analyzer).
+ */
+@Component
+public class UserAgentClassifier {
+    private static final Logger logger = LoggerFactory.getLogger(UserAgentClassifier.class);
+
+    // Longer headers are classified but not cached, so junk values cannot churn the cache
+    private static final int MAX_CACHED_LENGTH = 512;
+
+    private final UserAgentAnalyzer analyzer;
+    private final int maxEntries;
+    private final LinkedHashMap<String, UserAgentClassification> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public UserAgentClassifier(@Value("${cartlink.user-agent.cache.max-entries:10000}") int maxEntries,
+            @Value("${cartlink.user-agent.preheat-iterations:1000}") long preheatIterations) {
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserAgentClassification> eldest) {
+                return size() > UserAgentClassifier.this.maxEntries;
+            }
+        };
+        long start = System.currentTimeMillis();
+        this.analyzer = UserAgentAnalyzer.newBuilder()
+                .hideMatcherLoadStats()
+                .withoutCache()
+                .withField(UserAgent.DEVICE_CLASS)
+                .withField(UserAgent.OPERATING_SYSTEM_NAME)
+                .withField(UserAgent.AGENT_NAME)
+                .immediateInitialization()
+                .build();
+        if (preheatIterations > 0) {
+            analyzer.preHeat(preheatIterations);
+        }
+        logger.info("User-Agent analyzer ready in {} ms", System.currentTimeMillis() - start);
+    }
+
+    public UserAgentClassification classify(String userAgent) {
+        if (userAgent == null || userAgent.isBlank()) {
+            return UserAgentClassification.UNKNOWN;
+        }
+        boolean cacheable = userAgent.length() <= MAX_CACHED_LENGTH;
+        if (cacheable) {
+            synchronized (cache) {
+                UserAgentClassification cached = cache.get(userAgent);
+                if (cached != null) {
+                    hits.increment();
+                    return cached;
+                }
+            }
+        }
+        misses.increment();
+        UserAgentClassification classification = parse(userAgent);
+        if (cacheable) {
+            synchronized (cache) {
+                cache.put(userAgent, classification);
+            }
+        }
+        return classification;
+    }
+
+    private UserAgentClassification parse(String userAgent) {
+        UserAgent parsed = analyzer.parse(userAgent);
+        return new UserAgentClassification(
+                deviceClass(parsed.getValue(UserAgent.DEVICE_CLASS)),
+                operatingSystem(parsed.getValue(UserAgent.OPERATING_SYSTEM_NAME)),
+                browser(parsed.getValue(UserAgent.AGENT_NAME)));
+    }
+
+    private static DeviceClass deviceClass(String value) {
+        String name = value.toLowerCase(Locale.ROOT);
+        if (name.startsWith("robot") || name.equals("spy") || name.equals("hacker") || name.equals("cloud")) {
+            return DeviceClass.ROBOT;
+        }
+        switch (name) {
+            case "desktop":
+            case "anonymized":
+                return DeviceClass.DESKTOP;
+            case "phone":
+            case "mobile":
+            case "watch":
+            case "handheld game":
+            case "e-reader":
+                return DeviceClass.MOBILE;
+            case "tablet":
+                return DeviceClass.TABLET;
+            case "tv":
+            case "set-top box":
+                return DeviceClass.TV;
+            case "game console":
+                return DeviceClass.CONSOLE;
+            default:
+                return DeviceClass.UNKNOWN;
+        }
+    }
+
+    private static OperatingSystem operatingSystem(String value) {
+        String name = value.toLowerCase(Locale.ROOT);
+        if (name.contains("android")) {
+            return OperatingSystem.ANDROID;
+        }
+        if (name.equals("ios") || name.equals("ipados")) {
+            return OperatingSystem.IOS;
+        }
+        if (name.startsWith("windows")) {
+            return OperatingSystem.WINDOWS;
+        }
+        if (name.startsWith("mac os") || name.equals("macos")) {
+            return OperatingSystem.MACOS;
+        }
+        if (name.contains("chrome os")) {
+            return OperatingSystem.CHROME_OS;
+        }
+        if (name.contains("linux") || name.equals("ubuntu") || name.equals("fedora")) {
+            return OperatingSystem.LINUX;
+        }
+        return name.equals("unknown") || name.startsWith("??") ? OperatingSystem.UNKNOWN : OperatingSystem.OTHER;
+    }
+
+    private static BrowserFamily browser(String value) {
+        String name = value.toLowerCase(Locale.ROOT);
+        if (name.contains("facebook") || name.contains("instagram") || name.contains("tiktok")
+                || name.contains("twitter") || name.contains("snapchat") || name.contains("whatsapp")
+                || name.contains("pinterest") || name.contains("linkedin")) {
+            return BrowserFamily.IN_APP;
+        }
+        if (name.contains("edge")) {
+            return BrowserFamily.EDGE;
+        }
+        if (name.contains("opera")) {
+            return BrowserFamily.OPERA;
+        }
+        if (name.contains("samsung")) {
+            return BrowserFamily.SAMSUNG_INTERNET;
+        }
+        if (name.contains("firefox")) {
+            return BrowserFamily.FIREFOX;
+        }
+        if (name.contains("chrome") || name.equals("chromium")) {
+            return BrowserFamily.CHROME;
+        }
+        if (name.contains("safari")) {
+            return BrowserFamily.SAFARI;
+        }
+        return name.equals("unknown") || name.startsWith("??") ? BrowserFamily.UNKNOWN : BrowserFamily.OTHER;
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (cache) {
+            stats.put("size", cache.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return stats;
+    }
+}
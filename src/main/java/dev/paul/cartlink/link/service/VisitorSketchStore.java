@@ -0,0 +1,192 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.util.Hashing;
+import dev.paul.cartlink.util.HyperLogLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps per-link HyperLogLog sketches of the visitors seen since the last
+ * flush. The redirect path only adds to these in-memory deltas and never reads
+ * the database; the click flusher merges them into
+ * link_analytics.visitor_sketch under a row lock, so concurrent nodes never
+ * overwrite each other, and refreshes total_unique_clicks from the merged
+ * estimate.
+ */
+@Component
+public class VisitorSketchStore {
+
+    private static final String SELECT_SKETCH_FOR_UPDATE = "SELECT la.visitor_sketch FROM link_analytics la "
+            + "WHERE la.analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?) FOR UPDATE";
+
+    private static final String UPDATE_SKETCH = "UPDATE link_analytics SET visitor_sketch = ?, total_unique_clicks = ? "
+            + "WHERE analytics_id = (SELECT l.analytics_id FROM links l WHERE l.id = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxSketches;
+    private final LinkedHashMap<Long, Sketch> sketches;
+    // Dirty sketches pushed out of the LRU before they were written
+    private final Map<Long, Sketch> evictedDirty = new LinkedHashMap<>();
+
+    public VisitorSketchStore(JdbcTemplate jdbcTemplate,
+            @Value("${cartlink.analytics.visitor-sketches.max-entries:2000}") int maxSketches) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxSketches = maxSketches;
+        this.sketches = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Sketch> eldest) {
+                if (size() <= VisitorSketchStore.this.maxSketches) {
+                    return false;
+                }
+                Sketch sketch = eldest.getValue();
+                // Under the sketch monitor, so an offer racing with the eviction either lands
+                // before it and moves with the registers, or sees the flag and retries
+                synchronized (sketch) {
+                    sketch.evicted = true;
+                    if (sketch.dirty) {
+                        evictedDirty.merge(eldest.getKey(), sketch, Sketch::absorb);
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Records the visitor against the link's sketch. Returns true if the sketch
+     * changed, which only happens for visitors it has not seen since the last
+     * flush; false does not prove the visitor is returning.
+     */
+    public boolean offer(Long linkId, String visitorId) {
+        long hash = Hashing.hash64(visitorId);
+        while (true) {
+            Sketch sketch = sketchFor(linkId);
+            synchronized (sketch) {
+                if (sketch.evicted) {
+                    // Dropped from the LRU after the lookup; add to its replacement instead
+                    continue;
+                }
+                if (sketch.hll.add(hash)) {
+                    sketch.dirty = true;
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    private Sketch sketchFor(Long linkId) {
+        synchronized (sketches) {
+            Sketch sketch = sketches.get(linkId);
+            if (sketch != null) {
+                return sketch;
+            }
+            // A fresh delta; the stored registers are merged in by the flusher
+            sketch = new Sketch(new HyperLogLog());
+            Sketch evicted = evictedDirty.remove(linkId);
+            if (evicted != null) {
+                sketch.absorb(evicted);
+            }
+            sketches.put(linkId, sketch);
+            return sketch;
+        }
+    }
+
+    /**
+     * Takes the registers of every sketch changed since the last call and
+     * resets those sketches to empty deltas. The copies are written with {@link #write(Map)} and handed
+     * back through {@link #restore(Map)} if that write does not commit.
+     */
+    public Map<Long, byte[]> takeDirty() {
+        Map<Long, byte[]> dirty = new LinkedHashMap<>();
+        synchronized (sketches) {
+            evictedDirty.forEach((linkId, sketch) -> dirty.put(linkId, sketch.takeDirty()));
+            evictedDirty.clear();
+            sketches.forEach((linkId, sketch) -> {
+                byte[] registers = sketch.takeDirty();
+                if (registers != null) {
+                    dirty.put(linkId, registers);
+                }
+            });
+        }
+        return dirty;
+    }
+
+    /**
+     * Merges the given sketches into their stored copies. Must run inside a
+     * transaction; the row lock keeps concurrent nodes from losing registers.
+     */
+    public int write(Map<Long, byte[]> dirty) {
+        List<Object[]> updates = new ArrayList<>(dirty.size());
+        dirty.forEach((linkId, registers) -> {
+            List<byte[]> stored = jdbcTemplate.query(SELECT_SKETCH_FOR_UPDATE, (rs, rowNum) -> rs.getBytes(1),
+                    linkId);
+            HyperLogLog merged = HyperLogLog.fromBytes(registers);
+            if (!stored.isEmpty()) {
+                merged.merge(stored.get(0));
+            }
+            updates.add(new Object[] { merged.toBytes(), (int) Math.min(merged.estimate(), Integer.MAX_VALUE),
+                    linkId });
+        });
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_SKETCH, updates);
+        }
+        return updates.size();
+    }
+
+    public void restore(Map<Long, byte[]> dirty) {
+        synchronized (sketches) {
+            dirty.forEach((linkId, registers) -> {
+                Sketch failed = new Sketch(HyperLogLog.fromBytes(registers));
+                failed.dirty = true;
+                Sketch live = sketches.get(linkId);
+                if (live != null) {
+                    live.absorb(failed);
+                } else {
+                    evictedDirty.merge(linkId, failed, Sketch::absorb);
+                }
+            });
+        }
+    }
+
+    public int size() {
+        synchronized (sketches) {
+            return sketches.size();
+        }
+    }
+
+    private static final class Sketch {
+        private HyperLogLog hll;
+        private boolean dirty;
+        // Set once the sketch has left the LRU; offers must not add to it any more
+        private boolean evicted;
+
+        private Sketch(HyperLogLog hll) {
+            this.hll = hll;
+        }
+
+        private synchronized byte[] takeDirty() {
+            if (!dirty) {
+                return null;
+            }
+            dirty = false;
+            byte[] registers = hll.toBytes();
+            hll = new HyperLogLog();
+            return registers;
+        }
+
+        private synchronized Sketch absorb(Sketch other) {
+            synchronized (other) {
+                hll.merge(other.hll);
+                dirty |= other.dirty;
+            }
+            return this;
+        }
+    }
+}
@@ -5,9 +5,16 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import dev.paul.cartlink.link.service.LiveTrafficHub;
+import dev.paul.cartlink.merchant.dto.CustomerRetention;
+import dev.paul.cartlink.merchant.model.Merchant;
 import dev.paul.cartlink.merchant.service.MerchantService;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.util.Map;
 import java.util.List;
 
@@ -16,9 +23,11 @@ import java.util.List;
 public class MerchantDashboardController {
 
     private final MerchantService merchantService;
+    private final LiveTrafficHub liveTrafficHub;
 
-    public MerchantDashboardController(MerchantService merchantService) {
+    public MerchantDashboardController(MerchantService merchantService, LiveTrafficHub liveTrafficHub) {
         this.merchantService = merchantService;
+        this.liveTrafficHub = liveTrafficHub;
     }
 
     @GetMapping("/dashboard/stats")
@@ -41,4 +50,35 @@ public class MerchantDashboardController {
         List<Map<String, Object>> trafficData = merchantService.getTrafficDataForChart();
         return ResponseEntity.ok(trafficData);
     }
+
+    // New, returning and repeat customers between the optional dates
+    @GetMapping("/dashboard/customers")
+    public ResponseEntity<?> getCustomerRetention(
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate) {
+        try {
+            CustomerRetention retention = merchantService.getCustomerRetention(startDate, endDate);
+            return ResponseEntity.ok(retention);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Server-Sent Events stream of the merchant's click and order deltas, at
+     * most one "traffic" event per interval. Use traffic-data once for the
+     * initial totals and add the deltas to it.
+     */
+    @GetMapping(value = "/dashboard/traffic-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamTraffic(@AuthenticationPrincipal Merchant merchant) {
+        if (merchant == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Unauthorized"));
+        }
+        try {
+            SseEmitter emitter = liveTrafficHub.subscribe(merchant.getId());
+            return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(emitter);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package dev.paul.cartlink.merchant.dto;
+
+/**
+ * Distinct customers of a merchant over a date range. New customers had no
+ * order before the range, returning ones did; repeat customers ordered on
+ * at least two different days within the range.
+ */
+public class CustomerRetention {
+    private final long customers;
+    private final long newCustomers;
+    private final long returningCustomers;
+    private final long repeatCustomers;
+
+    public CustomerRetention(long customers, long returningCustomers, long repeatCustomers) {
+        this.customers = customers;
+        this.newCustomers = customers - returningCustomers;
+        this.returningCustomers = returningCustomers;
+        this.repeatCustomers = repeatCustomers;
+    }
+
+    public long getCustomers() {
+        return customers;
+    }
+
+    public long getNewCustomers() {
+        return newCustomers;
+    }
+
+    public long getReturningCustomers() {
+        return returningCustomers;
+    }
+
+    public long getRepeatCustomers() {
+        return repeatCustomers;
+    }
+
+    public double getRepeatRate() {
+        return customers == 0 ? 0 : (double) repeatCustomers / customers;
+    }
+}
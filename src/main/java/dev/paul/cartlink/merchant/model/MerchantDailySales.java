@@ -0,0 +1,57 @@
+package dev.paul.cartlink.merchant.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Order totals of one merchant for one day, maintained as orders are created
+ * and change status, see {@link dev.paul.cartlink.merchant.service.MerchantDailySalesService}.
+ * Orders that were later cancelled or refunded stay in the totals and are
+ * also counted in the cancelled columns. The day's customer ids are kept
+ * as a {@link dev.paul.cartlink.util.RoaringBitmap} for distinct counts
+ * across days.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "merchant_daily_sales", uniqueConstraints = @UniqueConstraint(
+        name = "uk_merchant_daily_sales_day", columnNames = { "merchant_id", "sales_date" }))
+public class MerchantDailySales {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "merchant_id", nullable = false)
+    private Long merchantId;
+
+    @Column(name = "sales_date", nullable = false)
+    private LocalDate salesDate;
+
+    @Column(nullable = false)
+    private Long orders = 0L;
+
+    @Column(nullable = false)
+    private Long units = 0L;
+
+    @Column(nullable = false)
+    private Double revenue = 0.0;
+
+    // Distinct customers who ordered that day
+    @Column(nullable = false)
+    private Long customers = 0L;
+
+    @Column(name = "cancelled_orders", nullable = false)
+    private Long cancelledOrders = 0L;
+
+    @Column(name = "cancelled_revenue", nullable = false)
+    private Double cancelledRevenue = 0.0;
+
+    @JsonIgnore
+    @Column(name = "customer_bitmap", length = 1048576)
+    private byte[] customerBitmap;
+}
@@ -21,7 +21,8 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "merchant_product")
+@Table(name = "merchant_product", indexes = @Index(name = "idx_merchant_product_merchant",
+        columnList = "merchant_id, id, price"))
 public class MerchantProduct {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE)
@@ -0,0 +1,21 @@
+package dev.paul.cartlink.merchant.repository;
+
+import dev.paul.cartlink.merchant.model.MerchantDailySales;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface MerchantDailySalesRepository extends JpaRepository<MerchantDailySales, Long> {
+
+    List<MerchantDailySales> findByMerchantIdOrderBySalesDate(Long merchantId);
+
+    // Both bounds are inclusive
+    List<MerchantDailySales> findByMerchantIdAndSalesDateBetweenOrderBySalesDate(Long merchantId, LocalDate start,
+            LocalDate end);
+
+    // Rows written before customer bitmaps were kept
+    boolean existsByCustomersGreaterThanAndCustomerBitmapIsNull(Long customers);
+}
@@ -0,0 +1,214 @@
+package dev.paul.cartlink.merchant.service;
+
+import dev.paul.cartlink.link.dto.LinkTrafficDelta;
+import dev.paul.cartlink.link.dto.LinkTrafficEvent;
+import dev.paul.cartlink.link.service.LinkMerchantResolver;
+import dev.paul.cartlink.order.dto.OrderEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caches the merchant dashboard results (stats, sales and traffic charts,
+ * customer retention) per merchant and query, so dashboards polling every
+ * few seconds do not re-run the aggregate queries. Concurrent misses on the
+ * same key share one load: the first caller computes, the others wait for
+ * its result.
+ *
+ * <p>Committed order events drop every entry of the merchant. Link traffic
+ * flushes drop the click-based entries (stats and traffic) of the merchants
+ * that own the flushed links, at most once per TTL per merchant: a busy link
+ * flushes every second, and dropping its merchant's entries on each flush
+ * would turn every poll into a miss. A load that was running when its
+ * merchant was invalidated still answers its waiters but is not kept.
+ * Entries also expire after a TTL, which covers changes made on other nodes
+ * and bounds how stale click counts get. Cached values are shared between
+ * callers and must not be modified.
+ */
+@Component
+public class DashboardCache {
+
+    public static final String STATS = "stats";
+    public static final String TRAFFIC = "traffic";
+    public static final String SALES = "sales";
+    public static final String CUSTOMERS = "customers";
+
+    private final LinkMerchantResolver linkMerchantResolver;
+    private final long ttlMillis;
+    private final int maxMerchants;
+    private final LinkedHashMap<Long, Map<String, Entry>> merchants;
+    // Merchant id to the time its click entries were last dropped; guarded by merchants
+    private final LinkedHashMap<Long, Long> clickInvalidations;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sharedLoads = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder throttledInvalidations = new LongAdder();
+
+    public DashboardCache(LinkMerchantResolver linkMerchantResolver,
+            @Value("${cartlink.merchant.dashboard-cache.ttl-seconds:60}") long ttlSeconds,
+            @Value("${cartlink.merchant.dashboard-cache.max-merchants:10000}") int maxMerchants) {
+        this.linkMerchantResolver = linkMerchantResolver;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxMerchants = maxMerchants;
+        // Access-ordered so the least recently polled merchant is dropped first
+        this.merchants = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Map<String, Entry>> eldest) {
+                return size() > DashboardCache.this.maxMerchants;
+            }
+        };
+        this.clickInvalidations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > DashboardCache.this.maxMerchants;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result for the merchant and key, or runs the loader
+     * once for all concurrent callers. Keys start with {@link #STATS},
+     * {@link #TRAFFIC}, {@link #SALES} or {@link #CUSTOMERS}; query
+     * parameters follow after a colon. Loader exceptions are passed to every
+     * waiting caller and nothing is cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Long merchantId, String key, Supplier<T> loader) {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        boolean owner = false;
+        synchronized (merchants) {
+            Map<String, Entry> entries = merchants.computeIfAbsent(merchantId, id -> new LinkedHashMap<>());
+            entry = entries.get(key);
+            if (entry != null && entry.value.isDone() && entry.expiresAt <= now) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(now + ttlMillis);
+                entries.put(key, entry);
+                owner = true;
+            }
+        }
+        if (owner) {
+            misses.increment();
+            try {
+                entry.value.complete(loader.get());
+            } catch (RuntimeException e) {
+                entry.value.completeExceptionally(e);
+                remove(merchantId, key, entry);
+                throw e;
+            }
+        } else if (entry.value.isDone()) {
+            hits.increment();
+        } else {
+            sharedLoads.increment();
+        }
+        try {
+            return (T) entry.value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void remove(Long merchantId, String key, Entry entry) {
+        synchronized (merchants) {
+            Map<String, Entry> entries = merchants.get(merchantId);
+            if (entries != null) {
+                entries.remove(key, entry);
+            }
+        }
+    }
+
+    public void invalidate(Long merchantId) {
+        synchronized (merchants) {
+            if (merchants.remove(merchantId) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    // Sales and customers come from orders only, so clicks leave those entries in place
+    private void invalidateClickEntries(Set<Long> merchantIds) {
+        long now = System.currentTimeMillis();
+        synchronized (merchants) {
+            for (Long merchantId : merchantIds) {
+                Map<String, Entry> entries = merchants.get(merchantId);
+                if (entries == null) {
+                    continue;
+                }
+                Long last = clickInvalidations.get(merchantId);
+                if (last != null && now - last < ttlMillis) {
+                    throttledInvalidations.increment();
+                    continue;
+                }
+                if (entries.keySet().removeIf(key -> key.startsWith(STATS) || key.startsWith(TRAFFIC))) {
+                    invalidations.increment();
+                    clickInvalidations.put(merchantId, now);
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        invalidate(event.getMerchantId());
+    }
+
+    @EventListener
+    public void onLinkTraffic(LinkTrafficEvent event) {
+        synchronized (merchants) {
+            if (merchants.isEmpty()) {
+                return;
+            }
+        }
+        Map<Long, Long> owners = linkMerchantResolver.resolve(event.getDeltas().stream()
+                .map(LinkTrafficDelta::getLinkId).toList());
+        invalidateClickEntries(new HashSet<>(owners.values()));
+    }
+
+    public Map<String, Object> getStats() {
+        int entries = 0;
+        int merchantCount;
+        synchronized (merchants) {
+            merchantCount = merchants.size();
+            for (Map<String, Entry> merchantEntries : merchants.values()) {
+                entries += merchantEntries.size();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("merchants", merchantCount);
+        stats.put("entries", entries);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("sharedLoads", sharedLoads.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("throttledInvalidations", throttledInvalidations.sum());
+        return stats;
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Object> value = new CompletableFuture<>();
+        private final long expiresAt;
+
+        private Entry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package dev.paul.cartlink.merchant.service;
+
+import dev.paul.cartlink.merchant.dto.CustomerRetention;
+import dev.paul.cartlink.merchant.model.MerchantDailySales;
+import dev.paul.cartlink.merchant.repository.MerchantDailySalesRepository;
+import dev.paul.cartlink.order.dto.OrderEvent;
+import dev.paul.cartlink.order.model.OrderStatus;
+import dev.paul.cartlink.util.RoaringBitmap;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+/**
+ * Maintains merchant_daily_sales from {@link OrderEvent}s. Each event is
+ * applied before its transaction commits, so the rollup commits or rolls
+ * back together with the order. A backfill rebuilds the rows of each merchant
+ * from orders; it runs in the background at startup while the table is empty
+ * or has rows without a customer bitmap.
+ *
+ * <p>Each row keeps the ids of the day's customers in a {@link RoaringBitmap},
+ * so distinct customers over any range, new versus returning customers and
+ * repeat customers are unions and intersections of the day bitmaps rather
+ * than DISTINCT scans over orders.
+ */
+@Service
+public class MerchantDailySalesService {
+    private static final Logger logger = LoggerFactory.getLogger(MerchantDailySalesService.class);
+
+    private static final long MAX_CUSTOMER_ID = 0xFFFFFFFFL;
+
+    // Makes sure the day's row exists, so concurrent first orders of a day do not collide on insert
+    private static final String ENSURE_DAY = "INSERT INTO merchant_daily_sales (merchant_id, sales_date, orders, "
+            + "units, revenue, customers, cancelled_orders, cancelled_revenue) VALUES (?, ?, 0, 0, 0, 0, 0, 0) "
+            + "ON CONFLICT DO NOTHING";
+
+    private static final String ADD_ORDER = "UPDATE merchant_daily_sales SET orders = orders + 1, "
+            + "units = units + ?, revenue = revenue + ? WHERE merchant_id = ? AND sales_date = ?";
+
+    private static final String SELECT_DAY_CUSTOMERS = "SELECT customer_bitmap FROM merchant_daily_sales "
+            + "WHERE merchant_id = ? AND sales_date = ?";
+
+    private static final String ADD_CUSTOMER = "UPDATE merchant_daily_sales SET customers = customers + 1, "
+            + "customer_bitmap = ? WHERE merchant_id = ? AND sales_date = ?";
+
+    private static final String ADD_CANCELLED = "UPDATE merchant_daily_sales SET "
+            + "cancelled_orders = cancelled_orders + ?, cancelled_revenue = cancelled_revenue + ? "
+            + "WHERE merchant_id = ? AND sales_date = ?";
+
+    private static final String SELECT_CUSTOMER_BITMAPS = "SELECT sales_date, customer_bitmap "
+            + "FROM merchant_daily_sales WHERE merchant_id = ? AND sales_date BETWEEN ? AND ? "
+            + "AND customer_bitmap IS NOT NULL ORDER BY sales_date";
+
+    private static final String DELETE_MERCHANT = "DELETE FROM merchant_daily_sales WHERE merchant_id = ?";
+
+    private static final String BACKFILL_MERCHANT = "INSERT INTO merchant_daily_sales (merchant_id, sales_date, "
+            + "orders, units, revenue, customers, cancelled_orders, cancelled_revenue) "
+            + "SELECT mp.merchant_id, CAST(o.order_date AS DATE), COUNT(*), SUM(COALESCE(o.quantity, 0)), "
+            + "SUM(COALESCE(o.quantity, 0) * COALESCE(mp.price, 0)), COUNT(DISTINCT o.customer_id), "
+            + "SUM(CASE WHEN o.status IN ('CANCELLED', 'REFUNDED') THEN 1 ELSE 0 END), "
+            + "SUM(CASE WHEN o.status IN ('CANCELLED', 'REFUNDED') "
+            + "THEN COALESCE(o.quantity, 0) * COALESCE(mp.price, 0) ELSE 0 END) "
+            + "FROM orders o JOIN merchant_product mp ON mp.id = o.merchant_product_id "
+            + "WHERE mp.merchant_id = ? AND o.order_date IS NOT NULL "
+            + "GROUP BY mp.merchant_id, CAST(o.order_date AS DATE)";
+
+    private static final String SELECT_MERCHANT_CUSTOMERS = "SELECT CAST(o.order_date AS DATE) AS sales_date, "
+            + "o.customer_id FROM orders o JOIN merchant_product mp ON mp.id = o.merchant_product_id "
+            + "WHERE mp.merchant_id = ? AND o.order_date IS NOT NULL AND o.customer_id IS NOT NULL";
+
+    private static final String SET_CUSTOMER_BITMAP = "UPDATE merchant_daily_sales SET customer_bitmap = ? "
+            + "WHERE merchant_id = ? AND sales_date = ?";
+
+    private static final LocalDate MIN_DATE = LocalDate.of(1970, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MerchantDailySalesRepository merchantDailySalesRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean backfillOnStartup;
+    private final ExecutorService backfiller = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "merchant-daily-sales-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MerchantDailySalesService(JdbcTemplate jdbcTemplate,
+            MerchantDailySalesRepository merchantDailySalesRepository, PlatformTransactionManager transactionManager,
+            @Value("${cartlink.merchant.daily-sales.backfill-on-startup:true}") boolean backfillOnStartup) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.merchantDailySalesRepository = merchantDailySalesRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.backfillOnStartup = backfillOnStartup;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        Date salesDate = Date.valueOf(event.getOrderDate().toLocalDate());
+        if (event.getType() == OrderEvent.Type.CREATED) {
+            jdbcTemplate.update(ENSURE_DAY, event.getMerchantId(), salesDate);
+            // Locks the day's row first, so the bitmap read-modify-write below cannot interleave with
+            // another order of the same day
+            jdbcTemplate.update(ADD_ORDER, event.getQuantity(), event.getAmount(), event.getMerchantId(), salesDate);
+            if (event.getCustomerId() != null) {
+                addCustomer(event.getMerchantId(), salesDate, event.getCustomerId());
+            }
+            if (isCancelled(event.getStatus())) {
+                jdbcTemplate.update(ADD_CANCELLED, 1, event.getAmount(), event.getMerchantId(), salesDate);
+            }
+        } else if (isCancelled(event.getStatus()) != isCancelled(event.getPreviousStatus())) {
+            int sign = isCancelled(event.getStatus()) ? 1 : -1;
+            jdbcTemplate.update(ENSURE_DAY, event.getMerchantId(), salesDate);
+            jdbcTemplate.update(ADD_CANCELLED, sign, sign * event.getAmount(), event.getMerchantId(), salesDate);
+        }
+    }
+
+    private void addCustomer(Long merchantId, Date salesDate, Long customerId) {
+        // Runs before the order's commit, so an id the bitmap cannot hold is skipped rather than failing the order
+        if (!fitsBitmap(customerId)) {
+            logger.warn("Customer id {} is outside the 32-bit range of the daily customer bitmap; "
+                    + "merchant {} distinct customer counts will miss it", customerId, merchantId);
+            return;
+        }
+        byte[] bytes = jdbcTemplate.query(SELECT_DAY_CUSTOMERS, rs -> rs.next() ? rs.getBytes(1) : null,
+                merchantId, salesDate);
+        RoaringBitmap customers = RoaringBitmap.fromBytes(bytes);
+        if (customers.add(customerId)) {
+            jdbcTemplate.update(ADD_CUSTOMER, customers.toBytes(), merchantId, salesDate);
+        }
+    }
+
+    private static boolean fitsBitmap(long customerId) {
+        return customerId >= 0 && customerId <= MAX_CUSTOMER_ID;
+    }
+
+    private static boolean isCancelled(OrderStatus status) {
+        return status == OrderStatus.CANCELLED || status == OrderStatus.REFUNDED;
+    }
+
+    /** Daily rows of the merchant in [start, end]; null bounds are open. */
+    public List<MerchantDailySales> getDailySales(Long merchantId, LocalDate start, LocalDate end) {
+        if (start == null && end == null) {
+            return merchantDailySalesRepository.findByMerchantIdOrderBySalesDate(merchantId);
+        }
+        return merchantDailySalesRepository.findByMerchantIdAndSalesDateBetweenOrderBySalesDate(merchantId,
+                start != null ? start : MIN_DATE, end != null ? end : MAX_DATE);
+    }
+
+    /** Distinct customers who ordered in [start, end]; null bounds are open. */
+    public long countDistinctCustomers(Long merchantId, LocalDate start, LocalDate end) {
+        RoaringBitmap customers = new RoaringBitmap();
+        forEachCustomerBitmap(merchantId, start, end, (day, bitmap) -> customers.or(bitmap));
+        return customers.cardinality();
+    }
+
+    /**
+     * New, returning and repeat customers in [start, end]; null bounds are
+     * open. Reads every day bitmap of the merchant up to the end, since
+     * returning customers are those seen before the start.
+     */
+    public CustomerRetention getCustomerRetention(Long merchantId, LocalDate start, LocalDate end) {
+        LocalDate from = start != null ? start : MIN_DATE;
+        RoaringBitmap before = new RoaringBitmap();
+        RoaringBitmap seen = new RoaringBitmap();
+        RoaringBitmap repeat = new RoaringBitmap();
+        forEachCustomerBitmap(merchantId, null, end, (day, bitmap) -> {
+            if (day.isBefore(from)) {
+                before.or(bitmap);
+            } else {
+                repeat.or(seen.and(bitmap));
+                seen.or(bitmap);
+            }
+        });
+        return new CustomerRetention(seen.cardinality(), seen.andCardinality(before), repeat.cardinality());
+    }
+
+    private void forEachCustomerBitmap(Long merchantId, LocalDate start, LocalDate end,
+            BiConsumer<LocalDate, RoaringBitmap> action) {
+        jdbcTemplate.query(SELECT_CUSTOMER_BITMAPS, rs -> {
+            action.accept(rs.getDate("sales_date").toLocalDate(),
+                    RoaringBitmap.fromBytes(rs.getBytes("customer_bitmap")));
+        }, merchantId, Date.valueOf(start != null ? start : MIN_DATE), Date.valueOf(end != null ? end : MAX_DATE));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfNeeded() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        backfiller.execute(() -> {
+            try {
+                if (merchantDailySalesRepository.count() == 0
+                        || merchantDailySalesRepository.existsByCustomersGreaterThanAndCustomerBitmapIsNull(0L)) {
+                    backfill();
+                }
+            } catch (Exception e) {
+                logger.error("Merchant daily sales backfill failed", e);
+            }
+        });
+    }
+
+    /**
+     * Rebuilds every merchant's rows from orders, one merchant per
+     * transaction. Returns the number of rows written.
+     */
+    public int backfill() {
+        List<Long> merchantIds = jdbcTemplate.queryForList("SELECT DISTINCT merchant_id FROM merchant_product",
+                Long.class);
+        long start = System.currentTimeMillis();
+        int rows = 0;
+        for (Long merchantId : merchantIds) {
+            rows += backfill(merchantId);
+        }
+        logger.info("Backfilled {} merchant daily sales rows for {} merchants in {} ms", rows, merchantIds.size(),
+                System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    public int backfill(Long merchantId) {
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.update(DELETE_MERCHANT, merchantId);
+            int rows = jdbcTemplate.update(BACKFILL_MERCHANT, merchantId);
+            Map<LocalDate, RoaringBitmap> days = new HashMap<>();
+            long[] skipped = { 0 };
+            jdbcTemplate.query(SELECT_MERCHANT_CUSTOMERS, rs -> {
+                // Every day with customers gets a bitmap, even an empty one, so the startup check
+                // for rows without one does not rebuild everything again on the next start
+                RoaringBitmap customers = days.computeIfAbsent(rs.getDate("sales_date").toLocalDate(),
+                        day -> new RoaringBitmap());
+                long customerId = rs.getLong("customer_id");
+                if (!fitsBitmap(customerId)) {
+                    skipped[0]++;
+                    return;
+                }
+                customers.add(customerId);
+            }, merchantId);
+            if (skipped[0] > 0) {
+                logger.warn("Skipped {} orders of merchant {} whose customer ids do not fit the daily customer bitmap",
+                        skipped[0], merchantId);
+            }
+            List<Object[]> bitmaps = new ArrayList<>(days.size());
+            days.forEach((day, customers) -> bitmaps.add(new Object[] { customers.toBytes(), merchantId,
+                    Date.valueOf(day) }));
+            jdbcTemplate.batchUpdate(SET_CUSTOMER_BITMAP, bitmaps);
+            return rows;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfiller.shutdownNow();
+    }
+}
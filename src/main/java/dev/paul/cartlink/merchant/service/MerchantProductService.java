@@ -1,5 +1,6 @@
 package dev.paul.cartlink.merchant.service;
 
+import dev.paul.cartlink.link.service.LinkResolutionCache;
 import dev.paul.cartlink.product.model.Product;
 import dev.paul.cartlink.product.repository.ProductRepository;
 import dev.paul.cartlink.merchant.model.Merchant;
@@ -17,11 +18,14 @@ public class MerchantProductService {
 
     private final ProductRepository productRepository;
     private final MerchantProductRepository merchantProductRepository;
+    private final LinkResolutionCache linkResolutionCache;
 
     public MerchantProductService(ProductRepository productRepository,
-            MerchantProductRepository merchantProductRepository) {
+            MerchantProductRepository merchantProductRepository,
+            LinkResolutionCache linkResolutionCache) {
         this.productRepository = productRepository;
         this.merchantProductRepository = merchantProductRepository;
+        this.linkResolutionCache = linkResolutionCache;
     }
 
     public MerchantProduct addMerchantProduct(Merchant merchant, Product product, Integer stock, Double price,
@@ -52,7 +56,9 @@ public class MerchantProductService {
         merchantProduct.setStock(stock);
         merchantProduct.setPrice(price);
         merchantProduct.setDescription(description);
-        return merchantProductRepository.save(merchantProduct);
+        MerchantProduct saved = merchantProductRepository.save(merchantProduct);
+        linkResolutionCache.invalidateMerchantProduct(merchantProductId);
+        return saved;
     }
 
     // Rename for consistency and add merchant check
@@ -64,6 +70,7 @@ public class MerchantProductService {
         }
         merchantProductRepository.delete(merchantProduct);
         productRepository.delete(merchantProduct.getProduct());
+        linkResolutionCache.invalidateMerchantProduct(merchantProductId);
     }
 
     public List<MerchantProduct> getMerchantProducts(Merchant merchant) {
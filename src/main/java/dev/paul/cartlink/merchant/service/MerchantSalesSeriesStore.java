@@ -0,0 +1,223 @@
+package dev.paul.cartlink.merchant.service;
+
+import dev.paul.cartlink.order.dto.OrderEvent;
+import dev.paul.cartlink.util.ColumnarTimeSeries;
+import dev.paul.cartlink.util.RoaringBitmap;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory order amount series per merchant for the sales charts, one
+ * {@link ColumnarTimeSeries} each. Timestamps are the order dates as epoch
+ * milliseconds read in UTC, so a day is a fixed 86,400,000 ms span that
+ * matches the local order date.
+ *
+ * <p>The series are loaded from orders in the background once the
+ * application is ready, and committed new orders are appended. Orders that
+ * arrive during the load are held back and applied afterwards, skipping
+ * those the load already read; order ids commit out of order, so the load
+ * remembers every id it read rather than the highest one. Each merchant
+ * keeps at most a configured number of points; older ranges and requests
+ * made before the load finishes return null, and callers fall back to
+ * merchant_daily_sales.
+ */
+@Component
+public class MerchantSalesSeriesStore {
+    private static final Logger logger = LoggerFactory.getLogger(MerchantSalesSeriesStore.class);
+
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final long MAX_BITMAP_ID = 0xFFFFFFFFL;
+
+    private static final String SELECT_ORDERS = "SELECT mp.merchant_id, o.order_id, o.order_date, "
+            + "COALESCE(o.quantity, 0) * COALESCE(mp.price, 0) AS amount "
+            + "FROM orders o JOIN merchant_product mp ON mp.id = o.merchant_product_id "
+            + "WHERE o.order_date IS NOT NULL ORDER BY o.order_date";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final long maxPointsPerMerchant;
+    private final int fetchSize;
+
+    private final ConcurrentHashMap<Long, ColumnarTimeSeries> series = new ConcurrentHashMap<>();
+    // Events seen while loading; guarded by the store's monitor
+    private List<OrderEvent> heldBack = new ArrayList<>();
+    private volatile boolean ready;
+    private volatile long loadMillis;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "merchant-sales-series-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MerchantSalesSeriesStore(JdbcTemplate jdbcTemplate,
+            @Value("${cartlink.merchant.sales-series.enabled:true}") boolean enabled,
+            @Value("${cartlink.merchant.sales-series.chunk-size:4096}") int chunkSize,
+            @Value("${cartlink.merchant.sales-series.max-points-per-merchant:262144}") long maxPointsPerMerchant,
+            @Value("${cartlink.merchant.sales-series.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.maxPointsPerMerchant = maxPointsPerMerchant;
+        this.fetchSize = fetchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            loader.execute(() -> {
+                try {
+                    load();
+                } catch (Exception e) {
+                    logger.error("Merchant sales series load failed, charts will use the daily rollup", e);
+                }
+            });
+        }
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        // Ids are mostly dense, so the bitmap costs a few bits per order; ids beyond 32 bits go to the set
+        RoaringBitmap readIds = new RoaringBitmap();
+        Set<Long> readLargeIds = new HashSet<>();
+        long[] points = { 0 };
+        // Forward-only cursor; only the primitive columns are kept
+        jdbcTemplate.query(con -> {
+            var statement = con.prepareStatement(SELECT_ORDERS);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, rs -> {
+            long orderId = rs.getLong("order_id");
+            append(rs.getLong("merchant_id"), rs.getTimestamp("order_date").toLocalDateTime(), rs.getDouble("amount"));
+            if (orderId >= 0 && orderId <= MAX_BITMAP_ID) {
+                readIds.add(orderId);
+            } else {
+                readLargeIds.add(orderId);
+            }
+            points[0]++;
+        });
+        synchronized (this) {
+            for (OrderEvent event : heldBack) {
+                long orderId = event.getOrderId();
+                if (!readIds.contains(orderId) && !readLargeIds.contains(orderId)) {
+                    append(event.getMerchantId(), event.getOrderDate(), event.getAmount());
+                }
+            }
+            heldBack = null;
+            ready = true;
+        }
+        loadMillis = System.currentTimeMillis() - start;
+        logger.info("Loaded {} order points for {} merchants into sales series in {} ms", points[0], series.size(),
+                loadMillis);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        if (!enabled || event.getType() != OrderEvent.Type.CREATED) {
+            return;
+        }
+        if (!ready) {
+            synchronized (this) {
+                if (!ready) {
+                    heldBack.add(event);
+                    return;
+                }
+            }
+        }
+        append(event.getMerchantId(), event.getOrderDate(), event.getAmount());
+    }
+
+    private void append(Long merchantId, LocalDateTime orderDate, double amount) {
+        ColumnarTimeSeries merchantSeries = series.computeIfAbsent(merchantId,
+                id -> new ColumnarTimeSeries(chunkSize, maxPointsPerMerchant));
+        synchronized (merchantSeries) {
+            merchantSeries.append(toMillis(orderDate), amount);
+        }
+    }
+
+    /**
+     * Sales per day in [start, end] (both inclusive, null for open bounds),
+     * only days with orders. Returns null when the series is not loaded yet
+     * or no longer holds the start of the range.
+     */
+    public Map<LocalDate, Double> getDailySales(Long merchantId, LocalDate start, LocalDate end) {
+        if (!ready) {
+            return null;
+        }
+        ColumnarTimeSeries merchantSeries = series.get(merchantId);
+        if (merchantSeries == null) {
+            return new LinkedHashMap<>();
+        }
+        double[] sums;
+        long firstDay;
+        synchronized (merchantSeries) {
+            if (merchantSeries.size() == 0) {
+                return new LinkedHashMap<>();
+            }
+            long from = start != null ? start.toEpochDay() * DAY_MILLIS : merchantSeries.firstTimestamp();
+            if (from < merchantSeries.coveredFrom()) {
+                return null;
+            }
+            firstDay = Math.floorDiv(from, DAY_MILLIS);
+            long lastDay = end != null ? end.toEpochDay()
+                    : Math.floorDiv(merchantSeries.lastTimestamp(), DAY_MILLIS);
+            if (lastDay < firstDay) {
+                return new LinkedHashMap<>();
+            }
+            sums = new double[(int) (lastDay - firstDay + 1)];
+            merchantSeries.sumByBucket(firstDay * DAY_MILLIS, DAY_MILLIS, sums);
+        }
+        Map<LocalDate, Double> daily = new LinkedHashMap<>();
+        for (int i = 0; i < sums.length; i++) {
+            if (sums[i] != 0) {
+                daily.put(LocalDate.ofEpochDay(firstDay + i), sums[i]);
+            }
+        }
+        return daily;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    public Map<String, Object> getStats() {
+        long points = 0;
+        for (ColumnarTimeSeries merchantSeries : series.values()) {
+            synchronized (merchantSeries) {
+                points += merchantSeries.size();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("merchants", series.size());
+        stats.put("points", points);
+        stats.put("loadMillis", loadMillis);
+        return stats;
+    }
+}
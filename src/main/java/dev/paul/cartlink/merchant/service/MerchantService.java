@@ -1,15 +1,19 @@
 package dev.paul.cartlink.merchant.service;
 
+import dev.paul.cartlink.order.dto.MerchantOrderTotals;
 import dev.paul.cartlink.order.model.Order;
 import dev.paul.cartlink.order.repository.OrderRepository;
 import dev.paul.cartlink.security.service.SecurityService;
-import dev.paul.cartlink.link.model.LinkAnalytics;
+import dev.paul.cartlink.link.dto.SourceClickTotal;
 import dev.paul.cartlink.link.repository.LinkAnalyticsRepository;
+import dev.paul.cartlink.link.service.LinkAnalyticsService;
 import dev.paul.cartlink.complaint.model.Complaint;
 import dev.paul.cartlink.complaint.repository.ComplaintRepository;
 import dev.paul.cartlink.customer.model.Review;
 import dev.paul.cartlink.customer.repository.ReviewRepository;
+import dev.paul.cartlink.merchant.dto.CustomerRetention;
 import dev.paul.cartlink.merchant.model.Merchant;
+import dev.paul.cartlink.merchant.model.MerchantDailySales;
 import dev.paul.cartlink.merchant.model.Wallet;
 import dev.paul.cartlink.merchant.repository.MerchantRepository;
 import dev.paul.cartlink.merchant.repository.WalletRepository;
@@ -24,7 +28,6 @@ import java.util.UUID;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.stream.Collectors;
 import java.time.Month;
 import java.time.format.TextStyle;
@@ -43,7 +46,11 @@ public class MerchantService {
     private final ComplaintRepository complaintRepository;
     private final OrderRepository orderRepository;
     private final LinkAnalyticsRepository linkAnalyticsRepository;
+    private final LinkAnalyticsService linkAnalyticsService;
     private final AuthService authService;
+    private final MerchantDailySalesService merchantDailySalesService;
+    private final MerchantSalesSeriesStore merchantSalesSeriesStore;
+    private final DashboardCache dashboardCache;
 
     @Autowired
     public MerchantService(
@@ -55,7 +62,11 @@ public class MerchantService {
             ComplaintRepository complaintRepository,
             OrderRepository orderRepository,
             LinkAnalyticsRepository linkAnalyticsRepository,
-            AuthService authService) {
+            LinkAnalyticsService linkAnalyticsService,
+            AuthService authService,
+            MerchantDailySalesService merchantDailySalesService,
+            MerchantSalesSeriesStore merchantSalesSeriesStore,
+            DashboardCache dashboardCache) {
         this.merchantRepository = merchantRepository;
         this.walletRepository = walletRepository;
         this.passwordEncoder = passwordEncoder;
@@ -64,7 +75,11 @@ public class MerchantService {
         this.complaintRepository = complaintRepository;
         this.orderRepository = orderRepository;
         this.linkAnalyticsRepository = linkAnalyticsRepository;
+        this.linkAnalyticsService = linkAnalyticsService;
         this.authService = authService;
+        this.merchantDailySalesService = merchantDailySalesService;
+        this.merchantSalesSeriesStore = merchantSalesSeriesStore;
+        this.dashboardCache = dashboardCache;
     }
 
     @Transactional
@@ -219,90 +234,85 @@ public class MerchantService {
         return orderRepository.findByMerchantProduct_Merchant_merchantId(currentMerchant.getMerchantId());
     }
 
+    // The dashboard results below are cached per merchant, see DashboardCache
     public Map<String, Object> getDashboardStats() {
         Merchant currentMerchant = getCurrentMerchant();
+        return dashboardCache.get(currentMerchant.getMerchantId(), DashboardCache.STATS,
+                () -> computeDashboardStats(currentMerchant));
+    }
+
+    private Map<String, Object> computeDashboardStats(Merchant currentMerchant) {
         Map<String, Object> stats = new HashMap<>();
 
-        // Get total sales
-        double totalSales = orderRepository.findByMerchantProduct_Merchant_merchantId(currentMerchant.getMerchantId())
-                .stream()
-                .mapToDouble(order -> Optional.ofNullable(order.getQuantity()).orElse(0)
-                        * Optional.ofNullable(order.getMerchantProduct().getPrice()).orElse(0.0))
-                .sum();
-
-        // Get total orders
-        long totalOrders = orderRepository.countByMerchantProduct_Merchant_merchantId(currentMerchant.getMerchantId());
-
-        // Get total customers (unique customers who placed orders)
-        long totalCustomers = orderRepository
-                .findDistinctCustomerIdByMerchantProduct_Merchant_merchantId(currentMerchant.getMerchantId()).size();
-
-        // Get today's sales
-        double todaySales = orderRepository
-                .findByMerchantProduct_Merchant_merchantIdAndOrderDateAfter(currentMerchant.getMerchantId(),
-                        java.time.LocalDateTime.now().withHour(0).withMinute(0).withSecond(0))
-                .stream()
-                .mapToDouble(order -> Optional.ofNullable(order.getQuantity()).orElse(0)
-                        * Optional.ofNullable(order.getMerchantProduct().getPrice()).orElse(0.0))
-                .sum();
-
-        stats.put("todaySales", todaySales);
-        stats.put("totalSales", totalSales);
-        stats.put("totalOrders", totalOrders);
-        stats.put("totalCustomers", totalCustomers);
+        // Sales and order counts in one aggregate query, distinct customers from the daily bitmaps
+        MerchantOrderTotals totals = orderRepository.sumByMerchantId(currentMerchant.getMerchantId(),
+                java.time.LocalDate.now().atStartOfDay());
+
+        stats.put("todaySales", totals.getTodaySales());
+        stats.put("totalSales", totals.getTotalSales());
+        stats.put("totalOrders", totals.getTotalOrders());
+        stats.put("totalCustomers",
+                merchantDailySalesService.countDistinctCustomers(currentMerchant.getMerchantId(), null, null));
+        stats.put("uniqueVisitors", linkAnalyticsService.estimateUniqueVisitorsForMerchant(currentMerchant.getMerchantId()));
 
         return stats;
     }
 
-    // Fix: Use getSalesDataForChart for sales chart data
+    // Both dates are optional and inclusive, as yyyy-MM-dd
+    public CustomerRetention getCustomerRetention(String startDate, String endDate) {
+        java.time.LocalDate start = parseDate(startDate);
+        java.time.LocalDate end = parseDate(endDate);
+        Merchant currentMerchant = getCurrentMerchant();
+        return dashboardCache.get(currentMerchant.getMerchantId(),
+                DashboardCache.CUSTOMERS + ":" + start + ":" + end,
+                () -> merchantDailySalesService.getCustomerRetention(currentMerchant.getMerchantId(), start, end));
+    }
+
+    private static java.time.LocalDate parseDate(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return java.time.LocalDate.parse(value);
+        } catch (java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value);
+        }
+    }
+
+    // Sales chart from the in-memory series, or the daily rollup rows when the series cannot answer
     public List<Map<String, Object>> getSalesDataForChart(String period, String startDate, String endDate) {
         Merchant currentMerchant = getCurrentMerchant();
-        List<Order> orders = orderRepository.findByMerchantProduct_Merchant_merchantId(currentMerchant.getMerchantId());
+        String key = DashboardCache.SALES + ":" + period + ":" + startDate + ":" + endDate;
+        return dashboardCache.get(currentMerchant.getMerchantId(), key,
+                () -> computeSalesDataForChart(currentMerchant, period, startDate, endDate));
+    }
+
+    private List<Map<String, Object>> computeSalesDataForChart(Merchant currentMerchant, String period,
+            String startDate, String endDate) {
         java.time.format.DateTimeFormatter dtf = java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
-        java.util.Map<String, Double> salesData = new java.util.HashMap<>();
+        Function<java.time.LocalDate, String> bucket;
+        java.time.LocalDate start = null;
+        java.time.LocalDate end = null;
         if (period != null && period.equalsIgnoreCase("week")) {
-            // Group by week
-            orders.stream().collect(Collectors.groupingBy(
-                    order -> order.getOrderDate().with(java.time.DayOfWeek.MONDAY).toLocalDate().toString(),
-                    Collectors.summingDouble(order -> Optional.ofNullable(order.getQuantity()).orElse(0)
-                            * Optional.ofNullable(order.getMerchantProduct().getPrice()).orElse(0.0))))
-                    .forEach(salesData::put);
-        } else if (period != null && period.equalsIgnoreCase("month")) {
-            // Group by month
-            orders.stream().collect(Collectors.groupingBy(
-                    order -> order.getOrderDate().getMonth().getDisplayName(java.time.format.TextStyle.SHORT,
-                            java.util.Locale.ENGLISH),
-                    Collectors.summingDouble(order -> Optional.ofNullable(order.getQuantity()).orElse(0)
-                            * Optional.ofNullable(order.getMerchantProduct().getPrice()).orElse(0.0))))
-                    .forEach(salesData::put);
+            bucket = day -> day.with(java.time.DayOfWeek.MONDAY).toString();
         } else if (period != null && period.equalsIgnoreCase("quarter")) {
-            // Group by quarter
-            orders.stream().collect(Collectors.groupingBy(
-                    order -> "Q" + ((order.getOrderDate().getMonthValue() - 1) / 3 + 1),
-                    Collectors.summingDouble(order -> Optional.ofNullable(order.getQuantity()).orElse(0)
-                            * Optional.ofNullable(order.getMerchantProduct().getPrice()).orElse(0.0))))
-                    .forEach(salesData::put);
-        } else if (startDate != null && endDate != null) {
-            java.time.LocalDate start = java.time.LocalDate.parse(startDate, dtf);
-            java.time.LocalDate end = java.time.LocalDate.parse(endDate, dtf);
-            orders.stream().filter(order -> {
-                java.time.LocalDate orderDate = order.getOrderDate().toLocalDate();
-                return (orderDate.isEqual(start) || orderDate.isAfter(start))
-                        && (orderDate.isEqual(end) || orderDate.isBefore(end));
-            }).collect(Collectors.groupingBy(
-                    order -> order.getOrderDate().toLocalDate().toString(),
-                    Collectors.summingDouble(order -> Optional.ofNullable(order.getQuantity()).orElse(0)
-                            * Optional.ofNullable(order.getMerchantProduct().getPrice()).orElse(0.0))))
-                    .forEach(salesData::put);
+            bucket = day -> "Q" + ((day.getMonthValue() - 1) / 3 + 1);
+        } else if ((period == null || !period.equalsIgnoreCase("month")) && startDate != null && endDate != null) {
+            bucket = java.time.LocalDate::toString;
+            start = java.time.LocalDate.parse(startDate, dtf);
+            end = java.time.LocalDate.parse(endDate, dtf);
         } else {
-            // Default: group by month
-            orders.stream().collect(Collectors.groupingBy(
-                    order -> order.getOrderDate().getMonth().getDisplayName(java.time.format.TextStyle.SHORT,
-                            java.util.Locale.ENGLISH),
-                    Collectors.summingDouble(order -> Optional.ofNullable(order.getQuantity()).orElse(0)
-                            * Optional.ofNullable(order.getMerchantProduct().getPrice()).orElse(0.0))))
-                    .forEach(salesData::put);
+            // Month, also the default
+            bucket = day -> day.getMonth().getDisplayName(TextStyle.SHORT, Locale.ENGLISH);
         }
+        Map<java.time.LocalDate, Double> daily = merchantSalesSeriesStore
+                .getDailySales(currentMerchant.getMerchantId(), start, end);
+        if (daily == null) {
+            daily = merchantDailySalesService.getDailySales(currentMerchant.getMerchantId(), start, end).stream()
+                    .collect(Collectors.toMap(MerchantDailySales::getSalesDate, MerchantDailySales::getRevenue));
+        }
+        Map<String, Double> salesData = new HashMap<>();
+        daily.forEach((day, sales) -> salesData.merge(bucket.apply(day), sales, Double::sum));
         return salesData.entrySet().stream().map(entry -> {
             java.util.Map<String, Object> data = new java.util.HashMap<>();
             data.put("name", entry.getKey());
@@ -313,21 +323,17 @@ public class MerchantService {
 
     public List<Map<String, Object>> getTrafficDataForChart() {
         Merchant currentMerchant = getCurrentMerchant();
-        // Collect all LinkAnalytics for this merchant's products
-        List<LinkAnalytics> analytics = currentMerchant.getMerchantProducts().stream()
-                .flatMap(mp -> mp.getLinkAnalytics() != null ? mp.getLinkAnalytics().stream()
-                        : java.util.stream.Stream.empty())
-                .collect(Collectors.toList());
+        return dashboardCache.get(currentMerchant.getMerchantId(), DashboardCache.TRAFFIC,
+                () -> getTrafficDataForChart(currentMerchant.getMerchantId()));
+    }
 
-        // Aggregate all uniqueSourceClicks
+    // One grouped query over the source clicks, no walk over products and their analytics
+    public List<Map<String, Object>> getTrafficDataForChart(Long merchantId) {
         Map<String, Long> trafficSourceCounts = new HashMap<>();
-        for (LinkAnalytics analytic : analytics) {
-            if (analytic.getUniqueSourceClicks() != null) {
-                analytic.getUniqueSourceClicks().forEach((source, count) -> {
-                    String key = (source != null && !source.isEmpty()) ? source : "Direct/Unknown";
-                    trafficSourceCounts.put(key, trafficSourceCounts.getOrDefault(key, 0L) + count);
-                });
-            }
+        for (SourceClickTotal total : linkAnalyticsRepository.sumSourceClicksByMerchantId(merchantId)) {
+            String source = total.getSource();
+            String key = (source != null && !source.isEmpty()) ? source : "Direct/Unknown";
+            trafficSourceCounts.merge(key, total.getClicks(), Long::sum);
         }
 
         return trafficSourceCounts.entrySet().stream()
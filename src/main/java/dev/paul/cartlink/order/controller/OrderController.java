@@ -7,13 +7,21 @@ import dev.paul.cartlink.merchant.model.MerchantProduct;
 import dev.paul.cartlink.merchant.repository.MerchantProductRepository;
 import dev.paul.cartlink.order.model.Order;
 import dev.paul.cartlink.order.model.OrderStatus;
+import dev.paul.cartlink.order.service.OrderExportService;
 import dev.paul.cartlink.order.service.OrderService;
 import dev.paul.cartlink.payment.service.PaymentService;
 
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 
@@ -25,13 +33,16 @@ public class OrderController {
     private final CustomerService customerService;
     private final MerchantProductRepository merchantProductRepository;
     private final PaymentService paymentService;
+    private final OrderExportService orderExportService;
 
     public OrderController(OrderService orderService, CustomerService customerService,
-            MerchantProductRepository merchantProductRepository, PaymentService paymentService) {
+            MerchantProductRepository merchantProductRepository, PaymentService paymentService,
+            OrderExportService orderExportService) {
         this.orderService = orderService;
         this.customerService = customerService;
         this.merchantProductRepository = merchantProductRepository;
         this.paymentService = paymentService;
+        this.orderExportService = orderExportService;
     }
 
     @GetMapping
@@ -60,6 +71,45 @@ public class OrderController {
         }
     }
 
+    /**
+     * Downloads the merchant's orders as CSV (default) or NDJSON, gzipped
+     * when gzip=true. Rows are streamed from the database as they are read,
+     * so large exports do not build up in memory. Status and startDate /
+     * endDate filter as in the list endpoint. Merchants can only export
+     * their own orders.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<?> exportOrders(@AuthenticationPrincipal Merchant merchant,
+            @PathVariable Long merchantId,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate) {
+        if (merchant == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Unauthorized"));
+        }
+        if (!merchant.getId().equals(merchantId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Forbidden"));
+        }
+        try {
+            OrderExportService.Format exportFormat = OrderExportService.Format.parse(format);
+            OrderStatus orderStatus = status != null ? OrderStatus.valueOf(status) : null;
+            LocalDateTime start = startDate != null ? LocalDateTime.parse(startDate) : null;
+            LocalDateTime end = endDate != null ? LocalDateTime.parse(endDate) : null;
+            StreamingResponseBody body = orderExportService.export(merchantId, exportFormat, orderStatus, start,
+                    end, gzip);
+            String filename = "orders-" + merchantId + "." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+            return ResponseEntity.ok()
+                    .contentType(gzip ? MediaType.parseMediaType("application/gzip") : exportFormat.getMediaType())
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            ContentDisposition.attachment().filename(filename).build().toString())
+                    .body(body);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @PutMapping("/{orderId}/status")
     public ResponseEntity<?> updateOrderStatus(@PathVariable Long merchantId,
             @PathVariable Long orderId,
@@ -0,0 +1,29 @@
+package dev.paul.cartlink.order.dto;
+
+/**
+ * Order aggregates of one merchant. Sales are quantity times the current
+ * merchant product price, as on the dashboard.
+ */
+public class MerchantOrderTotals {
+    private final double totalSales;
+    private final double todaySales;
+    private final long totalOrders;
+
+    public MerchantOrderTotals(Double totalSales, Double todaySales, Long totalOrders) {
+        this.totalSales = totalSales != null ? totalSales : 0;
+        this.todaySales = todaySales != null ? todaySales : 0;
+        this.totalOrders = totalOrders != null ? totalOrders : 0;
+    }
+
+    public double getTotalSales() {
+        return totalSales;
+    }
+
+    public double getTodaySales() {
+        return todaySales;
+    }
+
+    public long getTotalOrders() {
+        return totalOrders;
+    }
+}
@@ -0,0 +1,98 @@
+package dev.paul.cartlink.order.dto;
+
+import dev.paul.cartlink.order.model.Order;
+import dev.paul.cartlink.order.model.OrderStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published when an order is created or its status changes, from inside the
+ * transaction that made the change. Listeners that keep derived data in step
+ * with orders use {@code @TransactionalEventListener}. The amount is the
+ * quantity times the merchant product price at the time of the event, as on
+ * the dashboard.
+ */
+public class OrderEvent {
+
+    public enum Type {
+        CREATED,
+        STATUS_CHANGED
+    }
+
+    private final Type type;
+    private final Long orderId;
+    private final Long merchantId;
+    private final Long customerId;
+    private final LocalDateTime orderDate;
+    private final int quantity;
+    private final double amount;
+    private final OrderStatus previousStatus;
+    private final OrderStatus status;
+
+    private OrderEvent(Type type, Order order, OrderStatus previousStatus) {
+        this.type = type;
+        this.orderId = order.getOrderId();
+        this.merchantId = order.getMerchantProduct().getMerchant().getMerchantId();
+        this.customerId = order.getCustomer() != null ? order.getCustomer().getCustomerId() : null;
+        this.orderDate = order.getOrderDate();
+        this.quantity = order.getQuantity() != null ? order.getQuantity() : 0;
+        Double price = order.getMerchantProduct().getPrice();
+        this.amount = quantity * (price != null ? price : 0.0);
+        this.previousStatus = previousStatus;
+        this.status = order.getStatus();
+    }
+
+    // Orders without a merchant product belong to no merchant and publish nothing
+    private static boolean hasMerchant(Order order) {
+        return order.getMerchantProduct() != null && order.getMerchantProduct().getMerchant() != null
+                && order.getOrderDate() != null;
+    }
+
+    /** The event for a newly saved order, or null if it has no merchant. */
+    public static OrderEvent created(Order order) {
+        return hasMerchant(order) ? new OrderEvent(Type.CREATED, order, null) : null;
+    }
+
+    /** The event for a status change, or null if the status did not change or there is no merchant. */
+    public static OrderEvent statusChanged(Order order, OrderStatus previousStatus) {
+        return hasMerchant(order) && previousStatus != order.getStatus()
+                ? new OrderEvent(Type.STATUS_CHANGED, order, previousStatus)
+                : null;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public Long getMerchantId() {
+        return merchantId;
+    }
+
+    public Long getCustomerId() {
+        return customerId;
+    }
+
+    public LocalDateTime getOrderDate() {
+        return orderDate;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public OrderStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+}
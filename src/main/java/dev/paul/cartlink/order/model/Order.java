@@ -22,7 +22,9 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "orders")
+// Covers the dashboard aggregates: a range per merchant product, with everything they read
+@Table(name = "orders", indexes = @Index(name = "idx_orders_product_date",
+        columnList = "merchant_product_id, order_date, quantity, customer_id"))
 public class Order {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
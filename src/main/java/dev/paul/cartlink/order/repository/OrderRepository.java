@@ -1,17 +1,18 @@
 package dev.paul.cartlink.order.repository;
 
 import dev.paul.cartlink.merchant.model.Merchant;
+import dev.paul.cartlink.order.dto.MerchantOrderTotals;
 import dev.paul.cartlink.order.model.Order;
 import dev.paul.cartlink.order.model.OrderStatus;
 import dev.paul.cartlink.customer.model.Customer;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Set;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -21,8 +22,12 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
     long countByMerchantProduct_Merchant_merchantId(Long merchantId);
 
-    @Query("SELECT DISTINCT o.customer.customerId FROM Order o WHERE o.merchantProduct.merchant.merchantId = :merchantId")
-    Set<Long> findDistinctCustomerIdByMerchantProduct_Merchant_merchantId(Long merchantId);
+    // One pass over the merchant's orders, served from idx_orders_product_date without reading order rows
+    @Query("SELECT new dev.paul.cartlink.order.dto.MerchantOrderTotals(SUM(o.quantity * mp.price), "
+            + "SUM(CASE WHEN o.orderDate >= :since THEN o.quantity * mp.price ELSE 0.0 END), "
+            + "COUNT(o)) "
+            + "FROM Order o JOIN o.merchantProduct mp WHERE mp.merchant.merchantId = :merchantId")
+    MerchantOrderTotals sumByMerchantId(@Param("merchantId") Long merchantId, @Param("since") LocalDateTime since);
 
     List<Order> findByMerchantProduct_Merchant(Merchant merchant);
 
@@ -0,0 +1,34 @@
+package dev.paul.cartlink.order.service;
+
+import dev.paul.cartlink.order.dto.OrderEvent;
+import dev.paul.cartlink.order.model.Order;
+import dev.paul.cartlink.order.model.OrderStatus;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes {@link OrderEvent}s. Every code path that saves a new order or
+ * changes an order's status goes through here, so listeners see all of them.
+ */
+@Component
+public class OrderEventPublisher {
+    private final ApplicationEventPublisher eventPublisher;
+
+    public OrderEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    public void created(Order order) {
+        publish(OrderEvent.created(order));
+    }
+
+    public void statusChanged(Order order, OrderStatus previousStatus) {
+        publish(OrderEvent.statusChanged(order, previousStatus));
+    }
+
+    private void publish(OrderEvent event) {
+        if (event != null) {
+            eventPublisher.publishEvent(event);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package dev.paul.cartlink.order.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.paul.cartlink.merchant.repository.MerchantRepository;
+import dev.paul.cartlink.order.model.OrderStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a merchant's orders as CSV or newline-delimited JSON. Rows are read
+ * from a forward-only, read-only cursor with a fixed fetch size and written
+ * straight to the response, so memory use does not depend on the number of
+ * orders. The cursor runs in a read-only transaction because PostgreSQL only
+ * honours the fetch size with autocommit off.
+ */
+@Service
+public class OrderExportService {
+
+    public enum Format {
+        CSV("csv", MediaType.parseMediaType("text/csv")),
+        NDJSON("ndjson", MediaType.parseMediaType("application/x-ndjson"));
+
+        private final String extension;
+        private final MediaType mediaType;
+
+        Format(String extension, MediaType mediaType) {
+            this.extension = extension;
+            this.mediaType = mediaType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        public static Format parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported export format: " + value);
+            }
+        }
+    }
+
+    private static final String[] COLUMNS = { "order_id", "order_date", "status", "quantity", "unit_price",
+            "total_price", "paid", "merchant_product_id", "product_name", "customer_id", "link_id" };
+
+    private static final String SELECT_ORDERS = "SELECT o.order_id, o.order_date, o.status, o.quantity, "
+            + "mp.price, o.total_price, o.paid, mp.id, p.name, o.customer_id, o.product_link_id "
+            + "FROM orders o JOIN merchant_product mp ON mp.id = o.merchant_product_id "
+            + "LEFT JOIN product p ON p.product_id = mp.product_id WHERE mp.merchant_id = ?";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MerchantRepository merchantRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int fetchSize;
+
+    public OrderExportService(JdbcTemplate jdbcTemplate, MerchantRepository merchantRepository,
+            ObjectMapper objectMapper, PlatformTransactionManager transactionManager,
+            @Value("${cartlink.orders.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.merchantRepository = merchantRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Checks the merchant and returns the body that streams its orders,
+     * oldest first. Status and both date bounds are optional; the bounds are
+     * inclusive. The query runs when the body is written.
+     */
+    public StreamingResponseBody export(Long merchantId, Format format, OrderStatus status, LocalDateTime start,
+            LocalDateTime end, boolean gzip) {
+        if (!merchantRepository.existsById(merchantId)) {
+            throw new IllegalArgumentException("Merchant not found");
+        }
+        StringBuilder sql = new StringBuilder(SELECT_ORDERS);
+        List<Object> args = new ArrayList<>();
+        args.add(merchantId);
+        if (status != null) {
+            sql.append(" AND o.status = ?");
+            args.add(status.name());
+        }
+        if (start != null) {
+            sql.append(" AND o.order_date >= ?");
+            args.add(Timestamp.valueOf(start));
+        }
+        if (end != null) {
+            sql.append(" AND o.order_date <= ?");
+            args.add(Timestamp.valueOf(end));
+        }
+        sql.append(" ORDER BY o.order_id");
+        String query = sql.toString();
+
+        return out -> {
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+            OutputStream target = compressed != null ? compressed : out;
+            Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_SIZE);
+            RowWriter rows = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+            Object[] row = new Object[COLUMNS.length];
+            try {
+                rows.start();
+                transactionTemplate.executeWithoutResult(tx -> jdbcTemplate.query(con -> {
+                    PreparedStatement statement = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY);
+                    statement.setFetchSize(fetchSize);
+                    for (int i = 0; i < args.size(); i++) {
+                        statement.setObject(i + 1, args.get(i));
+                    }
+                    return statement;
+                }, rs -> {
+                    readRow(rs, row);
+                    try {
+                        rows.write(row);
+                    } catch (IOException e) {
+                        // Usually the client went away; this stops the cursor
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+                rows.finish();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+            if (compressed != null) {
+                compressed.finish();
+            }
+        };
+    }
+
+    // Reuses one array for every row; nulls stay null
+    private static void readRow(ResultSet rs, Object[] row) throws SQLException {
+        row[0] = rs.getLong(1);
+        Timestamp orderDate = rs.getTimestamp(2);
+        row[1] = orderDate != null ? orderDate.toLocalDateTime().toString() : null;
+        row[2] = rs.getString(3);
+        row[3] = nullable(rs, rs.getLong(4));
+        row[4] = nullable(rs, rs.getDouble(5));
+        row[5] = nullable(rs, rs.getDouble(6));
+        row[6] = nullable(rs, rs.getBoolean(7));
+        row[7] = rs.getLong(8);
+        row[8] = rs.getString(9);
+        row[9] = nullable(rs, rs.getLong(10));
+        row[10] = nullable(rs, rs.getLong(11));
+    }
+
+    private static Object nullable(ResultSet rs, Object value) throws SQLException {
+        return rs.wasNull() ? null : value;
+    }
+
+    private interface RowWriter {
+        void start() throws IOException;
+
+        void write(Object[] row) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        private CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void start() throws IOException {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(Object[] row) throws IOException {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                Object value = row[i];
+                if (value instanceof String text) {
+                    writeText(text);
+                } else if (value != null) {
+                    writer.write(value.toString());
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        // RFC 4180: quote fields with separators, quotes or line breaks, doubling the quotes
+        private void writeText(String text) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < text.length() && !quote; i++) {
+                char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(text);
+                return;
+            }
+            writer.write('"');
+            writer.write(text.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+
+    private final class NdjsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        private NdjsonRowWriter(Writer writer) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(writer);
+            // The servlet stream is closed by Spring, not by the generator
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Objects are separated by the newline written after each one, not the default space
+            this.generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void write(Object[] row) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < row.length; i++) {
+                generator.writeFieldName(COLUMNS[i]);
+                Object value = row[i];
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof Long number) {
+                    generator.writeNumber(number);
+                } else if (value instanceof Double number) {
+                    generator.writeNumber(number);
+                } else if (value instanceof Boolean flag) {
+                    generator.writeBoolean(flag);
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+        }
+    }
+}
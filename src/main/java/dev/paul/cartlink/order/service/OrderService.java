@@ -24,14 +24,16 @@ public class OrderService {
     private final LinkRepository linkRepository;
     private final LinkAnalyticsService linkAnalyticsService;
     private final MerchantProductRepository merchantProductRepository;
+    private final OrderEventPublisher orderEventPublisher;
 
     public OrderService(OrderRepository orderRepository,
             LinkRepository linkRepository, LinkAnalyticsService linkAnalyticsService,
-            MerchantProductRepository merchantProductRepository) {
+            MerchantProductRepository merchantProductRepository, OrderEventPublisher orderEventPublisher) {
         this.orderRepository = orderRepository;
         this.linkRepository = linkRepository;
         this.linkAnalyticsService = linkAnalyticsService;
         this.merchantProductRepository = merchantProductRepository;
+        this.orderEventPublisher = orderEventPublisher;
     }
 
     @Transactional
@@ -41,8 +43,8 @@ public class OrderService {
             throw new IllegalArgumentException("Insufficient stock");
         }
 
-        // Fetch LinkAnalytics by analyticsId
-        Link link = linkRepository.getReferenceById(linkId);
+        // Orders placed outside a link have no link to credit
+        Link link = linkId != null ? linkRepository.getReferenceById(linkId) : null;
 
         Order order = new Order();
         order.setMerchantProduct(merchantProduct);
@@ -53,6 +55,7 @@ public class OrderService {
         order.setLink(link);
 
         Order savedOrder = orderRepository.save(order);
+        orderEventPublisher.created(savedOrder);
 
         if (link != null) {
             linkAnalyticsService.updateTotalOrders(link);
@@ -69,7 +72,9 @@ public class OrderService {
             order.setStatus(OrderStatus.PENDING);
         if (order.getPaid() == null)
             order.setPaid(false);
-        return orderRepository.save(order);
+        Order saved = orderRepository.save(order);
+        orderEventPublisher.created(saved);
+        return saved;
     }
 
     public List<Order> getMerchantOrders(Merchant merchant) {
@@ -90,10 +95,13 @@ public class OrderService {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("Order not found"));
 
+        OrderStatus previousStatus = order.getStatus();
         order.setStatus(newStatus);
         order.setUpdatedAt(LocalDateTime.now());
 
-        return orderRepository.save(order);
+        Order saved = orderRepository.save(order);
+        orderEventPublisher.statusChanged(saved, previousStatus);
+        return saved;
     }
 
     public List<Order> getOrdersByProductLink(Long linkId) {
@@ -3,6 +3,7 @@ package dev.paul.cartlink.payment.service;
 import dev.paul.cartlink.order.model.Order;
 import dev.paul.cartlink.order.model.OrderStatus;
 import dev.paul.cartlink.order.repository.OrderRepository;
+import dev.paul.cartlink.order.service.OrderEventPublisher;
 import dev.paul.cartlink.payment.model.Payment;
 import dev.paul.cartlink.payment.model.PaymentMethod;
 import dev.paul.cartlink.payment.model.PaymentStatus;
@@ -12,6 +13,8 @@ import dev.paul.cartlink.merchant.model.Wallet;
 import dev.paul.cartlink.merchant.repository.MerchantRepository;
 import dev.paul.cartlink.merchant.repository.WalletRepository;
 import dev.paul.cartlink.complaint.repository.ComplaintRepository;
+import dev.paul.cartlink.link.model.FunnelStep;
+import dev.paul.cartlink.link.service.LinkAnalyticsService;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -33,6 +36,10 @@ public class PaymentService {
     private WalletRepository walletRepository;
     @Autowired
     private ComplaintRepository complaintRepository;
+    @Autowired
+    private LinkAnalyticsService linkAnalyticsService;
+    @Autowired
+    private OrderEventPublisher orderEventPublisher;
 
     @Transactional
     public Payment initiatePayment(Order order, PaymentMethod method, double amount, String currency, String txRef) {
@@ -57,9 +64,16 @@ public class PaymentService {
             payment.setPaidAt(LocalDateTime.now());
             paymentRepository.save(payment);
             Order order = payment.getOrder();
+            // Payment callbacks can be retried, count each order as paid once
+            boolean newlyPaid = !Boolean.TRUE.equals(order.getPaid());
+            OrderStatus previousStatus = order.getStatus();
             order.setStatus(OrderStatus.PAID);
             order.setPaid(true);
             orderRepository.save(order);
+            orderEventPublisher.statusChanged(order, previousStatus);
+            if (newlyPaid && order.getLink() != null) {
+                linkAnalyticsService.recordFunnelStep(order.getLink().getId(), FunnelStep.PAID);
+            }
         }
     }
 
@@ -71,8 +85,10 @@ public class PaymentService {
             payment.setStatus(PaymentStatus.FAILED);
             paymentRepository.save(payment);
             Order order = payment.getOrder();
+            OrderStatus previousStatus = order.getStatus();
             order.setStatus(OrderStatus.CANCELLED);
             orderRepository.save(order);
+            orderEventPublisher.statusChanged(order, previousStatus);
         }
     }
 
@@ -88,6 +104,7 @@ public class PaymentService {
                 walletRepository.save(wallet);
                 order.setStatus(OrderStatus.COMPLETED);
                 orderRepository.save(order);
+                orderEventPublisher.statusChanged(order, OrderStatus.DELIVERED);
             }
         }
     }
@@ -104,8 +121,10 @@ public class PaymentService {
                     payment.setStatus(PaymentStatus.REFUNDED);
                     payment.setRefundedAt(LocalDateTime.now());
                     paymentRepository.save(payment);
+                    OrderStatus previousStatus = order.getStatus();
                     order.setStatus(OrderStatus.REFUNDED);
                     orderRepository.save(order);
+                    orderEventPublisher.statusChanged(order, previousStatus);
                 }
             }
         }
@@ -121,8 +140,10 @@ public class PaymentService {
             Wallet wallet = merchant.getWallet();
             wallet.setBalance(wallet.getBalance() + order.getTotalPrice());
             walletRepository.save(wallet);
+            OrderStatus previousStatus = order.getStatus();
             order.setStatus(OrderStatus.COMPLETED);
             orderRepository.save(order);
+            orderEventPublisher.statusChanged(order, previousStatus);
             // Optionally, mark order as paid out or log payout
         }
     }
@@ -3,6 +3,7 @@ package dev.paul.cartlink.security;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -42,6 +43,11 @@ public class SecurityConfig {
                         .requestMatchers("/api/merchant/signup", "/api/merchant/login").permitAll()
                         .requestMatchers("/api/merchant/password-reset-request").permitAll()
                         .requestMatchers("/api/merchant/password-reset").permitAll()
+                        .requestMatchers("/api/analytics/pageview/**", "/api/analytics/timespent/**",
+                                "/api/analytics/beacon").permitAll()
+                        // Global cache and aggregator internals; see cartlink.security.admin-emails
+                        .requestMatchers(HttpMethod.GET, "/api/links/metrics").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/api/links/*").permitAll() // Link storefronts
                         .requestMatchers("/error").permitAll()
                         // Protected endpoints (require JWT)
                         .requestMatchers("/api/customers/**").authenticated() // All other customer endpoints require
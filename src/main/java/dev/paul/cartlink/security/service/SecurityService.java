@@ -11,6 +11,8 @@ import dev.paul.cartlink.merchant.repository.MerchantRepository;
 import dev.paul.cartlink.merchant.repository.WalletRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -19,8 +21,12 @@ import org.springframework.security.oauth2.jwt.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -43,6 +49,10 @@ public class SecurityService implements UserDetailsService {
     @Value("${jwt.expiration}")
     private long jwtExpiration;
 
+    // Accounts that may read operational endpoints such as /api/links/metrics
+    @Value("${cartlink.security.admin-emails:}")
+    private Set<String> adminEmails;
+
     @Override
     @Transactional(readOnly = true)
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
@@ -59,6 +69,19 @@ public class SecurityService implements UserDetailsService {
         return customer;
     }
 
+    /**
+     * The user's own authorities, plus ROLE_ADMIN for accounts listed in
+     * cartlink.security.admin-emails.
+     */
+    public Collection<? extends GrantedAuthority> getAuthorities(UserDetails userDetails) {
+        if (!adminEmails.contains(userDetails.getUsername())) {
+            return userDetails.getAuthorities();
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>(userDetails.getAuthorities());
+        authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
+        return authorities;
+    }
+
     public String generateToken(UserDetails userDetails) {
         try {
 
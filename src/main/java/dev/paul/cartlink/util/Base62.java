@@ -0,0 +1,61 @@
+package dev.paul.cartlink.util;
+
+/**
+ * Base62 encoding of non-negative longs using 0-9, a-z, A-Z.
+ */
+public final class Base62 {
+
+    private static final char[] ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            .toCharArray();
+
+    // Long.MAX_VALUE takes 11 digits
+    public static final int MAX_LENGTH = 11;
+
+    private Base62() {
+    }
+
+    public static String encode(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Cannot encode negative value: " + value);
+        }
+        char[] buffer = new char[MAX_LENGTH];
+        int position = buffer.length;
+        do {
+            buffer[--position] = ALPHABET[(int) (value % 62)];
+            value /= 62;
+        } while (value > 0);
+        return new String(buffer, position, buffer.length - position);
+    }
+
+    /**
+     * Decodes a base62 string, returning -1 if it contains other characters or
+     * does not fit in a non-negative long.
+     */
+    public static long decode(CharSequence text) {
+        if (text == null || text.length() == 0 || text.length() > MAX_LENGTH) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int digit = digit(text.charAt(i));
+            if (digit < 0 || value > (Long.MAX_VALUE - digit) / 62) {
+                return -1;
+            }
+            value = value * 62 + digit;
+        }
+        return value;
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 36;
+        }
+        return -1;
+    }
+}
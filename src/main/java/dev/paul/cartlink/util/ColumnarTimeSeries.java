@@ -0,0 +1,179 @@
+package dev.paul.cartlink.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Append-mostly series of (timestamp, value) points stored column-wise in
+ * fixed-size chunks of primitive long[] and double[] arrays. Each chunk is
+ * sorted by time; points that arrive late are inserted into the open chunk,
+ * so adjacent chunks may overlap slightly. Range and bucket aggregations skip
+ * chunks by their time bounds and binary-search the rest, so they are plain
+ * loops over primitive arrays.
+ *
+ * <p>The series holds at most a fixed number of points. When full, the
+ * oldest chunk is dropped and {@link #coveredFrom()} moves past it: results
+ * are complete only for ranges starting at or after that time.
+ * Not thread-safe; callers synchronise on the instance.
+ */
+public final class ColumnarTimeSeries {
+
+    private final int chunkSize;
+    private final int maxChunks;
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+    private long size;
+    private long coveredFrom = Long.MIN_VALUE;
+
+    public ColumnarTimeSeries(int chunkSize, long maxPoints) {
+        if (chunkSize < 1 || maxPoints < chunkSize) {
+            throw new IllegalArgumentException("maxPoints must be at least chunkSize, and chunkSize positive");
+        }
+        this.chunkSize = chunkSize;
+        this.maxChunks = (int) Math.min(Integer.MAX_VALUE, maxPoints / chunkSize);
+    }
+
+    public void append(long timestamp, double value) {
+        Chunk tail = chunks.peekLast();
+        if (tail == null || tail.size == chunkSize) {
+            if (chunks.size() == maxChunks) {
+                Chunk evicted = chunks.removeFirst();
+                size -= evicted.size;
+                coveredFrom = Math.max(coveredFrom, evicted.max + 1);
+            }
+            tail = new Chunk(chunkSize);
+            chunks.addLast(tail);
+        }
+        tail.insert(timestamp, value);
+        size++;
+    }
+
+    /** Sum of the values with from <= timestamp < to. */
+    public double sum(long from, long to) {
+        double sum = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.size == 0 || chunk.max < from || chunk.min >= to) {
+                continue;
+            }
+            int end = chunk.lowerBound(to);
+            for (int i = chunk.lowerBound(from); i < end; i++) {
+                sum += chunk.values[i];
+            }
+        }
+        return sum;
+    }
+
+    /** Number of points with from <= timestamp < to. */
+    public long count(long from, long to) {
+        long count = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.size == 0 || chunk.max < from || chunk.min >= to) {
+                continue;
+            }
+            count += chunk.lowerBound(to) - chunk.lowerBound(from);
+        }
+        return count;
+    }
+
+    /**
+     * Adds the values into consecutive buckets of the given width starting at
+     * from: sums[i] covers [from + i * width, from + (i + 1) * width).
+     */
+    public void sumByBucket(long from, long width, double[] sums) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        long to = from + width * sums.length;
+        for (Chunk chunk : chunks) {
+            if (chunk.size == 0 || chunk.max < from || chunk.min >= to) {
+                continue;
+            }
+            int end = chunk.lowerBound(to);
+            for (int i = chunk.lowerBound(from); i < end; i++) {
+                sums[(int) ((chunk.times[i] - from) / width)] += chunk.values[i];
+            }
+        }
+    }
+
+    /** Earliest timestamp from which the series is complete. */
+    public long coveredFrom() {
+        return coveredFrom;
+    }
+
+    /** Earliest timestamp held, or Long.MAX_VALUE if empty. */
+    public long firstTimestamp() {
+        long first = Long.MAX_VALUE;
+        for (Chunk chunk : chunks) {
+            if (chunk.size > 0) {
+                first = Math.min(first, chunk.min);
+            }
+        }
+        return first;
+    }
+
+    /** Latest timestamp held, or Long.MIN_VALUE if empty. */
+    public long lastTimestamp() {
+        long last = Long.MIN_VALUE;
+        for (Chunk chunk : chunks) {
+            if (chunk.size > 0) {
+                last = Math.max(last, chunk.max);
+            }
+        }
+        return last;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    private static final class Chunk {
+        private final long[] times;
+        private final double[] values;
+        private int size;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        private Chunk(int capacity) {
+            this.times = new long[capacity];
+            this.values = new double[capacity];
+        }
+
+        private void insert(long timestamp, double value) {
+            int index = size;
+            if (size > 0 && timestamp < times[size - 1]) {
+                // Late arrival: keep the chunk sorted, after points with the same timestamp
+                index = upperBound(timestamp);
+                System.arraycopy(times, index, times, index + 1, size - index);
+                System.arraycopy(values, index, values, index + 1, size - index);
+            }
+            times[index] = timestamp;
+            values[index] = value;
+            size++;
+            min = Math.min(min, timestamp);
+            max = Math.max(max, timestamp);
+        }
+
+        // First index whose timestamp is >= the given one
+        private int lowerBound(long timestamp) {
+            int index = Arrays.binarySearch(times, 0, size, timestamp);
+            if (index < 0) {
+                return -index - 1;
+            }
+            while (index > 0 && times[index - 1] == timestamp) {
+                index--;
+            }
+            return index;
+        }
+
+        // First index whose timestamp is > the given one
+        private int upperBound(long timestamp) {
+            int index = Arrays.binarySearch(times, 0, size, timestamp);
+            if (index < 0) {
+                return -index - 1;
+            }
+            while (index < size && times[index] == timestamp) {
+                index++;
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package dev.paul.cartlink.util;
+
+/**
+ * Histogram of durations in seconds over fixed, roughly logarithmic buckets.
+ * Histograms with the same buckets merge by adding counts, so percentiles
+ * can be estimated for any combination of them. Estimates interpolate
+ * linearly within a bucket and are exact only at bucket boundaries.
+ * Not thread-safe; callers synchronise on the instance.
+ */
+public final class DurationHistogram {
+
+    // Exclusive upper bound of each bucket; the last bucket takes everything above
+    private static final long[] UPPER_BOUNDS = { 1, 2, 3, 5, 8, 10, 15, 20, 30, 45, 60, 90, 120, 180, 300, 600,
+            1200, 1800, 3600, 86400 };
+
+    public static final int BUCKETS = UPPER_BOUNDS.length + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+
+    public static int bucketOf(long seconds) {
+        for (int i = 0; i < UPPER_BOUNDS.length; i++) {
+            if (seconds < UPPER_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return UPPER_BOUNDS.length;
+    }
+
+    public static long lowerBound(int bucket) {
+        return bucket == 0 ? 0 : UPPER_BOUNDS[bucket - 1];
+    }
+
+    public void add(long seconds) {
+        add(bucketOf(seconds), 1);
+    }
+
+    public void add(int bucket, long count) {
+        if (bucket < 0 || bucket >= BUCKETS) {
+            throw new IllegalArgumentException("No such bucket: " + bucket);
+        }
+        counts[bucket] += count;
+        total += count;
+    }
+
+    public void merge(DurationHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    public long count(int bucket) {
+        return counts[bucket];
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return total == 0;
+    }
+
+    /**
+     * Estimated duration below which the given fraction of samples fall, or
+     * 0 for an empty histogram.
+     */
+    public double percentile(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Fraction must be between 0 and 1");
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double rank = fraction * total;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            if (seen + counts[i] >= rank) {
+                if (i == UPPER_BOUNDS.length) {
+                    // Open-ended bucket: report its lower bound rather than invent an upper one
+                    return lowerBound(i);
+                }
+                double lower = lowerBound(i);
+                return lower + (UPPER_BOUNDS[i] - lower) * (rank - seen) / counts[i];
+            }
+            seen += counts[i];
+        }
+        return lowerBound(BUCKETS - 1);
+    }
+}
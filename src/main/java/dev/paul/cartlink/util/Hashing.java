@@ -0,0 +1,34 @@
+package dev.paul.cartlink.util;
+
+/**
+ * Small non-cryptographic 64-bit hashing helpers shared by the analytics
+ * sketches. Strings are hashed char by char so no byte[] copy is made.
+ */
+public final class Hashing {
+
+    private Hashing() {
+    }
+
+    public static long hash64(CharSequence value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix64(h);
+    }
+
+    public static long hash64(long value) {
+        return mix64(value + 0x9e3779b97f4a7c15L);
+    }
+
+    // MurmurHash3 fmix64 finalizer, spreads the FNV output over all 64 bits
+    public static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
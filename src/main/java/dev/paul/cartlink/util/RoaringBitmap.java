@@ -0,0 +1,496 @@
+package dev.paul.cartlink.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed set of unsigned 32-bit values in the roaring layout: values are
+ * split by their high 16 bits into containers, each holding the low 16 bits
+ * either as a sorted char[] (up to 4096 values, 2 bytes per value) or as a
+ * 65536-bit bitmap (8 KB). Unions and intersections work container by
+ * container, so their cost follows the compressed size rather than the
+ * number of values.
+ *
+ * <p>The serialised form is a version byte, the container count, then per
+ * container its key, cardinality - 1 and the values or bitmap words; the
+ * cardinality tells the two container kinds apart.
+ * Not thread-safe; callers synchronise on the instance.
+ */
+public final class RoaringBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final byte VERSION = 1;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    public RoaringBitmap() {
+        this(4);
+    }
+
+    private RoaringBitmap(int capacity) {
+        this.keys = new char[capacity];
+        this.containers = new Container[capacity];
+    }
+
+    /** An empty bitmap for null or empty input. */
+    public static RoaringBitmap fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return new RoaringBitmap();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.get() != VERSION) {
+            throw new IllegalArgumentException("Unknown bitmap format");
+        }
+        int count = buffer.getInt();
+        RoaringBitmap bitmap = new RoaringBitmap(Math.max(4, count));
+        for (int i = 0; i < count; i++) {
+            bitmap.keys[i] = buffer.getChar();
+            int cardinality = buffer.getChar() + 1;
+            if (cardinality <= ARRAY_MAX) {
+                char[] values = new char[cardinality];
+                for (int v = 0; v < cardinality; v++) {
+                    values[v] = buffer.getChar();
+                }
+                bitmap.containers[i] = new ArrayContainer(values, cardinality);
+            } else {
+                long[] words = new long[BITMAP_WORDS];
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    words[w] = buffer.getLong();
+                }
+                bitmap.containers[i] = new BitmapContainer(words, cardinality);
+            }
+        }
+        bitmap.size = count;
+        return bitmap;
+    }
+
+    public byte[] toBytes() {
+        int length = 5;
+        for (int i = 0; i < size; i++) {
+            length += 4 + containers[i].serializedSize();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(VERSION);
+        buffer.putInt(size);
+        for (int i = 0; i < size; i++) {
+            buffer.putChar(keys[i]);
+            buffer.putChar((char) (containers[i].cardinality() - 1));
+            containers[i].write(buffer);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Adds a value in [0, 2^32) and returns true if it was not present.
+     */
+    public boolean add(long value) {
+        if (value < 0 || value > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Value out of unsigned 32-bit range: " + value);
+        }
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            insert(-index - 1, key, new ArrayContainer(new char[] { low }, 1));
+            return true;
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        containers[index] = container.add(low);
+        return containers[index].cardinality() != before;
+    }
+
+    public boolean contains(long value) {
+        if (value < 0 || value > 0xFFFFFFFFL) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Adds every value of the other bitmap to this one. */
+    public void or(RoaringBitmap other) {
+        if (other.size == 0) {
+            return;
+        }
+        char[] mergedKeys = new char[size + other.size];
+        Container[] merged = new Container[size + other.size];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                mergedKeys[count] = keys[i];
+                merged[count++] = containers[i++];
+            } else if (i == size || other.keys[j] < keys[i]) {
+                // Copied so later adds to this bitmap do not change the other one
+                mergedKeys[count] = other.keys[j];
+                merged[count++] = other.containers[j++].copy();
+            } else {
+                mergedKeys[count] = keys[i];
+                merged[count++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        keys = mergedKeys;
+        containers = merged;
+        size = count;
+    }
+
+    /** A new bitmap with the values present in both. */
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap(Math.max(4, Math.min(size, other.size)));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (other.keys[j] < keys[i]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.keys[result.size] = keys[i];
+                    result.containers[result.size++] = container;
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /** Number of values present in both, without building the intersection. */
+    public long andCardinality(RoaringBitmap other) {
+        long cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (other.keys[j] < keys[i]) {
+                j++;
+            } else {
+                cardinality += containers[i++].andCardinality(other.containers[j++]);
+            }
+        }
+        return cardinality;
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    // Array containers hold at most ARRAY_MAX values, bitmap containers more
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        /** Adds in place where possible; returns the container now holding the values. */
+        abstract Container add(char value);
+
+        abstract Container or(Container other);
+
+        abstract Container and(Container other);
+
+        abstract int andCardinality(Container other);
+
+        abstract Container copy();
+
+        abstract int serializedSize();
+
+        abstract void write(ByteBuffer buffer);
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] merged = new char[cardinality + array.cardinality];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < cardinality && j < array.cardinality) {
+                char a = values[i];
+                char b = array.values[j];
+                if (a < b) {
+                    merged[count++] = a;
+                    i++;
+                } else if (b < a) {
+                    merged[count++] = b;
+                    j++;
+                } else {
+                    merged[count++] = a;
+                    i++;
+                    j++;
+                }
+            }
+            while (i < cardinality) {
+                merged[count++] = values[i++];
+            }
+            while (j < array.cardinality) {
+                merged[count++] = array.values[j++];
+            }
+            ArrayContainer result = new ArrayContainer(merged, count);
+            return count > ARRAY_MAX ? result.toBitmap() : result;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] common = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof BitmapContainer bitmap) {
+                for (int i = 0; i < cardinality; i++) {
+                    if (bitmap.contains(values[i])) {
+                        common[count++] = values[i];
+                    }
+                }
+            } else {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    char a = values[i];
+                    char b = array.values[j];
+                    if (a < b) {
+                        i++;
+                    } else if (b < a) {
+                        j++;
+                    } else {
+                        common[count++] = a;
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return new ArrayContainer(common, count);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            int count = 0;
+            if (other instanceof BitmapContainer bitmap) {
+                for (int i = 0; i < cardinality; i++) {
+                    if (bitmap.contains(values[i])) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < array.cardinality) {
+                char a = values[i];
+                char b = array.values[j];
+                if (a < b) {
+                    i++;
+                } else if (b < a) {
+                    j++;
+                } else {
+                    count++;
+                    i++;
+                    j++;
+                }
+            }
+            return count;
+        }
+
+        private BitmapContainer toBitmap() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new BitmapContainer(words, cardinality);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        @Override
+        int serializedSize() {
+            return cardinality * 2;
+        }
+
+        @Override
+        void write(ByteBuffer buffer) {
+            for (int i = 0; i < cardinality; i++) {
+                buffer.putChar(values[i]);
+            }
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] merged = words.clone();
+            if (other instanceof BitmapContainer bitmap) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    merged[w] |= bitmap.words[w];
+                }
+            } else {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    merged[array.values[i] >>> 6] |= 1L << array.values[i];
+                }
+            }
+            return new BitmapContainer(merged, bitCount(merged));
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            long[] common = new long[BITMAP_WORDS];
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                common[w] = words[w] & bitmap.words[w];
+            }
+            int count = bitCount(common);
+            if (count > ARRAY_MAX) {
+                return new BitmapContainer(common, count);
+            }
+            char[] values = new char[count];
+            int index = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = common[w];
+                while (word != 0) {
+                    values[index++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            int count = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                count += Long.bitCount(words[w] & bitmap.words[w]);
+            }
+            return count;
+        }
+
+        private static int bitCount(long[] words) {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        int serializedSize() {
+            return BITMAP_WORDS * 8;
+        }
+
+        @Override
+        void write(ByteBuffer buffer) {
+            for (long word : words) {
+                buffer.putLong(word);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package dev.paul.cartlink.util;
+
+/**
+ * Count, mean and sum of squared deviations (M2) of a stream of samples.
+ * Samples are added with Welford's update and partial results are combined
+ * with Chan et al.'s pairwise formula, so statistics kept on different nodes
+ * or in different time buckets merge exactly without revisiting samples.
+ * Not thread-safe; callers synchronise on the instance.
+ */
+public final class RunningStats {
+
+    private long count;
+    private double mean;
+    private double m2;
+
+    public RunningStats() {
+    }
+
+    public RunningStats(long count, double mean, double m2) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count must not be negative");
+        }
+        this.count = count;
+        this.mean = count == 0 ? 0 : mean;
+        this.m2 = count == 0 ? 0 : m2;
+    }
+
+    public void add(double sample) {
+        count++;
+        double delta = sample - mean;
+        mean += delta / count;
+        m2 += delta * (sample - mean);
+    }
+
+    public void merge(RunningStats other) {
+        merge(other.count, other.mean, other.m2);
+    }
+
+    public void merge(long otherCount, double otherMean, double otherM2) {
+        if (otherCount == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = otherCount;
+            mean = otherMean;
+            m2 = otherM2;
+            return;
+        }
+        long total = count + otherCount;
+        double delta = otherMean - mean;
+        mean += delta * otherCount / total;
+        m2 += otherM2 + delta * delta * ((double) count * otherCount / total);
+        count = total;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getM2() {
+        return m2;
+    }
+
+    /** Sample variance, or 0 with fewer than two samples. */
+    public double variance() {
+        return count < 2 ? 0 : m2 / (count - 1);
+    }
+
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+}
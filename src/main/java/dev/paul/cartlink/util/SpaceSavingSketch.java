@@ -0,0 +1,113 @@
+package dev.paul.cartlink.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving top-K counter (Metwally et al.). At most {@code capacity}
+ * keys are tracked; a new key arriving when the sketch is full replaces the
+ * key with the smallest count and inherits that count as its error. Counts
+ * therefore never underestimate, each overestimates by at most its error,
+ * and the counts always sum to the total offered.
+ * Not thread-safe; callers synchronise on the instance.
+ */
+public final class SpaceSavingSketch {
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private long total;
+
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public void offer(String key) {
+        offer(key, 1, 0);
+    }
+
+    /**
+     * Adds {@code count} occurrences of a key that may already carry up to
+     * {@code error} of overestimate, e.g. when merging another sketch.
+     */
+    public void offer(String key, long count, long error) {
+        total += count;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count += count;
+            counter.error += error;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new Counter(key, count, error));
+            return;
+        }
+        // K is small, so a linear scan beats maintaining a heap on every increment
+        Counter min = null;
+        for (Counter candidate : counters.values()) {
+            if (min == null || candidate.count < min.count) {
+                min = candidate;
+            }
+        }
+        counters.remove(min.key);
+        counters.put(key, new Counter(key, min.count + count, min.count + error));
+    }
+
+    public void merge(SpaceSavingSketch other) {
+        other.counters.values().forEach(c -> offer(c.key, c.count, c.error));
+    }
+
+    /** Tracked keys, largest count first. */
+    public List<Counter> entries() {
+        List<Counter> entries = new ArrayList<>(counters.values());
+        entries.sort(Comparator.comparingLong(Counter::getCount).reversed());
+        return entries;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public boolean isEmpty() {
+        return counters.isEmpty();
+    }
+
+    public static final class Counter {
+        private final String key;
+        private long count;
+        private long error;
+
+        private Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        /** Occurrences of the key that are certain, i.e. count minus error. */
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+    }
+}
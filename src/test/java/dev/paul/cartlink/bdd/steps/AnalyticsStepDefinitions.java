@@ -1,8 +1,18 @@
 package dev.paul.cartlink.bdd.steps;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.paul.cartlink.link.model.FunnelStep;
+import dev.paul.cartlink.link.model.Link;
 import dev.paul.cartlink.link.model.LinkAnalytics;
 import dev.paul.cartlink.link.repository.LinkAnalyticsRepository;
+import dev.paul.cartlink.link.repository.LinkRepository;
+import dev.paul.cartlink.link.service.ClickAggregator;
+import dev.paul.cartlink.link.service.EngagementIngestor;
+import dev.paul.cartlink.link.service.LinkAnalyticsService;
+import dev.paul.cartlink.link.service.SlugAllocator;
+import dev.paul.cartlink.merchant.model.Merchant;
+import dev.paul.cartlink.merchant.model.Wallet;
+import dev.paul.cartlink.merchant.repository.MerchantRepository;
 import dev.paul.cartlink.bdd.context.ScenarioContext; // Keep this one
 
 // import dev.paul.cartlink.bdd.ScenarioContext; // Remove this duplicate
@@ -21,10 +31,13 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -40,6 +53,16 @@ public class AnalyticsStepDefinitions {
     @Autowired private LinkAnalyticsRepository linkAnalyticsRepository;
     @Autowired private ScenarioContext scenarioContext;
     @Autowired private CommonStepDefinitions commonStepDefinitions; // Ensure common steps can be called if needed, or rely on Cucumber glue
+    @Autowired private LinkRepository linkRepository;
+    @Autowired private MerchantRepository merchantRepository;
+    @Autowired private PasswordEncoder passwordEncoder;
+    @Autowired private SlugAllocator slugAllocator;
+    @Autowired private EngagementIngestor engagementIngestor;
+    @Autowired private ClickAggregator clickAggregator;
+    @Autowired private LinkAnalyticsService linkAnalyticsService;
+
+    // Links own their analytics rows, so they are removed before the next scenario clears link_analytics
+    private final List<Long> createdLinkIds = new ArrayList<>();
 
 
     // private Map<String, String> sharedData = new HashMap<>(); // Will use scenarioContext instead
@@ -52,7 +75,10 @@ public class AnalyticsStepDefinitions {
     }
 
     @After
-    public void tearDown() {}
+    public void tearDown() {
+        linkRepository.deleteAllById(createdLinkIds);
+        createdLinkIds.clear();
+    }
 
 
     // Removed duplicate @Given("the API base URL is {string}")
@@ -73,6 +99,113 @@ public class AnalyticsStepDefinitions {
                     savedAnalytics.getAnalyticsId(), sharedKey, symbolicId);
     }
 
+    @Given("a link with analytics exists and its id is stored as {string}")
+    public void a_link_with_analytics_exists_and_its_id_is_stored_as(String sharedKey) {
+        String email = "analytics-links@example.com";
+        Merchant merchant = merchantRepository.findByEmail(email).orElseGet(() -> {
+            Merchant created = new Merchant();
+            created.setEmail(email);
+            created.setPassword(passwordEncoder.encode("password123"));
+            created.setFirstName("Analytics");
+            created.setLastName("Links");
+            created.setWallet(new Wallet());
+            return merchantRepository.save(created);
+        });
+        LinkAnalytics analytics = new LinkAnalytics();
+        analytics.setLastUpdated(LocalDateTime.now());
+        Link link = new Link();
+        link.setId(slugAllocator.nextId());
+        link.setSlug(slugAllocator.encode(link.getId()));
+        link.setMerchant(merchant);
+        link.setAnalytics(analytics);
+        linkRepository.save(link);
+        createdLinkIds.add(link.getId());
+        scenarioContext.set(sharedKey, link.getId().toString());
+    }
+
+    // Outside a transaction the service hands orders and funnel steps to the aggregator straight away
+    @When("link {string} records {int} order(s), {int} cart add(s), {int} checkout(s) and {int} payment(s)")
+    public void link_records_orders_and_funnel_steps(String sharedKey, int orders, int cartAdds, int checkouts,
+            int payments) {
+        Long linkId = Long.valueOf(scenarioContext.getString(sharedKey));
+        Link link = linkRepository.findById(linkId).orElseThrow();
+        for (int i = 0; i < orders; i++) {
+            linkAnalyticsService.updateTotalOrders(link);
+        }
+        for (int i = 0; i < cartAdds; i++) {
+            linkAnalyticsService.recordFunnelStep(linkId, FunnelStep.CART_ADD);
+        }
+        for (int i = 0; i < checkouts; i++) {
+            linkAnalyticsService.recordFunnelStep(linkId, FunnelStep.CHECKOUT);
+        }
+        for (int i = 0; i < payments; i++) {
+            linkAnalyticsService.recordFunnelStep(linkId, FunnelStep.PAID);
+        }
+    }
+
+    // Waits for the ingest queue to drain into the aggregator, then writes the aggregates
+    @When("the analytics aggregator has flushed")
+    public void the_analytics_aggregator_has_flushed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!ingestQueueDrained()) {
+            assertThat(System.currentTimeMillis()).as("engagement queue drained").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+        clickAggregator.flush();
+    }
+
+    private boolean ingestQueueDrained() {
+        Map<String, Object> stats = engagementIngestor.getStats();
+        return ((Number) stats.get("consumed")).longValue() >= ((Number) stats.get("accepted")).longValue();
+    }
+
+    // Beacons arrive as text/plain; {key} placeholders in the events are replaced with stored link ids
+    @When("a beacon batch is posted with the following events:")
+    public void a_beacon_batch_is_posted_with_the_following_events(String events) {
+        java.util.regex.Matcher matcher = java.util.regex.Pattern.compile("\\{(\\w+)\\}").matcher(events);
+        StringBuffer body = new StringBuffer();
+        while (matcher.find()) {
+            matcher.appendReplacement(body, scenarioContext.getString(matcher.group(1)));
+        }
+        matcher.appendTail(body);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_PLAIN);
+        ResponseEntity<String> response = restTemplate.postForEntity(
+                scenarioContext.getString("apiBaseUrl") + "/analytics/beacon",
+                new HttpEntity<>(body.toString(), headers), String.class);
+        scenarioContext.set("latestResponse", response);
+    }
+
+    @Then("the stored analytics of link {string} should show {long} page view(s)")
+    public void the_stored_analytics_of_link_should_show_page_views(String sharedKey, long pageViews) {
+        assertThat(storedAnalytics(sharedKey).getPageViews()).isEqualTo(pageViews);
+    }
+
+    @Then("the stored analytics of link {string} should show {long} time spent sample(s) averaging {long} second(s)")
+    public void the_stored_analytics_of_link_should_show_time_spent_samples(String sharedKey, long samples,
+            long averageSeconds) {
+        LinkAnalytics analytics = storedAnalytics(sharedKey);
+        assertThat(analytics.getTimeSpentSamples()).isEqualTo(samples);
+        assertThat(analytics.getAverageTimeSpent()).isEqualTo(averageSeconds);
+    }
+
+    @Then("the stored analytics of link {string} should show {int} order(s), {long} cart add(s), {long} checkout(s) and {long} paid order(s)")
+    public void the_stored_analytics_of_link_should_show_funnel(String sharedKey, int orders, long cartAdds,
+            long checkouts, long paidOrders) {
+        LinkAnalytics analytics = storedAnalytics(sharedKey);
+        assertThat(analytics.getTotalOrders()).isEqualTo(orders);
+        assertThat(analytics.getCartAdds()).isEqualTo(cartAdds);
+        assertThat(analytics.getCheckouts()).isEqualTo(checkouts);
+        assertThat(analytics.getPaidOrders()).isEqualTo(paidOrders);
+    }
+
+    private LinkAnalytics storedAnalytics(String sharedKey) {
+        Long linkId = Long.valueOf(scenarioContext.getString(sharedKey));
+        List<LinkAnalytics> analytics = linkAnalyticsRepository.findByLinkId(linkId);
+        assertThat(analytics).hasSize(1);
+        return analytics.get(0);
+    }
+
     private String resolvePlaceholders(String valueWithPlaceholders) {
         String resolvedValue = valueWithPlaceholders;
         // Example for resolving: if valueWithPlaceholders is "/analytics/{analyticsTestId}"
@@ -2,8 +2,17 @@ package dev.paul.cartlink.bdd.steps;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.paul.cartlink.link.model.Link;
+import dev.paul.cartlink.link.model.LinkAnalytics;
+import dev.paul.cartlink.link.repository.LinkRepository;
+import dev.paul.cartlink.link.service.SlugAllocator;
 import dev.paul.cartlink.merchant.model.Merchant;
+import dev.paul.cartlink.merchant.model.MerchantProduct;
+import dev.paul.cartlink.merchant.repository.MerchantProductRepository;
 import dev.paul.cartlink.merchant.repository.MerchantRepository;
+import dev.paul.cartlink.merchant.service.MerchantService;
+import dev.paul.cartlink.product.model.Product;
+import dev.paul.cartlink.product.repository.ProductRepository;
 import dev.paul.cartlink.bdd.context.ScenarioContext;
 
 import io.cucumber.java.After; // Correct hook import
@@ -12,6 +21,9 @@ import io.cucumber.java.en.Given; // Correct Gherkin keyword import
 import io.cucumber.java.en.Then; // Correct Gherkin keyword import
 import io.cucumber.java.en.When; // Correct Gherkin keyword import
 
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +35,8 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,12 +53,20 @@ public class MerchantDashboardStepDefinitions {
 
     @Autowired private MerchantRepository merchantRepository;
     @Autowired private PasswordEncoder passwordEncoder;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private MerchantProductRepository merchantProductRepository;
+    @Autowired private LinkRepository linkRepository;
+    @Autowired private SlugAllocator slugAllocator;
+    @Autowired private MerchantService merchantService;
+    @Autowired private EntityManagerFactory entityManagerFactory;
 
     @Autowired
     private ScenarioContext scenarioContext;
     // private String apiBaseUrl; // Removed
     private ResponseEntity<String> latestResponse;
     private Map<String, String> sharedData = new HashMap<>(); // For auth token
+    private List<Map<String, Object>> trafficData;
+    private long trafficStatements;
 
     @Before
     public void setUp() {
@@ -107,6 +129,71 @@ public class MerchantDashboardStepDefinitions {
         logger.info("Authenticated Merchant GET to {}: Status {}, Body {}", path, latestResponse.getStatusCodeValue(), latestResponse.getBody());
     }
 
+    // Each link carries two of the merchant's products, so a link counted per product would show up doubled
+    @Given("the merchant {string} has {int} linked products with {int} {string} clicks and {int} direct clicks each")
+    public void the_merchant_has_linked_products_with_source_clicks(String email, int count, int sourceClicks,
+            String source, int directClicks) {
+        Merchant merchant = merchantRepository.findByEmail(email).orElseThrow();
+        List<MerchantProduct> merchantProducts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Product product = new Product();
+            product.setName("TrafficProduct" + i);
+            product.setBrand("Brand");
+            product.setCategory("Category");
+            product = productRepository.save(product);
+            MerchantProduct mp = new MerchantProduct();
+            mp.setMerchant(merchant);
+            mp.setProduct(product);
+            mp.setPrice(10.0);
+            mp.setStock(10);
+            merchantProducts.add(merchantProductRepository.save(mp));
+        }
+        for (int i = 0; i < count; i++) {
+            LinkAnalytics analytics = new LinkAnalytics();
+            analytics.setLastUpdated(LocalDateTime.now());
+            analytics.getUniqueSourceClicks().put(source, sourceClicks);
+            analytics.getUniqueSourceClicks().put("", directClicks);
+            Link link = new Link();
+            link.setId(slugAllocator.nextId());
+            link.setSlug(slugAllocator.encode(link.getId()));
+            link.setMerchant(merchant);
+            link.setAnalytics(analytics);
+            link.getMerchantProducts().add(merchantProducts.get(i));
+            link.getMerchantProducts().add(merchantProducts.get((i + 1) % count));
+            linkRepository.save(link);
+        }
+        scenarioContext.set("trafficMerchantId", merchant.getMerchantId().toString());
+    }
+
+    @When("the traffic chart data is computed for that merchant")
+    public void the_traffic_chart_data_is_computed_for_that_merchant() {
+        Long merchantId = Long.valueOf(scenarioContext.getString("trafficMerchantId"));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        // Statistics are shared by the whole test context, so they are switched back afterwards
+        boolean wasEnabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            trafficData = merchantService.getTrafficDataForChart(merchantId);
+            trafficStatements = statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(wasEnabled);
+        }
+    }
+
+    @Then("the traffic chart data should take {int} SQL statement(s)")
+    public void the_traffic_chart_data_should_take_sql_statements(int expected) {
+        assertThat(trafficStatements).isEqualTo(expected);
+    }
+
+    @Then("the traffic chart should show {long} clicks for {string}")
+    public void the_traffic_chart_should_show_clicks_for(long clicks, String source) {
+        assertThat(trafficData).anySatisfy(data -> {
+            assertThat(data.get("name")).isEqualTo(source);
+            assertThat(((Number) data.get("value")).longValue()).isEqualTo(clicks);
+        });
+    }
+
     // --- Then Steps (Common) ---
     @Then("the response body should contain a {string}") // Check for key existence
     public void the_response_body_should_contain_a_key(String jsonPath) {
@@ -0,0 +1,48 @@
+package dev.paul.cartlink.link.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BeaconClickLimiterTest {
+
+    private final BeaconClickLimiter limiter = new BeaconClickLimiter(1800, 3, 1000);
+
+    @Test
+    void skipsClicksTheRedirectAlreadyCounted() {
+        limiter.recordRedirect("visitor-1", 10L);
+
+        assertFalse(limiter.tryCount("visitor-1", 10L));
+        assertTrue(limiter.tryCount("visitor-1", 11L));
+        assertTrue(limiter.tryCount("visitor-2", 10L));
+    }
+
+    @Test
+    void countsARepeatedBeaconClickOnce() {
+        assertTrue(limiter.tryCount("visitor-1", 10L));
+        assertFalse(limiter.tryCount("visitor-1", 10L));
+        assertEquals(1L, limiter.getStats().get("duplicates"));
+    }
+
+    @Test
+    void limitsBeaconClicksPerVisitor() {
+        for (long linkId = 1; linkId <= 3; linkId++) {
+            assertTrue(limiter.tryCount("visitor-1", linkId));
+        }
+
+        assertFalse(limiter.tryCount("visitor-1", 4L));
+        assertTrue(limiter.tryCount("visitor-2", 4L));
+        assertEquals(1L, limiter.getStats().get("rateLimited"));
+    }
+
+    @Test
+    void windowExpiryAllowsTheClickAgain() throws InterruptedException {
+        BeaconClickLimiter shortWindow = new BeaconClickLimiter(0, 1, 1000);
+
+        assertTrue(shortWindow.tryCount("visitor-1", 10L));
+        Thread.sleep(2);
+        assertTrue(shortWindow.tryCount("visitor-1", 10L));
+    }
+}
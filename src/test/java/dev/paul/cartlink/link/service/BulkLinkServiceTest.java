@@ -0,0 +1,226 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.dto.BulkLinkResult;
+import dev.paul.cartlink.merchant.model.Merchant;
+import dev.paul.cartlink.merchant.model.MerchantProduct;
+import dev.paul.cartlink.merchant.repository.MerchantProductRepository;
+import dev.paul.cartlink.merchant.repository.MerchantRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkLinkServiceTest {
+
+    private static final long MERCHANT_ID = 1L;
+    private static final long OTHER_MERCHANT_ID = 2L;
+
+    private final PlatformTransactionManager transactionManager = new PlatformTransactionManager() {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    };
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+    private final SlugAllocator slugAllocator = new SlugAllocator(jdbcTemplate, transactionManager, 100, true,
+            "cartlink");
+    private final SlugBloomFilter slugBloomFilter = new SlugBloomFilter(jdbcTemplate, slugAllocator, 10_000, 0.001,
+            3_600_000, 3_600_000, 0);
+    private final Map<Long, MerchantProduct> products = new HashMap<>();
+    private final List<Set<Long>> productLookups = new ArrayList<>();
+    private final BulkLinkService service = new BulkLinkService(merchantRepository(), merchantProductRepository(),
+            slugAllocator, slugBloomFilter, jdbcTemplate, 3);
+
+    BulkLinkServiceTest() {
+        product(10L, MERCHANT_ID);
+        product(11L, MERCHANT_ID);
+        product(20L, OTHER_MERCHANT_ID);
+        slugBloomFilter.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        slugBloomFilter.shutdown();
+    }
+
+    @Test
+    void createsValidEntriesAndReportsTheRest() {
+        List<BulkLinkResult> results = service.createLinks(MERCHANT_ID,
+                Arrays.asList(Set.of(10L, 11L), Set.of(10L, 99L), Set.of(20L)));
+
+        assertEquals(3, results.size());
+        BulkLinkResult created = results.get(0);
+        assertTrue(created.isCreated());
+        assertEquals(0, created.getIndex());
+        assertEquals(slugAllocator.encode(created.getLinkId()), created.getSlug());
+        assertEquals("Invalid merchant product ID: 99", results.get(1).getError());
+        assertEquals(1, results.get(1).getIndex());
+        assertEquals("Product 20 does not belong to merchant 1", results.get(2).getError());
+
+        // One lookup for every product of the request
+        assertEquals(List.of(Set.of(10L, 11L, 20L, 99L)), productLookups);
+        assertEquals(1, jdbcTemplate.analyticsInserts);
+        Object[] link = jdbcTemplate.batches.get(RecordingJdbcTemplate.LINKS).get(0);
+        assertEquals(Arrays.asList(created.getLinkId(), created.getSlug(), MERCHANT_ID, 1000L),
+                Arrays.asList(link).subList(0, 4));
+        assertEquals(2, jdbcTemplate.batches.get(RecordingJdbcTemplate.LINK_PRODUCTS).size());
+        assertTrue(slugBloomFilter.mightExist(created.getSlug()), "new slugs are added to the filter");
+    }
+
+    @Test
+    void writesEachTableInOneBatch() {
+        List<BulkLinkResult> results = service.createLinks(MERCHANT_ID,
+                Arrays.asList(Set.of(10L), null, Set.of(11L)));
+
+        assertTrue(results.stream().allMatch(BulkLinkResult::isCreated));
+        assertEquals(1, jdbcTemplate.batchCalls.get(RecordingJdbcTemplate.LINKS));
+        assertEquals(1, jdbcTemplate.batchCalls.get(RecordingJdbcTemplate.LINK_PRODUCTS));
+        List<Object[]> links = jdbcTemplate.batches.get(RecordingJdbcTemplate.LINKS);
+        assertEquals(3, links.size());
+        // Analytics ids are matched to links in order; the entry without products still gets a link
+        assertEquals(List.of(1000L, 1001L, 1002L), links.stream().map(row -> row[3]).toList());
+        assertEquals(2, jdbcTemplate.batches.get(RecordingJdbcTemplate.LINK_PRODUCTS).size());
+        // Ids come from one allocator block
+        assertEquals(1, jdbcTemplate.blockFetches);
+    }
+
+    @Test
+    void writesNothingWhenNoEntryIsValid() {
+        List<BulkLinkResult> results = service.createLinks(MERCHANT_ID, List.of(Set.of(20L)));
+
+        assertFalse(results.get(0).isCreated());
+        assertNull(results.get(0).getLinkId());
+        assertEquals(0, jdbcTemplate.analyticsInserts);
+        assertTrue(jdbcTemplate.batches.isEmpty());
+    }
+
+    @Test
+    void rejectsOversizedRequestsAndUnknownMerchants() {
+        assertThrows(IllegalArgumentException.class, () -> service.createLinks(MERCHANT_ID,
+                List.of(Set.of(10L), Set.of(10L), Set.of(10L), Set.of(10L))));
+        assertThrows(IllegalArgumentException.class, () -> service.createLinks(3L, List.of(Set.of(10L))));
+    }
+
+    private void product(long id, long merchantId) {
+        Merchant merchant = new Merchant();
+        merchant.setMerchantId(merchantId);
+        MerchantProduct product = new MerchantProduct();
+        product.setId(id);
+        product.setMerchant(merchant);
+        products.put(id, product);
+    }
+
+    private MerchantRepository merchantRepository() {
+        return (MerchantRepository) Proxy.newProxyInstance(MerchantRepository.class.getClassLoader(),
+                new Class<?>[] { MerchantRepository.class }, (proxy, method, args) -> switch (method.getName()) {
+                    case "existsById" -> args[0].equals(MERCHANT_ID) || args[0].equals(OTHER_MERCHANT_ID);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private MerchantProductRepository merchantProductRepository() {
+        return (MerchantProductRepository) Proxy.newProxyInstance(
+                MerchantProductRepository.class.getClassLoader(), new Class<?>[] { MerchantProductRepository.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAllById" -> {
+                        Set<Long> ids = Set.copyOf((Set<Long>) args[0]);
+                        productLookups.add(ids);
+                        yield ids.stream().filter(products::containsKey).map(products::get).toList();
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    // Hands out analytics ids from 1000 and allocator blocks from 500, and records the batches
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+        private static final String LINKS = "links";
+        private static final String LINK_PRODUCTS = "link_merchant_products";
+
+        private final Map<String, List<Object[]>> batches = new HashMap<>();
+        private final Map<String, Integer> batchCalls = new HashMap<>();
+        private int analyticsInserts;
+        private int blockFetches;
+        private long nextAnalyticsId = 1000;
+
+        @Override
+        public int[] batchUpdate(PreparedStatementCreator psc, BatchPreparedStatementSetter pss,
+                KeyHolder generatedKeyHolder) {
+            int size = pss.getBatchSize();
+            analyticsInserts += size;
+            for (int i = 0; i < size; i++) {
+                generatedKeyHolder.getKeyList().add(Map.of("analytics_id", nextAnalyticsId++));
+            }
+            int[] counts = new int[size];
+            Arrays.fill(counts, 1);
+            return counts;
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            String table = sql.startsWith("INSERT INTO links ") ? LINKS : LINK_PRODUCTS;
+            batches.computeIfAbsent(table, t -> new ArrayList<>()).addAll(batchArgs);
+            batchCalls.merge(table, 1, Integer::sum);
+            int[] counts = new int[batchArgs.size()];
+            Arrays.fill(counts, 1);
+            return counts;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+            if (sql.startsWith("SELECT nextval")) {
+                blockFetches++;
+                return (T) Long.valueOf(500L * blockFetches);
+            }
+            return (T) Long.valueOf(0);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            return (List<T>) List.of("100");
+        }
+
+        @Override
+        public void execute(String sql) {
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch) {
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+        }
+    }
+}
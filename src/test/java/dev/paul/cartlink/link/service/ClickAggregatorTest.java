@@ -0,0 +1,112 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.model.FunnelStep;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickAggregatorTest {
+
+    private static final long NEVER = 3_600_000;
+
+    private final FlakyJdbcTemplate jdbcTemplate = new FlakyJdbcTemplate();
+    private final PlatformTransactionManager transactionManager = new PlatformTransactionManager() {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    };
+    private final LinkRollupService rollups = new LinkRollupService(null, jdbcTemplate, transactionManager, 2, 3,
+            5000, NEVER);
+    private final ClickAggregator aggregator = new ClickAggregator(jdbcTemplate,
+            new VisitorSketchStore(jdbcTemplate, 10), rollups,
+            new TrafficSourceStore(jdbcTemplate, new TrafficSourceNormalizer(), 5),
+            new TimeSpentHistogramStore(jdbcTemplate), new CountryClickStore(jdbcTemplate), event -> {
+            }, transactionManager, NEVER, 1_000_000);
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.failing = false;
+        aggregator.shutdown();
+        rollups.shutdown();
+    }
+
+    @Test
+    void failedFlushRestoresTheNumberOfEventsNotLinks() {
+        aggregator.recordClick(1L, true, null, null);
+        aggregator.recordClick(1L, false, null, "DE");
+        aggregator.recordClick(2L, true, null, null);
+        aggregator.recordPageView(1L);
+        aggregator.recordTimeSpent(1L, 30, false);
+        aggregator.recordOrder(2L);
+        aggregator.recordFunnelStep(2L, FunnelStep.CART_ADD);
+        assertEquals(7L, aggregator.getStats().get("pendingEvents"));
+
+        jdbcTemplate.failing = true;
+        assertThrows(DataAccessResourceFailureException.class, aggregator::flush);
+
+        assertEquals(7L, aggregator.getStats().get("pendingEvents"));
+        assertEquals(1L, aggregator.getStats().get("flushFailures"));
+    }
+
+    @Test
+    void restoredDeltasAreWrittenOnTheNextFlush() {
+        aggregator.recordClick(1L, true, null, null);
+        aggregator.recordClick(1L, true, null, null);
+        jdbcTemplate.failing = true;
+        assertThrows(DataAccessResourceFailureException.class, aggregator::flush);
+        aggregator.recordClick(1L, false, null, null);
+
+        jdbcTemplate.failing = false;
+        jdbcTemplate.batches.clear();
+        aggregator.flush();
+
+        assertEquals(0L, aggregator.getStats().get("pendingEvents"));
+        Object[] counters = jdbcTemplate.batches.stream()
+                .filter(batch -> batch.sql.startsWith("UPDATE link_analytics SET total_clicks"))
+                .findFirst().orElseThrow().args.get(0);
+        // clicks, mobile, desktop
+        assertEquals(Arrays.asList(3L, 2L, 1L), Arrays.asList(counters).subList(0, 3));
+        assertTrue((Long) aggregator.getStats().get("rowsWritten") > 0);
+    }
+
+    private static final class FlakyJdbcTemplate extends JdbcTemplate {
+        private volatile boolean failing;
+        private final List<Batch> batches = new ArrayList<>();
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (failing) {
+                throw new DataAccessResourceFailureException("database down");
+            }
+            batches.add(new Batch(sql, batchArgs));
+            int[] counts = new int[batchArgs.size()];
+            Arrays.fill(counts, 1);
+            return counts;
+        }
+    }
+
+    private record Batch(String sql, List<Object[]> args) {
+    }
+}
@@ -0,0 +1,199 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.model.DeviceClass;
+import dev.paul.cartlink.util.Hashing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickJournalTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private final Path directory;
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+    private final PlatformTransactionManager transactionManager = new PlatformTransactionManager() {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    };
+    private final LinkRollupService rollups = new LinkRollupService(null, jdbcTemplate, transactionManager, 2, 3,
+            5000, 3_600_000);
+    private final List<ClickJournal> journals = new ArrayList<>();
+
+    ClickJournalTest() throws IOException {
+        directory = Files.createTempDirectory("click-journal-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        journals.forEach(ClickJournal::close);
+        rollups.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    void replaysCommittedRecordsAfterACrash() throws IOException {
+        ClickJournal crashed = open(4, 0);
+        int google = crashed.referrerId("https://www.google.com/search");
+        append(crashed, 0, 1L, 11L, google, DeviceClass.MOBILE);
+        append(crashed, 1, 1L, 12L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP);
+        append(crashed, 2, 1L, 11L, google, DeviceClass.TABLET);
+        append(crashed, 3, 2L, 13L, ClickJournal.NO_REFERRER, DeviceClass.ROBOT);
+        append(crashed, 4, 2L, 14L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP);
+        // Slot 5 of the second segment was claimed but the crash came before its timestamp
+        tornRecord(2, 1, 2L);
+
+        // The restarted journal neither reuses the old segment nor forgets the referrer ids
+        ClickJournal restarted = open(4, 0);
+        assertEquals(3L, restarted.currentSequence());
+        assertEquals(google, restarted.referrerId("https://www.google.com/search"));
+        append(restarted, 5, 2L, 15L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP);
+
+        Map<Long, ClickJournalReplayer.LinkReplay> links = replayer(restarted).replay(0, Long.MAX_VALUE);
+
+        ClickJournalReplayer.LinkReplay first = links.get(1L);
+        assertEquals(3L, first.getClicks());
+        assertEquals(2L, first.getMobile());
+        assertEquals(1L, first.getDesktop());
+        assertEquals(2L, first.getUniqueVisitors());
+        assertEquals(Map.of("https://www.google.com/search", 2L), first.getSources());
+        // Robots, torn slots and the segment still being written are left out
+        assertEquals(1L, links.get(2L).getClicks());
+        assertEquals(1L, links.get(2L).getDesktop());
+        assertEquals(2, links.size());
+    }
+
+    @Test
+    void rebuildSkipsLinksOlderThanTheRetainedSegments() throws IOException {
+        ClickJournal journal = open(2, 2);
+        append(journal, 0, 1L, 11L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP);
+        append(journal, 1, 1L, 12L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP);
+        append(journal, 2, 1L, 13L, ClickJournal.NO_REFERRER, DeviceClass.MOBILE);
+        append(journal, 3, 2L, 14L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP);
+        append(journal, 4, 2L, 15L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP);
+        assertFalse(Files.exists(segment(1)), "the first segment was rotated out");
+        jdbcTemplate.createdSince = List.of(2L);
+
+        int rebuilt = replayer(open(2, 2)).rebuild();
+
+        assertEquals(1, rebuilt);
+        assertEquals(new Timestamp(START + 2), jdbcTemplate.createdSinceArgs[0]);
+        List<Object[]> counters = jdbcTemplate.analyticsUpdates;
+        assertEquals(1, counters.size());
+        // clicks, mobile, desktop of link 2 only; link 1 lost its first two clicks with segment 1
+        assertEquals(Arrays.asList(2L, 0L, 2L), Arrays.asList(counters.get(0)).subList(0, 3));
+        assertEquals(2L, counters.get(0)[6]);
+    }
+
+    @Test
+    void rebuildCoversEveryLinkWhileTheFirstSegmentIsRetained() throws IOException {
+        ClickJournal journal = open(2, 0);
+        append(journal, 0, 1L, 11L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP);
+        append(journal, 1, 2L, 12L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP);
+        append(journal, 2, 2L, 13L, ClickJournal.NO_REFERRER, DeviceClass.MOBILE);
+
+        assertEquals(2, replayer(open(2, 0)).rebuild());
+        assertNull(jdbcTemplate.createdSinceArgs, "no creation filter needed");
+        assertEquals(2, jdbcTemplate.analyticsUpdates.size());
+    }
+
+    @Test
+    void requiresADirectoryWhenEnabled() {
+        assertThrows(IllegalStateException.class, () -> new ClickJournal(true, "", 4, 0));
+        ClickJournal disabled = new ClickJournal(false, "", 4, 0);
+        disabled.append(START, 1L, 1L, ClickJournal.NO_REFERRER, DeviceClass.DESKTOP.getCode(), (byte) 0, (byte) 0);
+        assertEquals(0L, disabled.getStats().get("appended"));
+        assertTrue(replayer(disabled).replay(0, Long.MAX_VALUE).isEmpty());
+    }
+
+    private ClickJournal open(int segmentRecords, int maxSegments) {
+        ClickJournal journal = new ClickJournal(true, directory.toString(), segmentRecords, maxSegments);
+        journals.add(journal);
+        return journal;
+    }
+
+    private ClickJournalReplayer replayer(ClickJournal journal) {
+        return new ClickJournalReplayer(journal, rollups, new TrafficSourceStore(jdbcTemplate,
+                new TrafficSourceNormalizer(), 5), jdbcTemplate, transactionManager, false, 1);
+    }
+
+    private static void append(ClickJournal journal, int millis, long linkId, long visitorHash, int referrerId,
+            DeviceClass deviceClass) {
+        journal.append(START + millis, linkId, Hashing.hash64(visitorHash), referrerId, deviceClass.getCode(),
+                (byte) 0, (byte) 0);
+    }
+
+    // Writes everything but the timestamp, as a writer interrupted half way would
+    private void tornRecord(long sequence, int slot, long linkId) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment(sequence).toFile(), "rw")) {
+            file.seek((long) slot * ClickJournal.RECORD_SIZE + ClickJournal.OFFSET_LINK_ID);
+            file.writeLong(linkId);
+            file.seek((long) slot * ClickJournal.RECORD_SIZE + ClickJournal.OFFSET_DEVICE_CLASS);
+            file.writeByte(DeviceClass.DESKTOP.getCode());
+        }
+    }
+
+    private Path segment(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", ClickJournal.SEGMENT_PREFIX, sequence,
+                ClickJournal.SEGMENT_SUFFIX));
+    }
+
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+        private final List<Object[]> analyticsUpdates = new ArrayList<>();
+        private List<Long> createdSince = List.of();
+        private Object[] createdSinceArgs;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            createdSinceArgs = args;
+            return (List<T>) createdSince;
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (sql.startsWith("UPDATE link_analytics SET total_clicks")) {
+                analyticsUpdates.addAll(batchArgs);
+            }
+            int[] counts = new int[batchArgs.size()];
+            Arrays.fill(counts, 1);
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package dev.paul.cartlink.link.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class GeoIpResolverTest {
+
+    @Test
+    void parsesDottedIpv4() {
+        assertEquals(0L, GeoIpResolver.parseIpv4("0.0.0.0"));
+        assertEquals(0x01020304L, GeoIpResolver.parseIpv4("1.2.3.4"));
+        assertEquals(0xC0A80001L, GeoIpResolver.parseIpv4("192.168.0.1"));
+        assertEquals(0xFFFFFFFFL, GeoIpResolver.parseIpv4("255.255.255.255"));
+    }
+
+    @Test
+    void rejectsAddressesThatAreNotDottedIpv4() {
+        String[] invalid = { null, "", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1.2.3.256", "1..2.3", ".1.2.3",
+                "1.2.3.", "::1", "2001:db8::1", " 1.2.3.4", "1.2.3.4 ", "a.b.c.d", "1.2.3.4/24" };
+        for (String address : invalid) {
+            assertEquals(-1L, GeoIpResolver.parseIpv4(address), String.valueOf(address));
+        }
+    }
+
+    @Test
+    void loadsDottedIntegerAndQuotedRows() throws IOException {
+        GeoIpResolver.Table table = load("start,end,country,region\n"
+                + "# comment\n"
+                + "1.0.0.0,1.0.0.255,AU,Queensland\n"
+                + "\"16777472\",\"16778239\",\"CN\"\n"
+                + "\"2.0.0.0\",\"2.0.0.255\",\"FR\"\r\n"
+                + "3.0.0.0,3.0.0.255,US\r\n"
+                + "4294967040,4294967295,ZZ");
+
+        assertEquals(5, table.size());
+        assertEquals("AU", table.lookup(ip("1.0.0.0")));
+        assertEquals("AU", table.lookup(ip("1.0.0.255")));
+        assertEquals("CN", table.lookup(ip("1.0.1.0")));
+        assertEquals("CN", table.lookup(ip("1.0.3.255")));
+        assertNull(table.lookup(ip("1.0.4.0")));
+        assertEquals("FR", table.lookup(ip("2.0.0.128")));
+        assertEquals("US", table.lookup(ip("3.0.0.1")));
+        assertEquals("ZZ", table.lookup(ip("255.255.255.255")));
+        assertNull(table.lookup(ip("0.255.255.255")));
+        assertNull(table.lookup(ip("3.0.1.0")));
+    }
+
+    @Test
+    void skipsMalformedRows() throws IOException {
+        GeoIpResolver.Table table = load("9.0.0.255,9.0.0.0,XX\n"
+                + "1.2.3.256,1.2.4.0,XX\n"
+                + "1.2.3,1.2.4.0,XX\n"
+                + "7.0.0.0,7.0.0.255,\n"
+                + "6.0.0.0\n"
+                + "4294967296,4294967296,XX\n"
+                + "5.0.0.0,5.0.0.x,XX\n"
+                + "8.0.0.0,8.0.0.255,OK\n");
+
+        assertEquals(1, table.size());
+        assertEquals("OK", table.lookup(ip("8.0.0.7")));
+        assertNull(table.lookup(ip("9.0.0.100")));
+        assertNull(table.lookup(ip("7.0.0.1")));
+    }
+
+    @Test
+    void sortsRowsAndDropsRangesOverlappingAnEarlierStart() throws IOException {
+        GeoIpResolver.Table table = load("10.0.0.0,10.0.0.255,AA\n"
+                + "5.0.0.0,5.0.0.255,BB\n"
+                + "10.0.0.128,10.0.1.255,CC\n"
+                + "10.0.0.0,10.0.0.10,EE\n"
+                + "10.0.2.0,10.0.2.255,DD\n");
+
+        assertEquals(3, table.size());
+        assertEquals("BB", table.lookup(ip("5.0.0.1")));
+        assertEquals("AA", table.lookup(ip("10.0.0.5")));
+        assertEquals("AA", table.lookup(ip("10.0.0.200")));
+        assertNull(table.lookup(ip("10.0.1.0")));
+        assertEquals("DD", table.lookup(ip("10.0.2.255")));
+        assertNull(table.lookup(ip("10.0.3.0")));
+    }
+
+    @Test
+    void sharesOneStringPerCountry() throws IOException {
+        GeoIpResolver.Table table = load("1.0.0.0,1.0.0.255,US\n3.0.0.0,3.0.0.255,US\n");
+
+        assertSame(table.lookup(ip("1.0.0.1")), table.lookup(ip("3.0.0.1")));
+    }
+
+    @Test
+    void loadsAnEmptyFile() throws IOException {
+        GeoIpResolver.Table table = load("");
+
+        assertEquals(0, table.size());
+        assertNull(table.lookup(ip("1.2.3.4")));
+    }
+
+    @Test
+    void resolvesAgainstTheLoadedDatabase() throws IOException {
+        Path file = write("1.0.0.0,1.0.0.255,AU\n");
+        GeoIpResolver resolver = new GeoIpResolver(file.toString(), 3_600_000);
+        try {
+            resolver.reloadIfChanged();
+
+            assertEquals("AU", resolver.resolve("1.0.0.9"));
+            assertNull(resolver.resolve("2.0.0.9"));
+            assertNull(resolver.resolve("2001:db8::1"));
+            assertEquals(1, resolver.getStats().get("ranges"));
+        } finally {
+            resolver.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    private static long ip(String address) {
+        return GeoIpResolver.parseIpv4(address);
+    }
+
+    private static GeoIpResolver.Table load(String content) throws IOException {
+        Path file = write(content);
+        try {
+            return GeoIpResolver.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Path write(String content) throws IOException {
+        Path file = Files.createTempFile("geoip", ".csv");
+        Files.writeString(file, content, StandardCharsets.US_ASCII);
+        return file;
+    }
+}
@@ -0,0 +1,378 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.dto.TimeSpentTotals;
+import dev.paul.cartlink.link.model.RollupGranularity;
+import dev.paul.cartlink.util.RunningStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LinkRollupServiceTest {
+
+    private static final long LINK_ID = 7L;
+
+    private final RollupTable table = new RollupTable();
+    private final PlatformTransactionManager transactionManager = new PlatformTransactionManager() {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    };
+    // Batches of two rows, so compaction has to loop
+    private final LinkRollupService rollups = new LinkRollupService(null, table, transactionManager, 2, 3, 2,
+            3_600_000);
+
+    @AfterEach
+    void tearDown() {
+        rollups.shutdown();
+    }
+
+    @Test
+    void mergeTimeSpentIntoAnEmptyRowStoresTheBatch() {
+        Map<String, Object> row = new HashMap<>();
+
+        Map<String, Double> merged = RollupTable.evaluateSet(LinkRollupService.MERGE_TIME_SPENT, row,
+                LinkRollupService.timeSpentMergeArgs(stats(4, 8, 30), 2));
+
+        assertEquals(3.0, merged.get("time_spent_samples"), 0.0);
+        assertEquals(14.0, merged.get("time_spent_mean"), 1e-9);
+        assertEquals(stats(4, 8, 30).getM2(), merged.get("time_spent_m2"), 1e-9);
+        assertEquals(2.0, merged.get("bounces"), 0.0);
+    }
+
+    @Test
+    void mergeTimeSpentMatchesTheStatsOfAllSamples() {
+        RunningStats stored = stats(3, 40, 41);
+        Map<String, Object> row = new HashMap<>();
+        row.put("time_spent_samples", stored.getCount());
+        row.put("time_spent_mean", stored.getMean());
+        row.put("time_spent_m2", stored.getM2());
+        row.put("bounces", 1L);
+
+        Map<String, Double> merged = RollupTable.evaluateSet(LinkRollupService.MERGE_TIME_SPENT, row,
+                LinkRollupService.timeSpentMergeArgs(stats(120, 2, 90, 65), 1));
+
+        RunningStats expected = stats(3, 40, 41, 120, 2, 90, 65);
+        assertEquals(7.0, merged.get("time_spent_samples"), 0.0);
+        assertEquals(expected.getMean(), merged.get("time_spent_mean"), 1e-9);
+        assertEquals(expected.getM2(), merged.get("time_spent_m2"), 1e-9);
+        assertEquals(2.0, merged.get("bounces"), 0.0);
+    }
+
+    @Test
+    void timeSpentBatchesForOneBucketShareItsRow() {
+        LocalDateTime minute = RollupGranularity.MINUTE.bucketStart(LocalDateTime.now());
+
+        rollups.addTimeSpentToBuckets(List.<Object[]>of(
+                LinkRollupService.timeSpentRow(stats(3, 40, 41), 1, LINK_ID, RollupGranularity.MINUTE, minute)));
+        rollups.addTimeSpentToBuckets(List.<Object[]>of(
+                LinkRollupService.timeSpentRow(stats(120, 2, 90, 65), 1, LINK_ID, RollupGranularity.MINUTE,
+                        minute)));
+
+        TimeSpentTotals totals = rollups.getTimeSpent(LINK_ID, null, null);
+        assertEquals(1, table.rows.size());
+        assertEquals(7L, totals.getSamples());
+        assertEquals(stats(3, 40, 41, 120, 2, 90, 65).standardDeviation(), totals.getStandardDeviation(), 1e-9);
+        assertEquals(2L, totals.getBounces());
+    }
+
+    @Test
+    void compactionFoldsAgedBucketsAndKeepsTheirTotals() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime agedHour = RollupGranularity.HOUR.bucketStart(now.minusHours(5));
+        LocalDateTime agedDay = RollupGranularity.DAY.bucketStart(now.minusDays(10));
+        LocalDateTime recent = RollupGranularity.MINUTE.bucketStart(now);
+        rollups.addToBuckets(List.of(
+                LinkRollupService.bucketRow(3, 1, 2, 1, LINK_ID, RollupGranularity.MINUTE, agedHour.plusMinutes(1)),
+                LinkRollupService.bucketRow(4, 4, 0, 0, LINK_ID, RollupGranularity.MINUTE, agedHour.plusMinutes(2)),
+                LinkRollupService.bucketRow(5, 0, 5, 2, LINK_ID, RollupGranularity.MINUTE, agedHour.plusMinutes(59)),
+                LinkRollupService.bucketRow(6, 3, 3, 0, LINK_ID, RollupGranularity.HOUR, agedDay.plusHours(1)),
+                LinkRollupService.bucketRow(1, 1, 0, 0, LINK_ID, RollupGranularity.HOUR, agedDay.plusHours(20)),
+                LinkRollupService.bucketRow(2, 0, 2, 0, LINK_ID, RollupGranularity.MINUTE, recent)));
+        rollups.addTimeSpentToBuckets(List.of(
+                LinkRollupService.timeSpentRow(stats(10, 20), 0, LINK_ID, RollupGranularity.MINUTE,
+                        agedHour.plusMinutes(1)),
+                LinkRollupService.timeSpentRow(stats(30), 1, LINK_ID, RollupGranularity.MINUTE,
+                        agedHour.plusMinutes(59))));
+
+        // Three aged minutes fold into the hour first, then both aged hours into their day
+        assertEquals(5, rollups.compact());
+
+        assertEquals(3, table.rows.size());
+        assertEquals(2L, table.bucket("MINUTE", recent).get("clicks"), "the recent minute is kept");
+        Map<String, Object> hour = table.bucket("HOUR", agedHour);
+        assertEquals(12L, hour.get("clicks"));
+        assertEquals(5L, hour.get("mobile_clicks"));
+        assertEquals(7L, hour.get("desktop_clicks"));
+        assertEquals(3L, hour.get("orders"));
+        assertEquals(3L, hour.get("time_spent_samples"));
+        assertEquals(20.0, (Double) hour.get("time_spent_mean"), 1e-9);
+        assertEquals(stats(10, 20, 30).getM2(), (Double) hour.get("time_spent_m2"), 1e-9);
+        assertEquals(1L, hour.get("bounces"));
+        Map<String, Object> day = table.bucket("DAY", agedDay);
+        assertEquals(7L, day.get("clicks"));
+        assertEquals(4L, day.get("mobile_clicks"));
+        assertEquals(3L, day.get("desktop_clicks"));
+        assertNull(day.get("time_spent_samples"));
+
+        assertEquals(0, rollups.compact(), "nothing left to fold");
+    }
+
+    @Test
+    void picksTheGranularityCompactionWouldKeep() {
+        LocalDateTime now = LocalDateTime.now();
+
+        assertEquals(RollupGranularity.MINUTE, rollups.granularityFor(now.minusMinutes(5)));
+        assertEquals(RollupGranularity.HOUR, rollups.granularityFor(now.minusHours(5)));
+        assertEquals(RollupGranularity.DAY, rollups.granularityFor(now.minusDays(5)));
+    }
+
+    private static RunningStats stats(double... samples) {
+        RunningStats stats = new RunningStats();
+        for (double sample : samples) {
+            stats.add(sample);
+        }
+        return stats;
+    }
+
+    // In-memory link_click_rollups that understands the statements LinkRollupService issues
+    private static final class RollupTable extends JdbcTemplate {
+        private static final Pattern TOKEN = Pattern.compile(
+                "\\s*(COALESCE\\(\\s*(\\w+)\\s*,\\s*0\\s*\\)|\\?|\\d+(?:\\.\\d+)?|[-+*/()])");
+
+        private final List<Map<String, Object>> rows = new ArrayList<>();
+        private long nextId = 1;
+
+        private Map<String, Object> bucket(String granularity, LocalDateTime bucketStart) {
+            return rows.stream().filter(row -> matches(row, LINK_ID, Timestamp.valueOf(bucketStart), granularity))
+                    .findFirst().orElseThrow();
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            List<Map<String, Object>> selected;
+            if (sql.startsWith("SELECT id, link_id")) {
+                selected = rows.stream()
+                        .filter(row -> row.get("granularity").equals(args[0])
+                                && ((Timestamp) row.get("bucket_start")).before((Timestamp) args[1]))
+                        .limit((Integer) args[2]).toList();
+            } else if (sql.startsWith("SELECT time_spent_samples")) {
+                selected = rows.stream()
+                        .filter(row -> row.get("link_id").equals(args[0])
+                                && !((Timestamp) row.get("bucket_start")).before((Timestamp) args[1])
+                                && ((Timestamp) row.get("bucket_start")).before((Timestamp) args[2])
+                                && row.get("time_spent_samples") != null)
+                        .toList();
+            } else {
+                throw new UnsupportedOperationException(sql);
+            }
+            for (Map<String, Object> row : List.copyOf(selected)) {
+                try {
+                    rch.processRow(resultSet(row));
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            int[] counts = new int[batchArgs.size()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = execute(sql, batchArgs.get(i));
+            }
+            return counts;
+        }
+
+        private int execute(String sql, Object[] args) {
+            if (sql.startsWith("DELETE FROM link_click_rollups WHERE id = ?")) {
+                return rows.removeIf(row -> row.get("id").equals(args[0])) ? 1 : 0;
+            }
+            if (sql.startsWith("INSERT INTO link_click_rollups (clicks, mobile_clicks, desktop_clicks, orders, "
+                    + "link_id")) {
+                Map<String, Object> row = insert(args[4], args[5], args[6]);
+                row.put("clicks", args[0]);
+                row.put("mobile_clicks", args[1]);
+                row.put("desktop_clicks", args[2]);
+                row.put("orders", args[3]);
+                return 1;
+            }
+            if (sql.startsWith("INSERT INTO link_click_rollups (clicks, mobile_clicks, desktop_clicks, orders, "
+                    + "time_spent_samples")) {
+                Map<String, Object> row = insert(args[4], args[5], args[6]);
+                row.put("time_spent_samples", args[0]);
+                row.put("time_spent_mean", args[1]);
+                row.put("time_spent_m2", args[2]);
+                row.put("bounces", args[3]);
+                return 1;
+            }
+            if (sql.startsWith("UPDATE link_click_rollups SET clicks = clicks + ?")) {
+                return update(args, 4, row -> {
+                    String[] columns = { "clicks", "mobile_clicks", "desktop_clicks", "orders" };
+                    for (int i = 0; i < columns.length; i++) {
+                        row.put(columns[i], (Long) row.get(columns[i]) + ((Number) args[i]).longValue());
+                    }
+                });
+            }
+            if (sql.startsWith("UPDATE link_click_rollups SET time_spent_mean")) {
+                String set = sql.substring("UPDATE link_click_rollups SET ".length(), sql.indexOf(" WHERE "));
+                return update(args, args.length - 3, row -> {
+                    Map<String, Double> merged = evaluateSet(set, row, Arrays.copyOf(args, args.length - 3));
+                    row.put("time_spent_samples", Math.round(merged.get("time_spent_samples")));
+                    row.put("time_spent_mean", merged.get("time_spent_mean"));
+                    row.put("time_spent_m2", merged.get("time_spent_m2"));
+                    row.put("bounces", Math.round(merged.get("bounces")));
+                });
+            }
+            throw new UnsupportedOperationException(sql);
+        }
+
+        private Map<String, Object> insert(Object linkId, Object bucketStart, Object granularity) {
+            if (rows.stream().anyMatch(row -> matches(row, linkId, bucketStart, granularity))) {
+                throw new IllegalStateException("uk_link_click_rollups_bucket");
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", nextId++);
+            row.put("link_id", linkId);
+            row.put("bucket_start", bucketStart);
+            row.put("granularity", granularity);
+            row.put("clicks", 0L);
+            row.put("mobile_clicks", 0L);
+            row.put("desktop_clicks", 0L);
+            row.put("orders", 0L);
+            rows.add(row);
+            return row;
+        }
+
+        private int update(Object[] args, int keyIndex, Consumer<Map<String, Object>> change) {
+            List<Map<String, Object>> matched = rows.stream()
+                    .filter(row -> matches(row, args[keyIndex], args[keyIndex + 1], args[keyIndex + 2])).toList();
+            matched.forEach(change);
+            return matched.size();
+        }
+
+        private static boolean matches(Map<String, Object> row, Object linkId, Object bucketStart,
+                Object granularity) {
+            return row.get("link_id").equals(linkId) && row.get("bucket_start").equals(bucketStart)
+                    && row.get("granularity").equals(granularity);
+        }
+
+        /**
+         * Evaluates a SET clause of "column = expression" assignments made of
+         * placeholders, numbers, COALESCE(column, 0) and + - * /. As in SQL,
+         * every expression reads the values from before the update.
+         */
+        static Map<String, Double> evaluateSet(String set, Map<String, Object> row, Object[] args) {
+            List<String> tokens = new ArrayList<>();
+            List<String> columns = new ArrayList<>();
+            Map<String, Double> values = new HashMap<>();
+            int[] next = { 0 };
+            for (String assignment : set.split(",\\s*(?=\\w+ = )")) {
+                String[] sides = assignment.split(" = ", 2);
+                tokens.clear();
+                columns.clear();
+                Matcher matcher = TOKEN.matcher(sides[1]);
+                int end = 0;
+                while (matcher.lookingAt()) {
+                    tokens.add(matcher.group(1));
+                    columns.add(matcher.group(2));
+                    end = matcher.end();
+                    matcher.region(end, sides[1].length());
+                }
+                if (end != sides[1].length()) {
+                    throw new IllegalArgumentException("Cannot evaluate " + sides[1].substring(end));
+                }
+                int[] position = { 0 };
+                values.put(sides[0].trim(), sum(tokens, columns, position, row, args, next));
+            }
+            assertEquals(args.length, next[0], "every placeholder used");
+            return values;
+        }
+
+        private static double sum(List<String> tokens, List<String> columns, int[] position,
+                Map<String, Object> row, Object[] args, int[] next) {
+            double value = product(tokens, columns, position, row, args, next);
+            while (position[0] < tokens.size() && (tokens.get(position[0]).equals("+")
+                    || tokens.get(position[0]).equals("-"))) {
+                boolean plus = tokens.get(position[0]++).equals("+");
+                double operand = product(tokens, columns, position, row, args, next);
+                value = plus ? value + operand : value - operand;
+            }
+            return value;
+        }
+
+        private static double product(List<String> tokens, List<String> columns, int[] position,
+                Map<String, Object> row, Object[] args, int[] next) {
+            double value = factor(tokens, columns, position, row, args, next);
+            while (position[0] < tokens.size() && (tokens.get(position[0]).equals("*")
+                    || tokens.get(position[0]).equals("/"))) {
+                boolean times = tokens.get(position[0]++).equals("*");
+                double operand = factor(tokens, columns, position, row, args, next);
+                value = times ? value * operand : value / operand;
+            }
+            return value;
+        }
+
+        private static double factor(List<String> tokens, List<String> columns, int[] position,
+                Map<String, Object> row, Object[] args, int[] next) {
+            int index = position[0]++;
+            String token = tokens.get(index);
+            if (token.equals("(")) {
+                double value = sum(tokens, columns, position, row, args, next);
+                position[0]++;
+                return value;
+            }
+            if (token.equals("?")) {
+                return ((Number) args[next[0]++]).doubleValue();
+            }
+            if (columns.get(index) != null) {
+                Object stored = row.get(columns.get(index));
+                return stored != null ? ((Number) stored).doubleValue() : 0;
+            }
+            return Double.parseDouble(token);
+        }
+
+        private static ResultSet resultSet(Map<String, Object> row) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+                        Object value = row.get((String) args[0]);
+                        return switch (method.getName()) {
+                            case "getLong" -> value != null ? ((Number) value).longValue() : 0L;
+                            case "getDouble" -> value != null ? ((Number) value).doubleValue() : 0.0;
+                            case "getTimestamp" -> value;
+                            default -> throw new UnsupportedOperationException(method.getName());
+                        };
+                    });
+        }
+    }
+}
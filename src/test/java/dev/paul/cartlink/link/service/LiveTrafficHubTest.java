@@ -0,0 +1,142 @@
+package dev.paul.cartlink.link.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.paul.cartlink.link.dto.LinkTrafficDelta;
+import dev.paul.cartlink.link.dto.LinkTrafficEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveTrafficHubTest {
+
+    private static final long INTERVAL = 3_600_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, Long> linkMerchants = new HashMap<>(Map.of(10L, 1L, 11L, 1L, 20L, 2L));
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+    // Heartbeats go out every second interval
+    private final LiveTrafficHub hub = new LiveTrafficHub(new LinkMerchantResolver(null, 100) {
+        @Override
+        public Map<Long, Long> resolve(Collection<Long> linkIds) {
+            Map<Long, Long> resolved = new HashMap<>();
+            linkIds.stream().filter(linkMerchants::containsKey).forEach(id -> resolved.put(id, linkMerchants.get(id)));
+            return resolved;
+        }
+    }, objectMapper, INTERVAL, 2 * INTERVAL, INTERVAL, 3) {
+        @Override
+        SseEmitter createEmitter() {
+            RecordingEmitter emitter = new RecordingEmitter();
+            emitters.add(emitter);
+            return emitter;
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    void coalescesDeltasIntoOneEventPerMerchantAndInterval() throws IOException {
+        hub.subscribe(1L);
+        hub.subscribe(1L);
+
+        hub.onLinkTraffic(new LinkTrafficEvent(List.of(new LinkTrafficDelta(10L, 2, 1, 1, 0),
+                new LinkTrafficDelta(11L, 1, 0, 1, 1))));
+        hub.onLinkTraffic(new LinkTrafficEvent(List.of(new LinkTrafficDelta(10L, 3, 3, 0, 1))));
+        hub.send();
+
+        for (RecordingEmitter emitter : emitters) {
+            assertEquals(1, emitter.events.size());
+        }
+        // Serialised once and written to every stream of the merchant
+        assertEquals(emitters.get(0).events.get(0), emitters.get(1).events.get(0));
+        JsonNode traffic = objectMapper.readTree(emitters.get(0).json(0));
+        assertEquals(6, traffic.get("clicks").asLong());
+        assertEquals(4, traffic.get("mobileClicks").asLong());
+        assertEquals(2, traffic.get("desktopClicks").asLong());
+        assertEquals(2, traffic.get("orders").asLong());
+        Map<Long, Long> linkClicks = new HashMap<>();
+        traffic.get("links").forEach(link -> linkClicks.put(link.get("linkId").asLong(), link.get("clicks").asLong()));
+        assertEquals(Map.of(10L, 5L, 11L, 1L), linkClicks);
+        assertEquals(2L, hub.getStats().get("eventsSent"));
+    }
+
+    @Test
+    void dropsDeltasOfMerchantsWithoutStreams() throws IOException {
+        hub.subscribe(1L);
+
+        hub.onLinkTraffic(new LinkTrafficEvent(List.of(new LinkTrafficDelta(20L, 1, 1, 0, 0),
+                new LinkTrafficDelta(99L, 1, 0, 1, 0))));
+        hub.send();
+
+        assertEquals(2L, hub.getStats().get("deltasDropped"));
+        assertTrue(emitters.get(0).events.isEmpty());
+    }
+
+    @Test
+    void sendsHeartbeatsOnlyWhenIdle() throws IOException {
+        hub.subscribe(1L);
+
+        hub.send();
+        assertTrue(emitters.get(0).events.isEmpty());
+        hub.send();
+        assertEquals(1, emitters.get(0).events.size());
+        assertTrue(emitters.get(0).text(0).startsWith(":heartbeat"));
+    }
+
+    @Test
+    void removesFailedStreamsAndLimitsSubscribers() throws IOException {
+        hub.subscribe(1L);
+        hub.subscribe(2L);
+        hub.subscribe(2L);
+        assertThrows(IllegalStateException.class, () -> hub.subscribe(3L));
+
+        emitters.get(0).failing = true;
+        hub.onLinkTraffic(new LinkTrafficEvent(List.of(new LinkTrafficDelta(10L, 1, 1, 0, 0))));
+        hub.send();
+
+        assertEquals(2, hub.getStats().get("subscribers"));
+        assertEquals(1, hub.getStats().get("merchants"));
+        hub.subscribe(3L);
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<Set<ResponseBodyEmitter.DataWithMediaType>> events = new ArrayList<>();
+        private boolean failing;
+
+        @Override
+        public synchronized void send(Set<ResponseBodyEmitter.DataWithMediaType> items) throws IOException {
+            if (failing) {
+                throw new IOException("client went away");
+            }
+            events.add(items);
+        }
+
+        private String json(int event) {
+            return events.get(event).stream().filter(item -> MediaType.APPLICATION_JSON.equals(item.getMediaType()))
+                    .map(item -> (String) item.getData()).findFirst().orElseThrow();
+        }
+
+        private String text(int event) {
+            StringBuilder text = new StringBuilder();
+            events.get(event).forEach(item -> text.append(item.getData()));
+            return text.toString();
+        }
+    }
+}
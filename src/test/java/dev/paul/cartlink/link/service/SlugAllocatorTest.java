@@ -0,0 +1,106 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.util.Base62;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlugAllocatorTest {
+
+    private static final long PERMUTED_LIMIT = 1L << 40;
+
+    // encode and decode never touch the database
+    private final SlugAllocator allocator = allocator(true, "cartlink");
+
+    @Test
+    void permutationIsABijectionOnSmallIds() {
+        Set<String> slugs = new HashSet<>();
+        for (long id = 1; id <= 100_000; id++) {
+            String slug = allocator.encode(id);
+            assertTrue(slugs.add(slug), "duplicate slug " + slug);
+            assertTrue(Base62.decode(slug) < PERMUTED_LIMIT, "permuted ids stay below 2^40");
+            assertEquals(id, allocator.decode(slug));
+        }
+    }
+
+    @Test
+    void roundTripsAcrossThePermutedRangeAndAboveIt() {
+        Random random = new Random(11);
+        for (int i = 0; i < 10_000; i++) {
+            long small = Math.floorMod(random.nextLong(), PERMUTED_LIMIT);
+            long large = PERMUTED_LIMIT + (random.nextLong() & (Long.MAX_VALUE >>> 1));
+            assertEquals(small, allocator.decode(allocator.encode(small)));
+            assertEquals(large, allocator.decode(allocator.encode(large)));
+        }
+        // Ids past the permuted range are encoded as they are
+        assertEquals(Base62.encode(PERMUTED_LIMIT), allocator.encode(PERMUTED_LIMIT));
+    }
+
+    @Test
+    void consecutiveIdsDoNotGetConsecutiveSlugs() {
+        long first = Base62.decode(allocator.encode(1000));
+        long second = Base62.decode(allocator.encode(1001));
+
+        assertTrue(Math.abs(second - first) > 1);
+    }
+
+    @Test
+    void slugsDependOnTheKey() {
+        SlugAllocator other = allocator(true, "another-key");
+
+        assertNotEquals(allocator.encode(42), other.encode(42));
+        assertEquals(42L, other.decode(other.encode(42)));
+    }
+
+    @Test
+    void plainBase62WhenObfuscationIsOff() {
+        SlugAllocator plain = allocator(false, "cartlink");
+
+        assertEquals(Base62.encode(12345), plain.encode(12345));
+        assertEquals(12345L, plain.decode(Base62.encode(12345)));
+    }
+
+    @Test
+    void rejectsNonCanonicalSpellings() {
+        String slug = allocator.encode(77);
+
+        assertNull(allocator.decode("0" + slug));
+        assertNull(allocator.decode(slug + "!"));
+    }
+
+    @Test
+    void legacySlugsNeverDecodeToADifferentSpelling() {
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            // Links created before the allocator used the first 8 characters of a random UUID
+            String legacy = new UUID(random.nextLong(), random.nextLong()).toString().substring(0, 8);
+            Long id = allocator.decode(legacy);
+            // A hex slug may also be valid base62; then it must map back to itself so the
+            // by-id lookup can only match the link that really has this slug
+            if (id != null) {
+                assertEquals(legacy, allocator.encode(id));
+            }
+        }
+        assertNull(allocator.decode(UUID.randomUUID().toString()));
+    }
+
+    @Test
+    void obfuscationRequiresAKey() {
+        assertThrows(IllegalStateException.class, () -> allocator(true, ""));
+        assertThrows(IllegalStateException.class, () -> allocator(true, null));
+        assertEquals("Z", allocator(false, "").encode(61));
+    }
+
+    private static SlugAllocator allocator(boolean obfuscate, String key) {
+        return new SlugAllocator(null, null, 100, obfuscate, key);
+    }
+}
@@ -0,0 +1,122 @@
+package dev.paul.cartlink.link.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlugBloomFilterTest {
+
+    private static final long WINDOW = 1000;
+
+    private final SlugAllocator allocator = new SlugAllocator(null, null, 100, true, "cartlink");
+    private final LinksTable links = new LinksTable();
+    private final SlugBloomFilter filter = new SlugBloomFilter(links, allocator, 10_000, 0.001, 5000, 3_600_000,
+            WINDOW);
+
+    @AfterEach
+    void tearDown() {
+        filter.shutdown();
+    }
+
+    @Test
+    void letsEverythingThroughUntilBuilt() {
+        assertTrue(filter.mightExist(allocator.encode(12_345)));
+        assertTrue(filter.mightExist("not-a-slug"));
+    }
+
+    @Test
+    void rejectsUnknownSlugsFarAboveTheLoadedIds() {
+        for (long id = 1; id <= 50; id++) {
+            links.add(id);
+        }
+        filter.rebuild();
+
+        assertTrue(filter.mightExist(allocator.encode(10)));
+        assertFalse(filter.mightExist(allocator.encode(50 + WINDOW + 1)));
+        assertFalse(filter.mightExist("not-a-slug"));
+        assertEquals(2L, filter.getStats().get("rejections"));
+    }
+
+    @Test
+    void letsLinksFromOtherNodesThroughUntilTheNextRefresh() {
+        for (long id = 1; id <= 50; id++) {
+            links.add(id);
+        }
+        filter.rebuild();
+        // Created on another node after the rebuild
+        links.add(120);
+
+        assertTrue(filter.mightExist(allocator.encode(120)));
+        assertEquals(1L, filter.getStats().get("unrefreshedPasses"));
+
+        filter.refresh();
+        links.add(1100);
+
+        assertEquals(120L, filter.getStats().get("loadedUpToId"));
+        assertTrue(filter.mightExist(allocator.encode(1100)), "within the window of the refreshed id");
+        assertFalse(filter.mightExist(allocator.encode(120 + WINDOW + 1)));
+    }
+
+    @Test
+    void localAddsDoNotMoveTheWindow() {
+        links.add(1);
+        filter.rebuild();
+
+        filter.add(allocator.encode(5000));
+
+        assertTrue(filter.mightExist(allocator.encode(5000)));
+        assertEquals(1L, filter.getStats().get("loadedUpToId"));
+        assertFalse(filter.mightExist(allocator.encode(5001)));
+    }
+
+    // Serves (id, slug) rows for the links table; created_at bounds are ignored
+    private final class LinksTable extends JdbcTemplate {
+        private final List<Long> ids = new ArrayList<>();
+
+        private void add(long id) {
+            ids.add(id);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+            return (T) Long.valueOf(ids.size());
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch) {
+            query(sql, rch, new Object[0]);
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            for (long id : List.copyOf(ids)) {
+                try {
+                    rch.processRow(row(id, allocator.encode(id)));
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        private static ResultSet row(long id, String slug) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, (proxy, method, args) -> switch (method.getName()) {
+                        case "getLong" -> id;
+                        case "getString" -> slug;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.util.SpaceSavingSketch;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrafficSourceStoreTest {
+
+    private static final long LINK_ID = 7L;
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+    private final TrafficSourceStore store = new TrafficSourceStore(jdbcTemplate, new TrafficSourceNormalizer(), 2);
+
+    @Test
+    void sourcesBeyondTopKGoToOther() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("google", 50L);
+        counts.put("facebook", 30L);
+        counts.put("tiktok", 5L);
+        counts.put("reddit", 3L);
+
+        store.replace(Map.of(LINK_ID, counts));
+
+        Map<String, Long> rows = jdbcTemplate.insertedRows();
+        assertEquals(50L, rows.get("google"));
+        assertEquals(30L, rows.get("facebook"));
+        assertEquals(8L, rows.get(TrafficSourceStore.OTHER));
+        assertEquals(3, rows.size(), "top K plus other");
+        assertEquals(88L, sum(rows), "source rows add up to the clicks");
+    }
+
+    @Test
+    void replaceMergesLegacyKeysBeforeRanking() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("google", 10L);
+        counts.put("https://www.facebook.com/a", 8L);
+        counts.put("https://m.facebook.com/b", 7L);
+
+        store.replace(Map.of(LINK_ID, counts));
+
+        Map<String, Long> rows = jdbcTemplate.insertedRows();
+        assertEquals(15L, rows.get("facebook"));
+        assertEquals(10L, rows.get("google"));
+        assertEquals(2, rows.size());
+    }
+
+    @Test
+    void mergeWithStoredRowsKeepsTheTotalAndCarriesOther() {
+        jdbcTemplate.stored.put("google", 40L);
+        jdbcTemplate.stored.put("https://www.facebook.com/some/post", 20L);
+        jdbcTemplate.stored.put(TrafficSourceStore.OTHER, 6L);
+        SpaceSavingSketch delta = store.newSketch();
+        for (int i = 0; i < 10; i++) {
+            delta.offer("google");
+        }
+        delta.offer("reddit");
+        delta.offer("reddit");
+
+        store.write(Map.of(LINK_ID, delta));
+
+        Map<String, Long> rows = jdbcTemplate.insertedRows();
+        assertEquals(50L, rows.get("google"));
+        assertFalse(rows.containsKey("https://www.facebook.com/some/post"), "legacy keys are made canonical");
+        assertTrue(rows.get(TrafficSourceStore.OTHER) >= 6L);
+        assertEquals(78L, sum(rows));
+    }
+
+    private static long sum(Map<String, Long> rows) {
+        return rows.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    // Serves the stored source rows and records the rows written back
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+        private final Map<String, Long> stored = new LinkedHashMap<>();
+        private final List<Object[]> inserts = new ArrayList<>();
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            for (Map.Entry<String, Long> row : stored.entrySet()) {
+                try {
+                    rch.processRow(resultSet(row.getKey(), row.getValue()));
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (sql.startsWith("INSERT")) {
+                inserts.addAll(batchArgs);
+            }
+            return new int[batchArgs.size()];
+        }
+
+        private Map<String, Long> insertedRows() {
+            Map<String, Long> rows = new HashMap<>();
+            for (Object[] insert : inserts) {
+                assertEquals(LINK_ID, insert[2]);
+                rows.merge((String) insert[0], (Long) insert[1], Long::sum);
+            }
+            return rows;
+        }
+
+        private static ResultSet resultSet(String source, long clicks) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, (proxy, method, methodArgs) -> switch (method.getName()) {
+                        case "getString" -> source;
+                        case "getLong" -> clicks;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
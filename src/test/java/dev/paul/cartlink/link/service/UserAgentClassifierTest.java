@@ -0,0 +1,96 @@
+package dev.paul.cartlink.link.service;
+
+import dev.paul.cartlink.link.dto.UserAgentClassification;
+import dev.paul.cartlink.link.model.BrowserFamily;
+import dev.paul.cartlink.link.model.DeviceClass;
+import dev.paul.cartlink.link.model.OperatingSystem;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserAgentClassifierTest {
+
+    private static final String IPHONE_SAFARI = "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) "
+            + "AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1";
+    private static final String ANDROID_CHROME = "Mozilla/5.0 (Linux; Android 14; Pixel 8) "
+            + "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Mobile Safari/537.36";
+    private static final String WINDOWS_CHROME = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) "
+            + "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36";
+    private static final String IPAD_SAFARI = "Mozilla/5.0 (iPad; CPU OS 17_4 like Mac OS X) "
+            + "AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1";
+    private static final String GOOGLEBOT = "Mozilla/5.0 (compatible; Googlebot/2.1; "
+            + "+http://www.google.com/bot.html)";
+
+    // Building the analyzer takes seconds, so the tests share one
+    private static UserAgentClassifier classifier;
+
+    @BeforeAll
+    static void createClassifier() {
+        classifier = new UserAgentClassifier(100, 0);
+    }
+
+    @Test
+    void classifiesCrawlersAsRobots() {
+        UserAgentClassification classification = classifier.classify(GOOGLEBOT);
+
+        assertEquals(DeviceClass.ROBOT, classification.getDeviceClass());
+        assertTrue(classification.isRobot());
+        assertFalse(classification.isMobile());
+    }
+
+    @Test
+    void classifiesPhonesAsMobile() {
+        UserAgentClassification iphone = classifier.classify(IPHONE_SAFARI);
+        UserAgentClassification android = classifier.classify(ANDROID_CHROME);
+
+        assertEquals(DeviceClass.MOBILE, iphone.getDeviceClass());
+        assertEquals(OperatingSystem.IOS, iphone.getOperatingSystem());
+        assertEquals(BrowserFamily.SAFARI, iphone.getBrowser());
+        assertTrue(iphone.isMobile());
+        assertEquals(DeviceClass.MOBILE, android.getDeviceClass());
+        assertEquals(OperatingSystem.ANDROID, android.getOperatingSystem());
+        assertEquals(BrowserFamily.CHROME, android.getBrowser());
+        assertFalse(android.isRobot());
+    }
+
+    @Test
+    void countsTabletsAsMobile() {
+        UserAgentClassification ipad = classifier.classify(IPAD_SAFARI);
+
+        assertEquals(DeviceClass.TABLET, ipad.getDeviceClass());
+        assertTrue(ipad.isMobile());
+    }
+
+    @Test
+    void classifiesDesktopBrowsers() {
+        UserAgentClassification classification = classifier.classify(WINDOWS_CHROME);
+
+        assertEquals(DeviceClass.DESKTOP, classification.getDeviceClass());
+        assertEquals(OperatingSystem.WINDOWS, classification.getOperatingSystem());
+        assertEquals(BrowserFamily.CHROME, classification.getBrowser());
+        assertFalse(classification.isMobile());
+        assertFalse(classification.isRobot());
+    }
+
+    @Test
+    void missingHeaderIsUnknown() {
+        assertSame(UserAgentClassification.UNKNOWN, classifier.classify(null));
+        assertSame(UserAgentClassification.UNKNOWN, classifier.classify("  "));
+    }
+
+    @Test
+    void repeatedHeadersAreServedFromTheCache() {
+        UserAgentClassifier cached = new UserAgentClassifier(1, 0);
+
+        UserAgentClassification first = cached.classify(WINDOWS_CHROME);
+        UserAgentClassification second = cached.classify(WINDOWS_CHROME);
+
+        assertSame(first, second);
+        assertEquals(1L, cached.getStats().get("hits"));
+        assertEquals(1L, cached.getStats().get("misses"));
+    }
+}
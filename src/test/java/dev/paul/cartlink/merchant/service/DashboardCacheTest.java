@@ -0,0 +1,69 @@
+package dev.paul.cartlink.merchant.service;
+
+import dev.paul.cartlink.link.dto.LinkTrafficDelta;
+import dev.paul.cartlink.link.dto.LinkTrafficEvent;
+import dev.paul.cartlink.link.service.LinkMerchantResolver;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DashboardCacheTest {
+
+    private static final long MERCHANT_ID = 3L;
+    private static final long LINK_ID = 30L;
+
+    private final LinkMerchantResolver resolver = new LinkMerchantResolver(null, 100) {
+        @Override
+        public Map<Long, Long> resolve(Collection<Long> linkIds) {
+            Map<Long, Long> owners = new HashMap<>();
+            linkIds.forEach(linkId -> owners.put(linkId, MERCHANT_ID));
+            return owners;
+        }
+    };
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void clickTrafficDropsClickEntriesAtMostOncePerTtl() {
+        DashboardCache cache = new DashboardCache(resolver, 60, 100);
+        load(cache, DashboardCache.STATS);
+        load(cache, DashboardCache.SALES);
+
+        cache.onLinkTraffic(traffic());
+        load(cache, DashboardCache.STATS);
+        load(cache, DashboardCache.SALES);
+        assertEquals(3, loads.get(), "stats reloaded after the first flush, sales kept");
+
+        cache.onLinkTraffic(traffic());
+        cache.onLinkTraffic(traffic());
+        load(cache, DashboardCache.STATS);
+        assertEquals(3, loads.get(), "later flushes within the TTL keep the entry");
+        assertEquals(1L, cache.getStats().get("invalidations"));
+        assertEquals(2L, cache.getStats().get("throttledInvalidations"));
+    }
+
+    @Test
+    void clickTrafficDropsEntriesAgainOnceTheTtlHasPassed() {
+        DashboardCache cache = new DashboardCache(resolver, 0, 100);
+        load(cache, DashboardCache.STATS);
+        cache.onLinkTraffic(traffic());
+        load(cache, DashboardCache.STATS);
+        cache.onLinkTraffic(traffic());
+
+        assertEquals(2L, cache.getStats().get("invalidations"));
+        assertEquals(0L, cache.getStats().get("throttledInvalidations"));
+    }
+
+    private void load(DashboardCache cache, String key) {
+        cache.get(MERCHANT_ID, key, loads::incrementAndGet);
+    }
+
+    private static LinkTrafficEvent traffic() {
+        return new LinkTrafficEvent(List.of(new LinkTrafficDelta(LINK_ID, 1, 1, 0, 0)));
+    }
+}
@@ -0,0 +1,331 @@
+package dev.paul.cartlink.merchant.service;
+
+import dev.paul.cartlink.customer.model.Customer;
+import dev.paul.cartlink.merchant.dto.CustomerRetention;
+import dev.paul.cartlink.merchant.model.Merchant;
+import dev.paul.cartlink.merchant.model.MerchantProduct;
+import dev.paul.cartlink.order.dto.OrderEvent;
+import dev.paul.cartlink.order.model.Order;
+import dev.paul.cartlink.order.model.OrderStatus;
+import dev.paul.cartlink.util.RoaringBitmap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MerchantDailySalesServiceTest {
+
+    private static final long MERCHANT_ID = 5L;
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 1);
+
+    private final DailySalesTable table = new DailySalesTable();
+    private int transactions;
+    private final PlatformTransactionManager transactionManager = new PlatformTransactionManager() {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            transactions++;
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    };
+    private final MerchantDailySalesService service = new MerchantDailySalesService(table, null,
+            transactionManager, false);
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void addsOrdersToTheirMerchantAndDay() {
+        service.onOrderEvent(OrderEvent.created(order(1, MERCHANT_ID, DAY.atTime(9, 0), 2, 5.0, OrderStatus.PENDING)));
+        service.onOrderEvent(OrderEvent.created(order(2, MERCHANT_ID, DAY.atTime(23, 59), 1, 5.0, OrderStatus.PAID)));
+        service.onOrderEvent(OrderEvent.created(order(3, MERCHANT_ID, DAY.plusDays(1).atTime(0, 0), 1, 8.0,
+                OrderStatus.PENDING)));
+        service.onOrderEvent(OrderEvent.created(order(4, 6L, DAY.atTime(12, 0), 4, 1.0, OrderStatus.PENDING)));
+
+        Row day = table.row(MERCHANT_ID, DAY);
+        assertEquals(2, day.orders);
+        assertEquals(3, day.units);
+        assertEquals(15.0, day.revenue, 0.0);
+        assertEquals(0, day.cancelledOrders);
+        assertEquals(8.0, table.row(MERCHANT_ID, DAY.plusDays(1)).revenue, 0.0);
+        assertEquals(4.0, table.row(6L, DAY).revenue, 0.0);
+        assertEquals(3, table.rows.size());
+    }
+
+    @Test
+    void movesOrdersInAndOutOfTheCancelledTotals() {
+        Order order = order(1, MERCHANT_ID, DAY.atTime(9, 0), 2, 5.0, OrderStatus.PENDING);
+        service.onOrderEvent(OrderEvent.created(order));
+
+        order.setStatus(OrderStatus.CANCELLED);
+        service.onOrderEvent(OrderEvent.statusChanged(order, OrderStatus.PENDING));
+        assertEquals(1, table.row(MERCHANT_ID, DAY).cancelledOrders);
+        assertEquals(10.0, table.row(MERCHANT_ID, DAY).cancelledRevenue, 0.0);
+
+        // Cancelled and refunded both count as cancelled, so this is not a second cancellation
+        order.setStatus(OrderStatus.REFUNDED);
+        service.onOrderEvent(OrderEvent.statusChanged(order, OrderStatus.CANCELLED));
+        assertEquals(1, table.row(MERCHANT_ID, DAY).cancelledOrders);
+
+        order.setStatus(OrderStatus.PAID);
+        service.onOrderEvent(OrderEvent.statusChanged(order, OrderStatus.REFUNDED));
+        Row day = table.row(MERCHANT_ID, DAY);
+        assertEquals(0, day.cancelledOrders);
+        assertEquals(0.0, day.cancelledRevenue, 0.0);
+        // Status changes never touch the order totals
+        assertEquals(1, day.orders);
+        assertEquals(10.0, day.revenue, 0.0);
+    }
+
+    @Test
+    void countsOrdersCreatedCancelled() {
+        service.onOrderEvent(OrderEvent.created(order(1, MERCHANT_ID, DAY.atTime(9, 0), 1, 3.0,
+                OrderStatus.CANCELLED)));
+
+        Row day = table.row(MERCHANT_ID, DAY);
+        assertEquals(1, day.orders);
+        assertEquals(1, day.cancelledOrders);
+        assertEquals(3.0, day.cancelledRevenue, 0.0);
+    }
+
+    @Test
+    void backfillRebuildsEachMerchantInItsOwnTransaction() {
+        table.merchantIds = List.of(5L, 6L);
+        table.backfillRows = Map.of(5L, 3, 6L, 2);
+        service.onOrderEvent(OrderEvent.created(order(1, MERCHANT_ID, DAY.atTime(9, 0), 1, 3.0,
+                OrderStatus.PENDING)));
+
+        assertEquals(5, service.backfill());
+
+        assertEquals(2, transactions);
+        assertEquals(List.of("delete 5", "backfill 5", "delete 6", "backfill 6"), table.rebuilds);
+        assertNull(table.rows.get(MERCHANT_ID + "/" + DAY), "rows are rebuilt, not added to");
+    }
+
+    @Test
+    void keepsEachDaysCustomersInABitmap() {
+        service.onOrderEvent(OrderEvent.created(order(1, MERCHANT_ID, DAY.atTime(9, 0), 1, 3.0,
+                OrderStatus.PENDING, 7L)));
+        service.onOrderEvent(OrderEvent.created(order(2, MERCHANT_ID, DAY.atTime(10, 0), 1, 3.0,
+                OrderStatus.PENDING, 7L)));
+        service.onOrderEvent(OrderEvent.created(order(3, MERCHANT_ID, DAY.atTime(11, 0), 1, 3.0,
+                OrderStatus.PENDING, 8L)));
+        service.onOrderEvent(OrderEvent.created(order(4, MERCHANT_ID, DAY.plusDays(1).atTime(9, 0), 1, 3.0,
+                OrderStatus.PENDING, 7L)));
+        // Outside the bitmap's range: the order still counts, the customer does not
+        service.onOrderEvent(OrderEvent.created(order(5, MERCHANT_ID, DAY.plusDays(1).atTime(10, 0), 1, 3.0,
+                OrderStatus.PENDING, 1L << 33)));
+
+        assertEquals(2, table.row(MERCHANT_ID, DAY).customers);
+        assertEquals(1, table.row(MERCHANT_ID, DAY.plusDays(1)).customers);
+        assertEquals(2, table.row(MERCHANT_ID, DAY.plusDays(1)).orders);
+        assertEquals(2L, service.countDistinctCustomers(MERCHANT_ID, DAY, DAY.plusDays(1)));
+        assertEquals(1L, service.countDistinctCustomers(MERCHANT_ID, DAY.plusDays(1), null));
+
+        CustomerRetention retention = service.getCustomerRetention(MERCHANT_ID, DAY.plusDays(1), DAY.plusDays(1));
+        assertEquals(1L, retention.getCustomers());
+        assertEquals(1L, retention.getReturningCustomers());
+        assertEquals(0L, retention.getNewCustomers());
+    }
+
+    @Test
+    void backfillWritesABitmapForEveryDayWithCustomers() {
+        table.merchantIds = List.of(MERCHANT_ID);
+        table.customerRows.add(new Object[] { DAY, 7L });
+        table.customerRows.add(new Object[] { DAY, 8L });
+        // Only a customer the bitmap cannot hold; the day still gets an (empty) bitmap so the
+        // startup check does not schedule another full rebuild
+        table.customerRows.add(new Object[] { DAY.plusDays(1), 1L << 33 });
+
+        service.backfill();
+
+        Map<LocalDate, RoaringBitmap> bitmaps = new HashMap<>();
+        table.bitmapUpdates.forEach(row -> bitmaps.put(((Date) row[2]).toLocalDate(),
+                RoaringBitmap.fromBytes((byte[]) row[0])));
+        assertEquals(2, bitmaps.size());
+        assertEquals(2L, bitmaps.get(DAY).cardinality());
+        assertTrue(bitmaps.get(DAY).contains(8L));
+        assertEquals(0L, bitmaps.get(DAY.plusDays(1)).cardinality());
+        assertFalse(bitmaps.containsKey(DAY.plusDays(2)));
+    }
+
+    private static Order order(long orderId, long merchantId, LocalDateTime orderDate, int quantity, double price,
+            OrderStatus status, Long customerId) {
+        Order order = order(orderId, merchantId, orderDate, quantity, price, status);
+        Customer customer = new Customer();
+        customer.setCustomerId(customerId);
+        order.setCustomer(customer);
+        return order;
+    }
+
+    private static Order order(long orderId, long merchantId, LocalDateTime orderDate, int quantity, double price,
+            OrderStatus status) {
+        Merchant merchant = new Merchant();
+        merchant.setMerchantId(merchantId);
+        MerchantProduct product = new MerchantProduct();
+        product.setMerchant(merchant);
+        product.setPrice(price);
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setMerchantProduct(product);
+        order.setQuantity(quantity);
+        order.setOrderDate(orderDate);
+        order.setStatus(status);
+        return order;
+    }
+
+    private static final class Row {
+        private long orders;
+        private long units;
+        private double revenue;
+        private long customers;
+        private long cancelledOrders;
+        private double cancelledRevenue;
+        private byte[] customerBitmap;
+    }
+
+    // merchant_daily_sales in memory, keyed by merchant and day; the backfill statements are only recorded
+    private static final class DailySalesTable extends JdbcTemplate {
+        private final Map<String, Row> rows = new HashMap<>();
+        private final List<String> rebuilds = new ArrayList<>();
+        private List<Long> merchantIds = List.of();
+        private Map<Long, Integer> backfillRows = Map.of();
+        // (sales date, customer id) of the orders the backfill reads
+        private final List<Object[]> customerRows = new ArrayList<>();
+        private final List<Object[]> bitmapUpdates = new ArrayList<>();
+
+        private Row row(long merchantId, LocalDate day) {
+            return rows.get(merchantId + "/" + day);
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            if (sql.startsWith("DELETE FROM merchant_daily_sales")) {
+                rebuilds.add("delete " + args[0]);
+                rows.keySet().removeIf(key -> key.startsWith(args[0] + "/"));
+                return 0;
+            }
+            if (sql.contains(" SELECT ")) {
+                rebuilds.add("backfill " + args[0]);
+                return backfillRows.getOrDefault((Long) args[0], 0);
+            }
+            String key = args[args.length - 2] + "/" + ((Date) args[args.length - 1]).toLocalDate();
+            if (sql.startsWith("INSERT INTO merchant_daily_sales")) {
+                return rows.putIfAbsent(key, new Row()) == null ? 1 : 0;
+            }
+            Row row = rows.get(key);
+            if (row == null) {
+                return 0;
+            }
+            if (sql.contains("orders = orders + 1")) {
+                row.orders++;
+                row.units += ((Number) args[0]).longValue();
+                row.revenue += ((Number) args[1]).doubleValue();
+            } else if (sql.contains("cancelled_orders = cancelled_orders + ?")) {
+                row.cancelledOrders += ((Number) args[0]).longValue();
+                row.cancelledRevenue += ((Number) args[1]).doubleValue();
+            } else if (sql.contains("customers = customers + 1")) {
+                row.customers++;
+                row.customerBitmap = (byte[]) args[0];
+            } else {
+                throw new UnsupportedOperationException(sql);
+            }
+            return 1;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType) {
+            return (List<T>) merchantIds;
+        }
+
+        @Override
+        public <T> T query(String sql, ResultSetExtractor<T> rse, Object... args) {
+            Row row = rows.get(args[0] + "/" + ((Date) args[1]).toLocalDate());
+            byte[] bitmap = row != null ? row.customerBitmap : null;
+            // One row when the day exists
+            int[] remaining = { row != null ? 1 : 0 };
+            try {
+                return rse.extractData(resultSet((proxy, method, methodArgs) -> switch (method.getName()) {
+                    case "next" -> remaining[0]-- > 0;
+                    case "getBytes" -> bitmap;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            List<Object[]> result = new ArrayList<>();
+            if (sql.startsWith("SELECT sales_date, customer_bitmap")) {
+                LocalDate start = ((Date) args[1]).toLocalDate();
+                LocalDate end = ((Date) args[2]).toLocalDate();
+                rows.entrySet().stream().filter(entry -> entry.getKey().startsWith(args[0] + "/"))
+                        .filter(entry -> entry.getValue().customerBitmap != null)
+                        .map(entry -> new Object[] { LocalDate.parse(entry.getKey().substring(
+                                entry.getKey().indexOf('/') + 1)), entry.getValue().customerBitmap })
+                        .filter(day -> !((LocalDate) day[0]).isBefore(start) && !((LocalDate) day[0]).isAfter(end))
+                        .sorted((a, b) -> ((LocalDate) a[0]).compareTo((LocalDate) b[0]))
+                        .forEach(result::add);
+            } else {
+                result.addAll(customerRows);
+            }
+            for (Object[] values : result) {
+                try {
+                    rch.processRow(resultSet((proxy, method, methodArgs) -> switch (method.getName()) {
+                        case "getDate" -> Date.valueOf((LocalDate) values[0]);
+                        case "getLong" -> values[1];
+                        case "getBytes" -> values[1];
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }));
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            bitmapUpdates.addAll(batchArgs);
+            return new int[batchArgs.size()];
+        }
+
+        private static ResultSet resultSet(InvocationHandler handler) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, handler);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package dev.paul.cartlink.merchant.service;
+
+import dev.paul.cartlink.merchant.model.Merchant;
+import dev.paul.cartlink.merchant.model.MerchantProduct;
+import dev.paul.cartlink.order.dto.OrderEvent;
+import dev.paul.cartlink.order.model.Order;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MerchantSalesSeriesStoreTest {
+
+    private static final long MERCHANT_ID = 5L;
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 1);
+
+    private final ScriptedJdbcTemplate jdbcTemplate = new ScriptedJdbcTemplate();
+    private final MerchantSalesSeriesStore store = new MerchantSalesSeriesStore(jdbcTemplate, true, 16, 1024, 100);
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    void returnsNullUntilLoaded() {
+        assertNull(store.getDailySales(MERCHANT_ID, DAY, DAY));
+    }
+
+    @Test
+    void appliesOrdersCommittedDuringTheLoadExactlyOnce() throws InterruptedException {
+        // Order 4 has a lower id than order 5 but commits after the cursor's snapshot,
+        // and order 3's event arrives while the cursor is reading it
+        jdbcTemplate.row(1, DAY.atTime(9, 0), 10.0);
+        jdbcTemplate.row(3, DAY.atTime(10, 0), 30.0);
+        jdbcTemplate.row(5, DAY.plusDays(1).atTime(9, 0), 50.0);
+        jdbcTemplate.duringRow(1, () -> {
+            store.onOrderEvent(event(3, DAY.atTime(10, 0), 30.0));
+            store.onOrderEvent(event(4, DAY.plusDays(1).atTime(11, 0), 40.0));
+        });
+
+        store.start();
+        awaitReady();
+
+        Map<LocalDate, Double> daily = store.getDailySales(MERCHANT_ID, DAY, DAY.plusDays(1));
+        assertEquals(40.0, daily.get(DAY), 0.0);
+        assertEquals(90.0, daily.get(DAY.plusDays(1)), 0.0);
+        assertEquals(4L, store.getStats().get("points"));
+    }
+
+    @Test
+    void appendsOrdersAfterTheLoad() throws InterruptedException {
+        jdbcTemplate.row(1, DAY.atTime(9, 0), 10.0);
+        store.start();
+        awaitReady();
+
+        store.onOrderEvent(event(2, DAY.atTime(12, 0), 15.0));
+        store.onOrderEvent(event(1L << 33, DAY.plusDays(2).atTime(8, 0), 7.0));
+
+        Map<LocalDate, Double> daily = store.getDailySales(MERCHANT_ID, DAY, DAY.plusDays(2));
+        assertEquals(25.0, daily.get(DAY), 0.0);
+        assertEquals(7.0, daily.get(DAY.plusDays(2)), 0.0);
+        assertEquals(2, daily.size(), "days without orders are left out");
+        assertTrue(store.getDailySales(99L, DAY, DAY).isEmpty());
+    }
+
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Boolean.TRUE.equals(store.getStats().get("ready"))) {
+            assertTrue(System.currentTimeMillis() < deadline, "series loaded");
+            Thread.sleep(5);
+        }
+    }
+
+    private static OrderEvent event(long orderId, LocalDateTime orderDate, double amount) {
+        Merchant merchant = new Merchant();
+        merchant.setMerchantId(MERCHANT_ID);
+        MerchantProduct product = new MerchantProduct();
+        product.setMerchant(merchant);
+        product.setPrice(amount);
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setMerchantProduct(product);
+        order.setQuantity(1);
+        order.setOrderDate(orderDate);
+        return OrderEvent.created(order);
+    }
+
+    // Serves order rows to the load cursor and runs a callback after the given row
+    private static final class ScriptedJdbcTemplate extends JdbcTemplate {
+        private final List<Object[]> rows = new ArrayList<>();
+        private int callbackRow = -1;
+        private Runnable callback;
+
+        private void row(long orderId, LocalDateTime orderDate, double amount) {
+            rows.add(new Object[] { orderId, orderDate, amount });
+        }
+
+        private void duringRow(int index, Runnable action) {
+            callbackRow = index;
+            callback = action;
+        }
+
+        @Override
+        public void query(PreparedStatementCreator psc, RowCallbackHandler rch) {
+            for (int i = 0; i < rows.size(); i++) {
+                try {
+                    rch.processRow(resultSet(rows.get(i)));
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (i == callbackRow) {
+                    callback.run();
+                }
+            }
+        }
+
+        private static ResultSet resultSet(Object[] row) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, (proxy, method, args) -> switch (method.getName()) {
+                        case "getLong" -> "merchant_id".equals(args[0]) ? MERCHANT_ID : row[0];
+                        case "getTimestamp" -> Timestamp.valueOf((LocalDateTime) row[1]);
+                        case "getDouble" -> row[2];
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
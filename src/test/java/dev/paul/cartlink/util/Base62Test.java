@@ -0,0 +1,47 @@
+package dev.paul.cartlink.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Base62Test {
+
+    @Test
+    void encodesDigitsLowercaseThenUppercase() {
+        assertEquals("0", Base62.encode(0));
+        assertEquals("9", Base62.encode(9));
+        assertEquals("a", Base62.encode(10));
+        assertEquals("Z", Base62.encode(61));
+        assertEquals("10", Base62.encode(62));
+    }
+
+    @Test
+    void roundTripsAcrossTheWholeRange() {
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong() & Long.MAX_VALUE;
+            assertEquals(value, Base62.decode(Base62.encode(value)));
+        }
+        String max = Base62.encode(Long.MAX_VALUE);
+        assertEquals(Base62.MAX_LENGTH, max.length());
+        assertEquals(Long.MAX_VALUE, Base62.decode(max));
+    }
+
+    @Test
+    void decodeRejectsInvalidInput() {
+        assertEquals(-1, Base62.decode(null));
+        assertEquals(-1, Base62.decode(""));
+        assertEquals(-1, Base62.decode("3f2a-9c1e"));
+        assertEquals(-1, Base62.decode("123456789012"));
+        // One more than Long.MAX_VALUE
+        assertEquals(-1, Base62.decode("aZl8N0y58M8"));
+    }
+
+    @Test
+    void encodeRejectsNegativeValues() {
+        assertThrows(IllegalArgumentException.class, () -> Base62.encode(-1));
+    }
+}
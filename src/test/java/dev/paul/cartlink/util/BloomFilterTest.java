@@ -0,0 +1,85 @@
+package dev.paul.cartlink.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void neverReportsAnAddedValueAsMissing() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("slug-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("slug-" + i));
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheTargetAtCapacity() {
+        assertFalsePositiveRate(100_000, 0.01);
+        assertFalsePositiveRate(100_000, 0.001);
+    }
+
+    @Test
+    void sizesFromInsertionsAndRate() {
+        BloomFilter filter = new BloomFilter(1_000_000, 0.001);
+
+        // -n ln p / (ln 2)^2 is about 14.38 bits per element, k = m/n ln 2 is about 10
+        assertTrue(filter.bitCount() >= 14_377_588 && filter.bitCount() < 14_377_588 + 64);
+        assertEquals(10, filter.hashCount());
+        assertEquals(filter.bitCount() / 8, filter.sizeInBytes());
+    }
+
+    @Test
+    void concurrentAddsAreAllVisible() throws InterruptedException {
+        BloomFilter filter = new BloomFilter(40_000, 0.01);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t * 10_000;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    filter.add("slug-" + (offset + i));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < 40_000; i++) {
+            assertTrue(filter.mightContain("slug-" + i));
+        }
+    }
+
+    @Test
+    void rejectsInvalidSizing() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1));
+    }
+
+    private static void assertFalsePositiveRate(int insertions, double target) {
+        BloomFilter filter = new BloomFilter(insertions, target);
+        for (int i = 0; i < insertions; i++) {
+            filter.add("member-" + i);
+        }
+        int probes = 1_000_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("stranger-" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        // Allows for sampling noise and the rounding of the hash count
+        assertTrue(rate < target * 1.5, "false-positive rate " + rate + " for target " + target);
+    }
+}
@@ -0,0 +1,109 @@
+package dev.paul.cartlink.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ColumnarTimeSeriesTest {
+
+    @Test
+    void sumsAndCountsHalfOpenRanges() {
+        ColumnarTimeSeries series = new ColumnarTimeSeries(4, 64);
+        for (long t = 0; t < 10; t++) {
+            series.append(t * 10, t);
+        }
+
+        assertEquals(10L, series.size());
+        assertEquals(0 + 1 + 2, series.sum(0, 30), 0.0);
+        assertEquals(3L, series.count(0, 30));
+        assertEquals(3 + 4 + 5 + 6, series.sum(30, 61), 0.0);
+        assertEquals(45, series.sum(Long.MIN_VALUE, Long.MAX_VALUE), 0.0);
+        assertEquals(0L, series.count(91, 200));
+        assertEquals(0L, series.firstTimestamp());
+        assertEquals(90L, series.lastTimestamp());
+    }
+
+    @Test
+    void insertsLatePointsInTimeOrder() {
+        ColumnarTimeSeries series = new ColumnarTimeSeries(8, 64);
+        series.append(100, 1);
+        series.append(300, 3);
+        series.append(200, 2);
+        series.append(50, 0.5);
+        series.append(300, 4);
+
+        assertEquals(0.5, series.sum(0, 100), 0.0);
+        assertEquals(1 + 2, series.sum(100, 300), 0.0);
+        assertEquals(3 + 4, series.sum(300, 301), 0.0);
+        assertEquals(2L, series.count(300, 301));
+        assertEquals(50L, series.firstTimestamp());
+    }
+
+    @Test
+    void latePointsInTheOpenChunkStillCountAcrossChunks() {
+        ColumnarTimeSeries series = new ColumnarTimeSeries(2, 64);
+        series.append(10, 1);
+        series.append(20, 1);
+        // Lands in the second chunk although it is older than the first chunk's end
+        series.append(30, 1);
+        series.append(15, 1);
+
+        assertEquals(2L, series.count(10, 20));
+        assertEquals(4L, series.count(0, 100));
+    }
+
+    @Test
+    void sumsIntoBuckets() {
+        ColumnarTimeSeries series = new ColumnarTimeSeries(4, 64);
+        series.append(5, 1);
+        series.append(15, 2);
+        series.append(19, 3);
+        series.append(45, 4);
+        series.append(100, 5);
+
+        double[] sums = new double[5];
+        series.sumByBucket(0, 10, sums);
+
+        assertArrayEquals(new double[] { 1, 5, 0, 0, 4 }, sums);
+        assertThrows(IllegalArgumentException.class, () -> series.sumByBucket(0, 0, sums));
+    }
+
+    @Test
+    void evictsTheOldestChunkAndMovesCoveredFrom() {
+        ColumnarTimeSeries series = new ColumnarTimeSeries(2, 4);
+        assertEquals(Long.MIN_VALUE, series.coveredFrom());
+        for (long t = 1; t <= 4; t++) {
+            series.append(t, 1);
+        }
+        assertEquals(Long.MIN_VALUE, series.coveredFrom());
+
+        series.append(5, 1);
+
+        assertEquals(3L, series.size());
+        assertEquals(3L, series.coveredFrom());
+        assertEquals(3L, series.firstTimestamp());
+        assertEquals(0L, series.count(0, 3));
+        assertEquals(3L, series.count(3, 6));
+    }
+
+    @Test
+    void coveredFromPassesLatePointsInEvictedChunks() {
+        ColumnarTimeSeries series = new ColumnarTimeSeries(2, 4);
+        series.append(10, 1);
+        series.append(40, 1);
+        series.append(20, 1);
+        series.append(30, 1);
+
+        series.append(50, 1);
+
+        assertEquals(41L, series.coveredFrom());
+    }
+
+    @Test
+    void rejectsInvalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new ColumnarTimeSeries(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ColumnarTimeSeries(8, 4));
+    }
+}
@@ -0,0 +1,91 @@
+package dev.paul.cartlink.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DurationHistogramTest {
+
+    @Test
+    void placesDurationsInHalfOpenBuckets() {
+        assertEquals(0, DurationHistogram.bucketOf(0));
+        assertEquals(1, DurationHistogram.bucketOf(1));
+        assertEquals(3, DurationHistogram.bucketOf(4));
+        assertEquals(3, DurationHistogram.bucketOf(3));
+        assertEquals(4, DurationHistogram.bucketOf(5));
+        assertEquals(DurationHistogram.BUCKETS - 1, DurationHistogram.bucketOf(86_400));
+        assertEquals(DurationHistogram.BUCKETS - 1, DurationHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(0L, DurationHistogram.lowerBound(0));
+        assertEquals(86_400L, DurationHistogram.lowerBound(DurationHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    void interpolatesPercentilesWithinABucket() {
+        DurationHistogram histogram = new DurationHistogram();
+        // Ten samples in [10, 15)
+        for (int i = 0; i < 10; i++) {
+            histogram.add(12);
+        }
+
+        assertEquals(12.5, histogram.percentile(0.5), 1e-9);
+        assertEquals(15.0, histogram.percentile(1.0), 1e-9);
+        assertEquals(10.0, histogram.percentile(0.0), 1e-9);
+    }
+
+    @Test
+    void percentilesAcrossBucketsStayWithinTheRightBucket() {
+        DurationHistogram histogram = new DurationHistogram();
+        for (int i = 0; i < 50; i++) {
+            histogram.add(2);
+        }
+        for (int i = 0; i < 40; i++) {
+            histogram.add(40);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.add(700);
+        }
+
+        double median = histogram.percentile(0.5);
+        assertTrue(median >= 2 && median <= 3, "median " + median);
+        double p90 = histogram.percentile(0.9);
+        assertTrue(p90 >= 30 && p90 <= 45, "p90 " + p90);
+        double p95 = histogram.percentile(0.95);
+        assertTrue(p95 >= 600 && p95 <= 1200, "p95 " + p95);
+    }
+
+    @Test
+    void openEndedBucketReportsItsLowerBound() {
+        DurationHistogram histogram = new DurationHistogram();
+        histogram.add(100_000);
+
+        assertEquals(86_400.0, histogram.percentile(0.9), 0.0);
+    }
+
+    @Test
+    void mergingAddsCounts() {
+        DurationHistogram left = new DurationHistogram();
+        left.add(4);
+        left.add(4);
+        DurationHistogram right = new DurationHistogram();
+        right.add(4);
+        right.add(DurationHistogram.bucketOf(100), 5);
+
+        left.merge(right);
+
+        assertEquals(8L, left.total());
+        assertEquals(3L, left.count(DurationHistogram.bucketOf(4)));
+        assertEquals(5L, left.count(DurationHistogram.bucketOf(100)));
+    }
+
+    @Test
+    void rejectsInvalidInput() {
+        DurationHistogram histogram = new DurationHistogram();
+        assertTrue(histogram.isEmpty());
+        assertEquals(0.0, histogram.percentile(0.5), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(1.5));
+        assertThrows(IllegalArgumentException.class, () -> histogram.add(DurationHistogram.BUCKETS, 1));
+        assertThrows(IllegalArgumentException.class, () -> histogram.add(-1, 1));
+    }
+}
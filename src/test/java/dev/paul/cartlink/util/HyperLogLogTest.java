@@ -0,0 +1,97 @@
+package dev.paul.cartlink.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimatesSmallCardinalitiesExactlyEnough() {
+        HyperLogLog sketch = new HyperLogLog();
+        assertEquals(0L, sketch.estimate());
+
+        for (long i = 0; i < 100; i++) {
+            sketch.add(Hashing.hash64(i));
+        }
+
+        assertEquals(100L, sketch.estimate(), 2);
+    }
+
+    @Test
+    void estimateStaysWithinThreeStandardErrors() {
+        for (int n : new int[] { 1_000, 30_000, 1_000_000 }) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (long i = 0; i < n; i++) {
+                sketch.add(Hashing.hash64("visitor-" + i));
+            }
+            double error = Math.abs(sketch.estimate() - n) / (double) n;
+            assertTrue(error < 3 * 0.0115, n + " estimated as " + sketch.estimate());
+        }
+    }
+
+    @Test
+    void addReportsOnlyRegisterChanges() {
+        HyperLogLog sketch = new HyperLogLog();
+        long hash = Hashing.hash64("visitor");
+
+        assertTrue(sketch.add(hash));
+        assertFalse(sketch.add(hash), "a repeat never changes a register");
+
+        // All-zero bits after the index get the capped rank and still count as new
+        assertTrue(sketch.add(0L));
+        assertFalse(sketch.add(0L));
+    }
+
+    @Test
+    void mergeEstimatesTheUnion() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        for (long i = 0; i < 20_000; i++) {
+            left.add(Hashing.hash64(i));
+        }
+        for (long i = 10_000; i < 30_000; i++) {
+            right.add(Hashing.hash64(i));
+        }
+        HyperLogLog union = new HyperLogLog();
+        for (long i = 0; i < 30_000; i++) {
+            union.add(Hashing.hash64(i));
+        }
+
+        left.merge(right);
+
+        assertEquals(union.estimate(), left.estimate());
+        assertArrayEquals(union.toBytes(), left.toBytes());
+        left.merge((byte[]) null);
+        assertEquals(union.estimate(), left.estimate());
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long i = 0; i < 5_000; i++) {
+            sketch.add(Hashing.hash64(i));
+        }
+
+        byte[] bytes = sketch.toBytes();
+        HyperLogLog copy = HyperLogLog.fromBytes(bytes);
+
+        assertEquals(sketch.estimate(), copy.estimate());
+        assertEquals(0L, HyperLogLog.fromBytes(null).estimate());
+        // Copies do not share registers with the sketch they came from
+        for (long i = 5_000; i < 6_000; i++) {
+            copy.add(Hashing.hash64(i));
+        }
+        assertArrayEquals(bytes, sketch.toBytes());
+    }
+
+    @Test
+    void rejectsSketchesOfTheWrongSize() {
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[16]));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog().merge(new byte[16]));
+    }
+}
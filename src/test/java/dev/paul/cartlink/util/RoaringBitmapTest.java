@@ -0,0 +1,165 @@
+package dev.paul.cartlink.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoaringBitmapTest {
+
+    @Test
+    void addsAndFindsValuesAcrossContainers() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        long[] values = { 0, 1, 65_535, 65_536, 1_000_000, 0xFFFFFFFFL };
+        for (long value : values) {
+            assertTrue(bitmap.add(value));
+        }
+
+        assertFalse(bitmap.add(65_536), "already present");
+        assertEquals(values.length, bitmap.cardinality());
+        for (long value : values) {
+            assertTrue(bitmap.contains(value), String.valueOf(value));
+        }
+        assertFalse(bitmap.contains(2));
+        assertFalse(bitmap.contains(-1));
+        assertFalse(bitmap.contains(0x1_0000_0000L));
+    }
+
+    @Test
+    void rejectsValuesOutsideTheUnsigned32BitRange() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(0x1_0000_0000L));
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    void switchesFromArrayToBitmapPastArrayMax() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        // Every third value, added in reverse so the array inserts in the middle
+        for (long value = 3 * 4095; value >= 0; value -= 3) {
+            bitmap.add(value);
+        }
+        assertEquals(4096L, bitmap.cardinality());
+
+        assertTrue(bitmap.add(1));
+        assertFalse(bitmap.add(1));
+
+        assertEquals(4097L, bitmap.cardinality());
+        for (long value = 0; value <= 3 * 4095; value++) {
+            assertEquals(value % 3 == 0 || value == 1, bitmap.contains(value), String.valueOf(value));
+        }
+        assertRoundTrip(bitmap);
+    }
+
+    @Test
+    void unionsMixedContainers() {
+        RoaringBitmap array = new RoaringBitmap();
+        for (long value = 9_000; value < 12_000; value += 2) {
+            array.add(value);
+        }
+        array.add(70_000);
+
+        RoaringBitmap union = range(0, 10_000);
+        union.or(array);
+
+        assertEquals(10_000L + 1_000 + 1, union.cardinality());
+        assertTrue(union.contains(11_998));
+        assertFalse(union.contains(11_999));
+        assertTrue(union.contains(70_000));
+
+        // Two arrays whose union no longer fits an array container
+        RoaringBitmap low = range(0, 3_000);
+        low.or(range(3_000, 6_000));
+        assertEquals(6_000L, low.cardinality());
+        assertTrue(low.contains(5_999));
+        assertRoundTrip(low);
+
+        // The union takes copies, so adding to it leaves the other bitmap alone
+        union.add(70_001);
+        assertFalse(array.contains(70_001));
+        assertEquals(1_501L, array.cardinality());
+    }
+
+    @Test
+    void intersectsMixedContainers() {
+        RoaringBitmap bitmap = range(0, 10_000);
+        RoaringBitmap otherBitmap = range(5_000, 15_000);
+        RoaringBitmap array = new RoaringBitmap();
+        for (long value = 0; value <= 200; value += 2) {
+            array.add(value);
+        }
+        array.add(65_536 + 7);
+
+        assertEquals(101L, bitmap.andCardinality(array));
+        assertEquals(101L, array.andCardinality(bitmap));
+        assertEquals(101L, bitmap.and(array).cardinality());
+        assertTrue(array.and(bitmap).contains(200));
+        assertFalse(array.and(bitmap).contains(65_543));
+
+        assertEquals(5_000L, bitmap.andCardinality(otherBitmap));
+        RoaringBitmap both = bitmap.and(otherBitmap);
+        assertEquals(5_000L, both.cardinality());
+        assertTrue(both.contains(5_000));
+        assertFalse(both.contains(4_999));
+        assertTrue(both.contains(9_999));
+        assertFalse(both.contains(10_000));
+
+        assertTrue(array.and(range(300, 400)).isEmpty());
+        assertEquals(0L, array.andCardinality(new RoaringBitmap()));
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        assertRoundTrip(new RoaringBitmap());
+
+        RoaringBitmap arrays = new RoaringBitmap();
+        arrays.add(3);
+        arrays.add(65_536 * 5 + 9);
+        arrays.add(0xFFFFFFFFL);
+        assertRoundTrip(arrays);
+
+        assertRoundTrip(range(100, 20_000));
+    }
+
+    @Test
+    void roundTripsAFullContainer() {
+        RoaringBitmap full = range(65_536, 2 * 65_536);
+        full.add(7);
+        assertEquals(65_537L, full.cardinality());
+
+        RoaringBitmap copy = assertRoundTrip(full);
+        assertTrue(copy.contains(65_536));
+        assertTrue(copy.contains(2 * 65_536 - 1));
+        assertFalse(copy.contains(2 * 65_536));
+        assertFalse(copy.add(100_000));
+    }
+
+    @Test
+    void readsNullOrEmptyBytesAsEmpty() {
+        assertTrue(RoaringBitmap.fromBytes(null).isEmpty());
+        assertTrue(RoaringBitmap.fromBytes(new byte[0]).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> RoaringBitmap.fromBytes(new byte[] { 9, 0, 0, 0, 0 }));
+    }
+
+    private static RoaringBitmap range(long from, long to) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (long value = from; value < to; value++) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    private static RoaringBitmap assertRoundTrip(RoaringBitmap bitmap) {
+        byte[] bytes = bitmap.toBytes();
+        RoaringBitmap copy = RoaringBitmap.fromBytes(bytes);
+        assertEquals(bitmap.cardinality(), copy.cardinality());
+        assertEquals(bitmap.cardinality(), copy.andCardinality(bitmap));
+        assertArrayEquals(bytes, copy.toBytes());
+        return copy;
+    }
+}
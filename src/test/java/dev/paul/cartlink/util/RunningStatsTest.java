@@ -0,0 +1,80 @@
+package dev.paul.cartlink.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RunningStatsTest {
+
+    @Test
+    void matchesTheTwoPassMeanAndVariance() {
+        double[] samples = { 12, 3, 45, 7, 7, 120, 31 };
+        RunningStats stats = of(samples);
+
+        double mean = 0;
+        for (double sample : samples) {
+            mean += sample / samples.length;
+        }
+        double squares = 0;
+        for (double sample : samples) {
+            squares += (sample - mean) * (sample - mean);
+        }
+        assertEquals(samples.length, stats.getCount());
+        assertEquals(mean, stats.getMean(), 1e-9);
+        assertEquals(squares, stats.getM2(), 1e-9);
+        assertEquals(squares / (samples.length - 1), stats.variance(), 1e-9);
+    }
+
+    @Test
+    void mergingPartitionsEqualsAddingEverySample() {
+        Random random = new Random(7);
+        RunningStats all = new RunningStats();
+        RunningStats merged = new RunningStats();
+        for (int part = 0; part < 5; part++) {
+            RunningStats partial = new RunningStats();
+            for (int i = 0; i < 1 + part * 50; i++) {
+                double sample = random.nextDouble() * 600;
+                all.add(sample);
+                partial.add(sample);
+            }
+            merged.merge(partial);
+        }
+
+        assertEquals(all.getCount(), merged.getCount());
+        assertEquals(all.getMean(), merged.getMean(), 1e-9);
+        assertEquals(all.getM2(), merged.getM2(), 1e-6);
+    }
+
+    @Test
+    void mergingEmptyStatsChangesNothing() {
+        RunningStats stats = of(4, 8);
+        stats.merge(new RunningStats());
+        stats.merge(0, 99, 99);
+        assertEquals(2L, stats.getCount());
+        assertEquals(6.0, stats.getMean(), 0.0);
+
+        RunningStats empty = new RunningStats();
+        empty.merge(of(4, 8));
+        assertEquals(6.0, empty.getMean(), 0.0);
+        assertEquals(8.0, empty.getM2(), 0.0);
+    }
+
+    @Test
+    void reportsNoVarianceBelowTwoSamples() {
+        assertEquals(0.0, new RunningStats().variance(), 0.0);
+        assertEquals(0.0, of(42).standardDeviation(), 0.0);
+        assertEquals(0.0, new RunningStats(0, 5, 5).getMean(), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> new RunningStats(-1, 0, 0));
+    }
+
+    private static RunningStats of(double... samples) {
+        RunningStats stats = new RunningStats();
+        for (double sample : samples) {
+            stats.add(sample);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,115 @@
+package dev.paul.cartlink.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingSketchTest {
+
+    @Test
+    void countsExactlyWhileUnderCapacity() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(3);
+        offer(sketch, "google", 5);
+        offer(sketch, "facebook", 3);
+        offer(sketch, "direct", 1);
+
+        List<SpaceSavingSketch.Counter> entries = sketch.entries();
+
+        assertEquals(List.of("google", "facebook", "direct"), entries.stream().map(SpaceSavingSketch.Counter::getKey)
+                .toList());
+        entries.forEach(counter -> assertEquals(0L, counter.getError()));
+        assertEquals(9L, sketch.total());
+    }
+
+    @Test
+    void newKeyReplacesTheSmallestAndInheritsItsCountAsError() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        offer(sketch, "google", 5);
+        offer(sketch, "facebook", 2);
+
+        sketch.offer("tiktok");
+
+        Map<String, SpaceSavingSketch.Counter> byKey = byKey(sketch);
+        assertEquals(2, sketch.size());
+        assertFalse(byKey.containsKey("facebook"));
+        assertEquals(3L, byKey.get("tiktok").getCount());
+        assertEquals(2L, byKey.get("tiktok").getError());
+        assertEquals(1L, byKey.get("tiktok").getGuaranteedCount());
+    }
+
+    @Test
+    void countsStayWithinTheirErrorBound() {
+        int capacity = 10;
+        SpaceSavingSketch sketch = new SpaceSavingSketch(capacity);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        int offers = 50_000;
+        for (int i = 0; i < offers; i++) {
+            // Skewed: a few heavy sources and a long tail
+            String key = "source-" + (int) Math.floor(Math.pow(random.nextDouble(), 3) * 200);
+            sketch.offer(key);
+            exact.merge(key, 1L, Long::sum);
+        }
+
+        long sum = 0;
+        for (SpaceSavingSketch.Counter counter : sketch.entries()) {
+            long actual = exact.get(counter.getKey());
+            assertTrue(counter.getCount() >= actual, "never underestimates " + counter.getKey());
+            assertTrue(counter.getGuaranteedCount() <= actual, "guaranteed count is a lower bound");
+            assertTrue(counter.getError() <= offers / capacity, "error is at most N/K");
+            sum += counter.getCount();
+        }
+        assertEquals(offers, sum);
+        assertEquals(offers, sketch.total());
+        // Every key above N/K occurrences must be tracked
+        exact.forEach((key, count) -> {
+            if (count > offers / capacity) {
+                assertTrue(byKey(sketch).containsKey(key), key + " is a heavy hitter");
+            }
+        });
+    }
+
+    @Test
+    void mergeCarriesCountsAndErrors() {
+        SpaceSavingSketch left = new SpaceSavingSketch(2);
+        offer(left, "google", 4);
+        offer(left, "facebook", 1);
+        left.offer("tiktok");
+        SpaceSavingSketch right = new SpaceSavingSketch(2);
+        offer(right, "google", 3);
+        offer(right, "twitter", 2);
+
+        left.merge(right);
+
+        Map<String, SpaceSavingSketch.Counter> byKey = byKey(left);
+        assertEquals(7L, byKey.get("google").getCount());
+        assertEquals(0L, byKey.get("google").getError());
+        assertEquals(left.total(), left.entries().stream().mapToLong(SpaceSavingSketch.Counter::getCount).sum());
+        assertEquals(11L, left.total());
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SpaceSavingSketch(0));
+    }
+
+    private static void offer(SpaceSavingSketch sketch, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            sketch.offer(key);
+        }
+    }
+
+    private static Map<String, SpaceSavingSketch.Counter> byKey(SpaceSavingSketch sketch) {
+        Map<String, SpaceSavingSketch.Counter> byKey = new HashMap<>();
+        sketch.entries().forEach(counter -> byKey.put(counter.getKey(), counter));
+        return byKey;
+    }
+}
@@ -0,0 +1,18 @@
+Feature: Link Metrics
+  # GET /api/links/metrics exposes the link caches, aggregator and journal,
+  # and is limited to the accounts listed in cartlink.security.admin-emails.
+
+  Background:
+    Given the API base URL is "/api"
+
+  Scenario: An Admin Reads the Link Metrics
+    Given a merchant is logged in with email "metrics.admin@example.com" and password "MetricsPass123!"
+    When a GET request is made to "/links/metrics" with an authenticated merchant
+    Then the response status code should be 200
+    And the response body should contain a "clickAggregator"
+    And the response body should contain a "slugFilter"
+
+  Scenario: Other Merchants Cannot Read the Link Metrics
+    Given a merchant is logged in with email "metrics.merchant@example.com" and password "MetricsPass123!"
+    When a GET request is made to "/links/metrics" with an authenticated merchant
+    Then the response status code should be 403
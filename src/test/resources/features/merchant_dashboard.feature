@@ -48,6 +48,24 @@ Feature: Merchant Dashboard
     Then the response status code should be 200
     And the response body should be a list # List of traffic data points
 
+  Scenario: Traffic Data Is Summed In One Query
+    Given the merchant "dash.merchant@example.com" has 25 linked products with 3 "google" clicks and 1 direct clicks each
+    When the traffic chart data is computed for that merchant
+    Then the traffic chart data should take 1 SQL statement
+    And the traffic chart should show 75 clicks for "google"
+    And the traffic chart should show 25 clicks for "Direct/Unknown"
+
+  Scenario: Get Customer Retention Successfully
+    When a GET request is made to "/merchant/dashboard/customers?startDate=2023-01-01&endDate=2023-01-31" with an authenticated merchant
+    Then the response status code should be 200
+    And the response body should contain a "newCustomers"
+    And the response body should contain a "returningCustomers"
+    And the response body should contain a "repeatRate"
+
+  Scenario: Get Customer Retention With An Invalid Date
+    When a GET request is made to "/merchant/dashboard/customers?startDate=January" with an authenticated merchant
+    Then the response status code should be 400
+
   Scenario: Get Traffic Data Without Authentication
     When a GET request is made to "/merchant/dashboard/traffic-data" # No auth
     Then the response status code should be 401 # Or 403
@@ -15,6 +15,26 @@ Feature: Merchant Order Management
     Then the response status code should be 200
     And the response body should be a list # Potentially empty if no orders created yet for this merchant
 
+  Scenario: Export Merchant's Orders As CSV
+    When a GET request is made to "/merchants/{merchantId}/orders/export?format=csv" with an authenticated merchant
+    Then the response status code should be 200
+    And the response body should include the text "order_id,order_date,status"
+
+  Scenario: Exported Orders Contain The Merchant's Order Rows
+    Given an order with ID "901" exists for merchant "order.merchant@example.com" with initial status "CANCELLED"
+    When a GET request is made to "/merchants/{merchantId}/orders/export?format=ndjson&status=CANCELLED" with an authenticated merchant
+    Then the response status code should be 200
+    And the response body should include the text '"status":"CANCELLED","quantity":1,"unit_price":10.0,"total_price":10.0'
+    And the response body should include the text '"product_name":"OrderableProduct"'
+
+  Scenario: Merchant Cannot Export Another Merchant's Orders
+    When a GET request is made to "/merchants/99990/orders/export?format=csv" with an authenticated merchant
+    Then the response status code should be 403
+
+  Scenario: Export Merchant's Orders In An Unknown Format
+    When a GET request is made to "/merchants/{merchantId}/orders/export?format=xml" with an authenticated merchant
+    Then the response status code should be 400
+
   Scenario: Merchant Updates Order Status
     # Precondition: An order must exist for this merchant.
     # This requires creating an order through customer place order or direct setup.